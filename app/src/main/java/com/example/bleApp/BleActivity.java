@@ -7,15 +7,19 @@ import android.app.job.JobInfo;
 import android.app.job.JobScheduler;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothManager;
+import android.content.BroadcastReceiver;
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
 import android.graphics.drawable.AnimatedVectorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 import android.widget.Toast;
 
@@ -26,7 +30,13 @@ import androidx.vectordrawable.graphics.drawable.AnimatedVectorDrawableCompat;
 
 import com.example.bleApp.client.ClientService;
 import com.example.bleApp.databinding.ActivityBleBinding;
+import com.example.bleApp.metrics.StartupTrace;
 import com.example.bleApp.server.ServerService;
+import com.example.bleApp.store.PairedPeerStore;
+import com.example.bleApp.ui.StatusPublisher;
+import com.example.bleApp.util.BleEventLoop;
+
+import java.io.IOException;
 
 public class BleActivity extends AppCompatActivity {
 
@@ -45,12 +55,54 @@ public class BleActivity extends AppCompatActivity {
     public static AnimatedVectorDrawableCompat avd;
     public static AnimatedVectorDrawable avd2;
 
+    private final StartupTrace mStartup = StartupTrace.global();
+    private long mAdapterRequestedAt;
+    private long mPermissionsRequestedAt;
+    private boolean mJobsScheduled;
+
+    // Pairing status from the BLE services, at most once per frame
+    private final StatusPublisher.Renderer mStatusRenderer = status -> {
+        setTextView(binding, status.text);
+        if (status.paired) {
+            Drawable progressDrawable = binding.progressBar.getIndeterminateDrawable().mutate();
+            progressDrawable.setColorFilter(Color.WHITE, android.graphics.PorterDuff.Mode.SRC_IN);
+            binding.progressBar.setProgressDrawable(progressDrawable);
+            confirm();
+        }
+    };
+
+    // Jobs start as soon as the adapter is on, whenever that happens
+    private final BroadcastReceiver mAdapterStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            int state = intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.ERROR);
+            if (state == BluetoothAdapter.STATE_ON) {
+                mStartup.span(StartupTrace.Step.ADAPTER_ON, mAdapterRequestedAt, SystemClock.elapsedRealtime());
+                setJobs();
+            }
+        }
+    };
+
     public void initManager() {
         bluetoothManager = (BluetoothManager) getSystemService(BLUETOOTH_SERVICE);
         bluetoothAdapter = bluetoothManager.getAdapter();
 
-        if (!bluetoothAdapter.isEnabled()){
-            bluetoothAdapter.enable();
+        mAdapterRequestedAt = SystemClock.elapsedRealtime();
+        if (bluetoothAdapter.isEnabled()){
+            mStartup.span(StartupTrace.Step.ADAPTER_ON, mAdapterRequestedAt, mAdapterRequestedAt);
+        } else if (!bluetoothAdapter.enable()) {
+            requestBluetoothEnable();
+        }
+    }
+
+    // Reads the paired peer store on the BLE loop while the UI thread inflates the layout
+    private void preloadPeers() {
+        long start = SystemClock.elapsedRealtime();
+        try {
+            PairedPeerStore.get(getFilesDir());
+            mStartup.span(StartupTrace.Step.PEERS_LOADED, start, SystemClock.elapsedRealtime());
+        } catch (IOException e) {
+            log("Could not load paired peers: " + e);
         }
     }
 
@@ -65,28 +117,55 @@ public class BleActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_ble);
+        mStartup.begin(Process.getStartElapsedRealtime());
+
+        // Independent steps first: adapter power-up, permission prompt and the peer store
+        // all run while the layout inflates
+        BleEventLoop.get().execute(this::preloadPeers);
+        registerReceiver(mAdapterStateReceiver, new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED));
+        initManager();
+        if (hasLocationPermissions()) {
+            long now = SystemClock.elapsedRealtime();
+            mStartup.span(StartupTrace.Step.PERMISSIONS_GRANTED, now, now);
+        } else {
+            requestLocationPermission();
+        }
 
+        long inflateStart = SystemClock.elapsedRealtime();
         binding = DataBindingUtil.setContentView(this, R.layout.activity_ble);
         binding.imageDone.setImageResource(avd_done);
 
         Drawable progressDrawable = binding.progressBar.getIndeterminateDrawable().mutate();
         progressDrawable.setColorFilter(Color.BLACK, android.graphics.PorterDuff.Mode.SRC_IN);
         binding.progressBar.setProgressDrawable(progressDrawable);
+        mStartup.span(StartupTrace.Step.LAYOUT_INFLATED, inflateStart, SystemClock.elapsedRealtime());
+        StatusPublisher.get().attach(mStatusRenderer);
 
-        initManager();
-        new Handler().postDelayed(this::setJobs, 2000);
+        setJobs();
+    }
+
+    @Override
+    protected void onDestroy() {
+        StatusPublisher.get().detach(mStatusRenderer);
+        unregisterReceiver(mAdapterStateReceiver);
+        super.onDestroy();
     }
 
     public static void setTextView(ActivityBleBinding binding, String text) {
         binding.textInfo.setText(text);
     }
 
+    // Called by every step that can be the last one missing; schedules the jobs once
     private void setJobs() {
-        if (hasPermissions()) {
-            scheduleJob(ClientService.class, "ClientService: ", CLIENT_JOB_SERVICE_ID);
-            scheduleJob(ServerService.class, "ServerService: ", SERVER_JOB_SERVICE_ID);
+        if (mJobsScheduled || bluetoothAdapter == null || !bluetoothAdapter.isEnabled()
+                || !hasLocationPermissions()) {
+            return;
         }
+        mJobsScheduled = true;
+        long start = SystemClock.elapsedRealtime();
+        scheduleJob(ClientService.class, "ClientService: ", CLIENT_JOB_SERVICE_ID);
+        scheduleJob(ServerService.class, "ServerService: ", SERVER_JOB_SERVICE_ID);
+        mStartup.span(StartupTrace.Step.JOBS_SCHEDULED, start, SystemClock.elapsedRealtime());
     }
 
     @Override
@@ -139,6 +218,8 @@ public class BleActivity extends AppCompatActivity {
                 if (grantResults.length > 0
                         && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
                     //If user presses allow"
+                    mStartup.span(StartupTrace.Step.PERMISSIONS_GRANTED, mPermissionsRequestedAt,
+                            SystemClock.elapsedRealtime());
                     setJobs();
                 } else {
                     //If user presses deny
@@ -149,23 +230,11 @@ public class BleActivity extends AppCompatActivity {
         }
     }
 
-    private boolean hasPermissions() {
-        if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
-            requestBluetoothEnable();
-            return false;
-        } else if (!hasLocationPermissions()) {
-            requestLocationPermission();
-            return false;
-        }
-        log("Permission!");
-        return true;
-    }
-
     private void requestBluetoothEnable() {
         Intent enableBtIntent = new Intent(BluetoothAdapter.ACTION_REQUEST_ENABLE);
         /*Permission check*/if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED) {return;}
         startActivityForResult(enableBtIntent, REQUEST_ENABLE_BT);
-        log("Requested user enables Bluetooth. Try starting the scan again.");
+        log("Requested user enables Bluetooth. Jobs start once it is on.");
     }
 
     private boolean hasLocationPermissions() {
@@ -178,10 +247,11 @@ public class BleActivity extends AppCompatActivity {
     }
 
     private void requestLocationPermission() {
+        mPermissionsRequestedAt = SystemClock.elapsedRealtime();
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             requestPermissions(new String[]{Manifest.permission.ACCESS_FINE_LOCATION}, REQUEST_FINE_LOCATION);
         }
-        log("Requested user enable Location. Try starting the scan again.");
+        log("Requested user enable Location. Jobs start once it is granted.");
     }
 
     public static void confirm() {
@@ -0,0 +1,126 @@
+package com.example.bleApp.client;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Random;
+
+/**
+ * Client lifecycle with guarded transitions. A move that the current state doesn't
+ * allow is refused, which is how redundant scans and connects get dropped instead of
+ * stacking up. Failures go through Backoff with jittered exponential delays that only
+ * reset once a pairing gets through.
+ */
+public class ClientStateMachine {
+
+    public enum State {
+        IDLE,
+        SCANNING,
+        CONNECTING,
+        DISCOVERING,
+        HANDSHAKING,
+        PROXIMITY,
+        PAIRED,
+        BACKOFF
+    }
+
+    public interface Listener {
+        void onStateChanged(State from, State to);
+    }
+
+    public static class Config {
+        public long initialBackoffMs = 500;
+        public long maxBackoffMs = 30_000;
+        // Longest a session may take from connected to the echo, and then to get close enough
+        public long handshakeTimeoutMs = 10_000;
+        public long proximityTimeoutMs = 60_000;
+    }
+
+    private static final EnumMap<State, EnumSet<State>> ALLOWED = allowedTransitions();
+
+    private final Config mConfig;
+    private final Random mRandom;
+    private State mState = State.IDLE;
+    private int mFailures;
+    private Listener mListener;
+
+    public ClientStateMachine(Config config, Random random) {
+        mConfig = config;
+        mRandom = random;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public State getState() {
+        return mState;
+    }
+
+    public boolean is(State state) {
+        return mState == state;
+    }
+
+    public boolean canMoveTo(State next) {
+        return ALLOWED.get(mState).contains(next);
+    }
+
+    // Returns false, and stays put, when next isn't reachable from the current state
+    public boolean moveTo(State next) {
+        if (!canMoveTo(next)) {
+            return false;
+        }
+        State previous = mState;
+        mState = next;
+        if (next == State.PAIRED) {
+            mFailures = 0;
+        }
+        if (mListener != null) {
+            mListener.onStateChanged(previous, next);
+        }
+        return true;
+    }
+
+    /**
+     * Enters Backoff and returns how long to wait before scanning again, or -1 when
+     * already backing off or paired. The delay doubles per consecutive failure up to
+     * maxBackoffMs, and the upper half of it is randomised so failing peers don't retry in step.
+     */
+    public long fail() {
+        if (!moveTo(State.BACKOFF)) {
+            return -1;
+        }
+        mFailures++;
+        long ceiling = mConfig.initialBackoffMs << Math.min(mFailures - 1, 30);
+        if (ceiling <= 0 || ceiling > mConfig.maxBackoffMs) {
+            ceiling = mConfig.maxBackoffMs;
+        }
+        long half = ceiling / 2;
+        return half + (long) (mRandom.nextDouble() * (ceiling - half));
+    }
+
+    public int getFailures() {
+        return mFailures;
+    }
+
+    // Back to Idle from anywhere, keeps the failure count
+    public void reset() {
+        State previous = mState;
+        mState = State.IDLE;
+        if (previous != State.IDLE && mListener != null) {
+            mListener.onStateChanged(previous, State.IDLE);
+        }
+    }
+
+    private static EnumMap<State, EnumSet<State>> allowedTransitions() {
+        EnumMap<State, EnumSet<State>> allowed = new EnumMap<>(State.class);
+        allowed.put(State.IDLE, EnumSet.of(State.SCANNING, State.CONNECTING, State.PAIRED));
+        allowed.put(State.SCANNING, EnumSet.of(State.IDLE, State.CONNECTING, State.BACKOFF, State.PAIRED));
+        allowed.put(State.CONNECTING, EnumSet.of(State.DISCOVERING, State.BACKOFF, State.PAIRED));
+        allowed.put(State.DISCOVERING, EnumSet.of(State.HANDSHAKING, State.BACKOFF, State.PAIRED));
+        allowed.put(State.HANDSHAKING, EnumSet.of(State.PROXIMITY, State.BACKOFF, State.PAIRED));
+        allowed.put(State.PROXIMITY, EnumSet.of(State.PAIRED, State.BACKOFF));
+        allowed.put(State.PAIRED, EnumSet.noneOf(State.class));
+        allowed.put(State.BACKOFF, EnumSet.of(State.IDLE, State.SCANNING, State.PAIRED));
+        return allowed;
+    }
+}
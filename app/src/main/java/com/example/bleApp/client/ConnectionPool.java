@@ -0,0 +1,112 @@
+package com.example.bleApp.client;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Candidate peers wait here until a connection slot is free. At most maxConnections
+ * sessions are open at once; releasing one admits the next candidate in arrival order.
+ * Not thread safe, it lives on the BLE event loop. The connector may call back into
+ * the pool, e.g. release a peer whose connection failed straight away.
+ */
+public class ConnectionPool<D, S> {
+
+    public interface Connector<D, S> {
+        // Opens a session to the peer, null if the connection could not be started
+        @Nullable
+        S connect(String address, D device);
+    }
+
+    private final int mMaxConnections;
+    private final Connector<D, S> mConnector;
+    private final LinkedHashMap<String, D> mCandidates = new LinkedHashMap<>();
+    // Open sessions; null for a slot whose connect is still running
+    private final LinkedHashMap<String, S> mActive = new LinkedHashMap<>();
+
+    public ConnectionPool(int maxConnections, Connector<D, S> connector) {
+        mMaxConnections = maxConnections;
+        mConnector = connector;
+    }
+
+    // Queues a peer unless it is already queued or connected
+    public boolean offer(String address, D device) {
+        if (mActive.containsKey(address) || mCandidates.containsKey(address)) {
+            return false;
+        }
+        mCandidates.put(address, device);
+        admit();
+        return true;
+    }
+
+    public void release(String address) {
+        if (mActive.containsKey(address)) {
+            mActive.remove(address);
+            admit();
+        }
+    }
+
+    // Null while the peer is still being connected
+    @Nullable
+    public S get(String address) {
+        return mActive.get(address);
+    }
+
+    public List<S> getActive() {
+        return openSessions();
+    }
+
+    public int getActiveCount() {
+        return mActive.size();
+    }
+
+    public int getCandidateCount() {
+        return mCandidates.size();
+    }
+
+    public boolean isIdle() {
+        return mActive.isEmpty() && mCandidates.isEmpty();
+    }
+
+    // Forgets all candidates and hands back the open sessions for the caller to close
+    public List<S> clear() {
+        List<S> active = openSessions();
+        mActive.clear();
+        mCandidates.clear();
+        return active;
+    }
+
+    private void admit() {
+        while (mActive.size() < mMaxConnections && !mCandidates.isEmpty()) {
+            Map.Entry<String, D> candidate = mCandidates.entrySet().iterator().next();
+            String address = candidate.getKey();
+            D device = candidate.getValue();
+            mCandidates.remove(address);
+            // The slot is taken before calling out, so whatever connect does to the pool sees it
+            mActive.put(address, null);
+            S session = mConnector.connect(address, device);
+            if (!mActive.containsKey(address)) {
+                // Released or cleared from inside connect
+                continue;
+            }
+            if (session != null) {
+                mActive.put(address, session);
+            } else {
+                mActive.remove(address);
+            }
+        }
+    }
+
+    private List<S> openSessions() {
+        List<S> sessions = new ArrayList<>(mActive.size());
+        for (S session : mActive.values()) {
+            if (session != null) {
+                sessions.add(session);
+            }
+        }
+        return sessions;
+    }
+}
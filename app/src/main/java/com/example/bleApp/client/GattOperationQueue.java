@@ -0,0 +1,245 @@
+package com.example.bleApp.client;
+
+import com.example.bleApp.util.Scheduler;
+
+import java.util.ArrayDeque;
+
+/**
+ * Android runs one Gatt operation per connection at a time and silently refuses the
+ * rest. This queue starts the next operation as soon as the callback of the previous
+ * one lands, and retries operations the stack refused. Each operation has its own
+ * timeout; one that runs out is failed but not retried, since the stack may still be
+ * working on it, and the queue waits for its late callback before starting anything
+ * else. That wait is bounded by the operation's timeout once more; a callback that
+ * still comes after it is taken for the next operation of its type, so the owner is
+ * told and may rather drop the link.
+ */
+public class GattOperationQueue {
+
+    private static final long RETRY_DELAY_MS = 50;
+
+    public enum Type {
+        WRITE_CHARACTERISTIC,
+        READ_CHARACTERISTIC,
+        WRITE_DESCRIPTOR,
+        READ_DESCRIPTOR,
+        READ_RSSI,
+        REQUEST_MTU
+    }
+
+    public interface Callback {
+        // status is the Gatt status, or -1 when the operation gave up
+        void onResult(boolean success, int status);
+    }
+
+    public interface StallListener {
+        // A timed out operation was answered late, or expired without an answer; the queue runs again
+        void onStallReleased(Type type, boolean expired);
+    }
+
+    public abstract static class Operation {
+        private final Type mType;
+        private final long mTimeoutMs;
+        private Callback mCallback;
+        private int mAttempts;
+
+        protected Operation(Type type, long timeoutMs) {
+            mType = type;
+            mTimeoutMs = timeoutMs;
+        }
+
+        public Type getType() {
+            return mType;
+        }
+
+        public long getTimeoutMs() {
+            return mTimeoutMs;
+        }
+
+        public Operation setCallback(Callback callback) {
+            mCallback = callback;
+            return this;
+        }
+
+        // Starts the operation on the stack, false if it was refused
+        protected abstract boolean execute();
+    }
+
+    private final Scheduler mScheduler;
+    private final int mMaxRetries;
+
+    private final ArrayDeque<Operation> mPending = new ArrayDeque<>();
+    private Operation mCurrent;
+    // Timed out, but its callback may still come; nothing starts until it does
+    private Operation mStalled;
+    // Times the current operation, or the stalled one
+    private Scheduler.Cancellable mTimer;
+    private StallListener mStallListener;
+
+    private long mCompleted;
+    private long mTimeouts;
+    private long mRetries;
+    private long mFailures;
+    private long mStallExpiries;
+
+    public GattOperationQueue(Scheduler scheduler, int maxRetries) {
+        mScheduler = scheduler;
+        mMaxRetries = maxRetries;
+    }
+
+    public synchronized void setStallListener(StallListener listener) {
+        mStallListener = listener;
+    }
+
+    public synchronized void enqueue(Operation operation) {
+        mPending.addLast(operation);
+        next();
+    }
+
+    // Queued or running; a stalled operation already failed and doesn't count
+    public synchronized boolean isPending(Type type) {
+        if (mCurrent != null && mCurrent.mType == type) {
+            return true;
+        }
+        for (Operation operation : mPending) {
+            if (operation.mType == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int size() {
+        return mPending.size() + (mCurrent != null ? 1 : 0) + (mStalled != null ? 1 : 0);
+    }
+
+    // Called from the BluetoothGattCallback matching the current operation
+    public synchronized boolean complete(Type type, int status) {
+        if (mStalled != null && mStalled.mType == type) {
+            // The late answer to a timed out operation, its callback already failed
+            cancelTimer();
+            mStalled = null;
+            next();
+            if (mStallListener != null) {
+                mStallListener.onStallReleased(type, false);
+            }
+            return false;
+        }
+        Operation operation = mCurrent;
+        if (operation == null || operation.mType != type) {
+            return false;
+        }
+        cancelTimer();
+        mCurrent = null;
+        mCompleted++;
+        if (operation.mCallback != null) {
+            operation.mCallback.onResult(status == 0, status);
+        }
+        next();
+        return true;
+    }
+
+    // Drops everything, e.g. on disconnect
+    public synchronized void clear() {
+        cancelTimer();
+        mCurrent = null;
+        mStalled = null;
+        mPending.clear();
+    }
+
+    private void next() {
+        while (mCurrent == null && mStalled == null && !mPending.isEmpty()) {
+            start(mPending.pollFirst());
+        }
+    }
+
+    private void start(Operation operation) {
+        mCurrent = operation;
+        operation.mAttempts++;
+        if (operation.execute()) {
+            mTimer = mScheduler.schedule(() -> onTimeout(operation), operation.mTimeoutMs);
+            return;
+        }
+        // The stack is busy with something we did not issue, try again shortly
+        if (operation.mAttempts <= mMaxRetries) {
+            mRetries++;
+            mTimer = mScheduler.schedule(() -> retry(operation), RETRY_DELAY_MS);
+        } else {
+            fail(operation);
+        }
+    }
+
+    private synchronized void retry(Operation operation) {
+        if (mCurrent == operation) {
+            mTimer = null;
+            start(operation);
+        }
+    }
+
+    private synchronized void onTimeout(Operation operation) {
+        if (mCurrent != operation) {
+            return;
+        }
+        mTimer = null;
+        mTimeouts++;
+        mCurrent = null;
+        mStalled = operation;
+        mTimer = mScheduler.schedule(() -> onStallExpired(operation), operation.mTimeoutMs);
+        mFailures++;
+        if (operation.mCallback != null) {
+            operation.mCallback.onResult(false, -1);
+        }
+    }
+
+    // The late callback never came, stop waiting for it
+    private synchronized void onStallExpired(Operation operation) {
+        if (mStalled != operation) {
+            return;
+        }
+        mTimer = null;
+        mStalled = null;
+        mStallExpiries++;
+        next();
+        if (mStallListener != null) {
+            mStallListener.onStallReleased(operation.mType, true);
+        }
+    }
+
+    private void fail(Operation operation) {
+        mCurrent = null;
+        mFailures++;
+        if (operation.mCallback != null) {
+            operation.mCallback.onResult(false, -1);
+        }
+        next();
+    }
+
+    private void cancelTimer() {
+        if (mTimer != null) {
+            mTimer.cancel();
+            mTimer = null;
+        }
+    }
+
+    // Metrics
+
+    public synchronized long getCompletedCount() {
+        return mCompleted;
+    }
+
+    public synchronized long getTimeoutCount() {
+        return mTimeouts;
+    }
+
+    public synchronized long getRetryCount() {
+        return mRetries;
+    }
+
+    public synchronized long getFailureCount() {
+        return mFailures;
+    }
+
+    public synchronized long getStallExpiryCount() {
+        return mStallExpiries;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.bleApp.client;
+
+import com.example.bleApp.client.GattOperationQueue.Operation;
+import com.example.bleApp.client.GattOperationQueue.Type;
+import com.example.bleApp.transport.BleConnection;
+
+import java.util.UUID;
+
+/**
+ * BleConnection calls wrapped as queue operations, so only one is outstanding per link.
+ */
+public class GattOperations {
+
+    // Round trips to the peer, a few connection intervals even on a slow link
+    static final long PEER_TIMEOUT_MS = 5000;
+    // Answered by the local controller
+    static final long LOCAL_TIMEOUT_MS = 1000;
+
+    public static Operation writeCharacteristic(BleConnection connection, UUID characteristicUuid, byte[] value) {
+        return new Operation(Type.WRITE_CHARACTERISTIC, PEER_TIMEOUT_MS) {
+            @Override
+            protected boolean execute() {
+                return connection.writeCharacteristic(characteristicUuid, value, true);
+            }
+        };
+    }
+
+    public static Operation readCharacteristic(BleConnection connection, UUID characteristicUuid) {
+        return new Operation(Type.READ_CHARACTERISTIC, PEER_TIMEOUT_MS) {
+            @Override
+            protected boolean execute() {
+                return connection.readCharacteristic(characteristicUuid);
+            }
+        };
+    }
+
+    public static Operation writeDescriptor(BleConnection connection, UUID characteristicUuid, UUID descriptorUuid,
+                                            byte[] value) {
+        return new Operation(Type.WRITE_DESCRIPTOR, PEER_TIMEOUT_MS) {
+            @Override
+            protected boolean execute() {
+                return connection.writeDescriptor(characteristicUuid, descriptorUuid, value);
+            }
+        };
+    }
+
+    public static Operation readRemoteRssi(BleConnection connection) {
+        return new Operation(Type.READ_RSSI, LOCAL_TIMEOUT_MS) {
+            @Override
+            protected boolean execute() {
+                return connection.readRemoteRssi();
+            }
+        };
+    }
+
+    public static Operation requestMtu(BleConnection connection, int mtu) {
+        return new Operation(Type.REQUEST_MTU, PEER_TIMEOUT_MS) {
+            @Override
+            protected boolean execute() {
+                return connection.requestMtu(mtu);
+            }
+        };
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.bleApp.client;
+
+import com.example.bleApp.metrics.PairingTrace;
+import com.example.bleApp.protocol.Fragmenter;
+import com.example.bleApp.protocol.PayloadCodec;
+import com.example.bleApp.protocol.Reassembler;
+import com.example.bleApp.transport.BleConnection;
+import com.example.bleApp.transport.LinkProfile;
+import com.example.bleApp.util.Scheduler;
+
+/**
+ * Client state of one peer connection: its BleConnection, operation queue and
+ * handshake progress, tracked by its own ClientStateMachine from
+ * Connecting to Paired.
+ */
+class GattSession {
+
+    private final String mAddress;
+    private final GattOperationQueue mOperations;
+    private final ProximityEstimator mProximity;
+    private final ClientStateMachine mState;
+    private BleConnection mConnection;
+
+    private boolean mClosed;
+    boolean initialized;
+    // Paired on an earlier run, so the proximity wait is skipped
+    boolean knownPeer;
+    // Advertised without a beacon, an older watch that only speaks the string handshake
+    boolean legacy;
+    // Seeded at random per connection, so echoes of different sessions rarely match
+    int handshakeSequence;
+    PairingTrace trace;
+    // Gives up on the current phase, armed per state by PairingClient
+    Scheduler.Cancellable deadline;
+    int mtu = Fragmenter.DEFAULT_MTU;
+    int nextMessageId;
+    final Reassembler reassembler = new Reassembler(Fragmenter.MAX_MESSAGE_LENGTH);
+    // Requested link parameters, and the PHYs the stack reported back
+    LinkProfile profile;
+    int txPhy = 1;
+    int rxPhy = 1;
+    // Compression the server accepted in its echo
+    PayloadCodec.Encoder encoder;
+
+    GattSession(String address, GattOperationQueue operations, ProximityEstimator proximity,
+                ClientStateMachine state) {
+        mAddress = address;
+        mOperations = operations;
+        mProximity = proximity;
+        mState = state;
+    }
+
+    String getAddress() {
+        return mAddress;
+    }
+
+    GattOperationQueue getOperations() {
+        return mOperations;
+    }
+
+    ProximityEstimator getProximity() {
+        return mProximity;
+    }
+
+    ClientStateMachine getState() {
+        return mState;
+    }
+
+    BleConnection getConnection() {
+        return mConnection;
+    }
+
+    void setConnection(BleConnection connection) {
+        mConnection = connection;
+    }
+
+    // Link is up: past Connecting and not yet failed or closed
+    boolean isConnected() {
+        if (mClosed) {
+            return false;
+        }
+        switch (mState.getState()) {
+            case DISCOVERING:
+            case HANDSHAKING:
+            case PROXIMITY:
+            case PAIRED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    boolean isClosed() {
+        return mClosed;
+    }
+
+    void close() {
+        mClosed = true;
+        if (deadline != null) {
+            deadline.cancel();
+            deadline = null;
+        }
+        mOperations.clear();
+        if (mConnection != null) {
+            mConnection.close();
+        }
+    }
+}
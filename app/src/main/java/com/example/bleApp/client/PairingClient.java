@@ -0,0 +1,720 @@
+package com.example.bleApp.client;
+
+import static com.example.bleApp.Constants.CHARACTERISTIC_UUID;
+import static com.example.bleApp.Constants.CLIENT_CONFIGURATION_DESCRIPTOR_UUID;
+import static com.example.bleApp.Constants.SERVICE_UUID;
+import static com.example.bleApp.Constants.XEE_KIDS_MATCH_CONTROL;
+
+import com.example.bleApp.metrics.PairingMetrics;
+import com.example.bleApp.metrics.PairingTrace;
+import com.example.bleApp.protocol.Fragmenter;
+import com.example.bleApp.protocol.Handshake;
+import com.example.bleApp.protocol.PairingBeacon;
+import com.example.bleApp.protocol.PayloadCodec;
+import com.example.bleApp.store.PairedPeerStore;
+import com.example.bleApp.transport.BleConnection;
+import com.example.bleApp.transport.BleTransport;
+import com.example.bleApp.transport.LinkProfile;
+import com.example.bleApp.transport.ScanListener;
+import com.example.bleApp.ui.PairingStatus;
+import com.example.bleApp.util.Clock;
+import com.example.bleApp.util.Scheduler;
+import com.example.bleApp.util.StringUtils;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Client half of the pairing: scans for watches, connects to the closest through the
+ * ConnectionPool, handshakes and writes FRIEND once the watch is close enough. Runs on
+ * any BleTransport, so the same code drives ClientService on the device and the
+ * simulated watches of PairingLoadRun. Not thread safe: every call and every transport
+ * callback comes in on one thread, the BLE event loop on the device.
+ */
+public class PairingClient {
+
+    public interface Listener {
+
+        void log(String message);
+
+        // Packet dumps are only built when this says so
+        boolean isTracing();
+
+        void trace(String line);
+
+        void showMessage(String message);
+
+        void onStatus(PairingStatus status);
+
+        // The watch acknowledged FRIEND
+        void onPaired(String address);
+    }
+
+    private static final int OPERATION_RETRIES = 2;
+    private static final int MAX_CONNECTIONS = 3;
+    private static final int EXPECTED_SCAN_RESULTS = 32;
+    private static final long SCAN_RESULT_TTL_MS = 60000;
+
+    private final BleTransport mTransport;
+    private final Scheduler mScheduler;
+    private final Clock mClock;
+    private final Random mRandom;
+    private final PairingMetrics mMetrics;
+    // Set once either half of this device paired
+    private final BooleanSupplier mMatched;
+    private final Listener mListener;
+
+    private final ClientStateMachine.Config mStateConfig = new ClientStateMachine.Config();
+    private final ClientStateMachine mState;
+    private Scheduler.Cancellable mPendingStart;
+    // Ends the current scan window; a stale one would cut the next window short
+    private Scheduler.Cancellable mScanStop;
+    private final ScanScheduler mScanScheduler = new ScanScheduler(ScanScheduler.Profile.BALANCED);
+    private final ScanResultTable<String> mScanResults =
+            new ScanResultTable<>(EXPECTED_SCAN_RESULTS, SCAN_RESULT_TTL_MS);
+    private long mScanWindowStart;
+    // Pairing attempt from the first scan window until a peer is found, forked per peer
+    private PairingTrace mScanTrace;
+    private final ScanCallback mScanCallback = new ScanCallback();
+    private final PairingBeacon.Verifier mBeaconVerifier =
+            new PairingBeacon.Verifier(StringUtils.bytesFromString(XEE_KIDS_MATCH_CONTROL));
+    private int mBeaconRejections;
+    private long mBeaconRejectionsTotal;
+    private final ConnectionPool<String, GattSession> mPool;
+    private PairedPeerStore mPeers;
+    private final ProximityEstimator.Config mProximityConfig = new ProximityEstimator.Config();
+
+    public PairingClient(BleTransport transport, Scheduler scheduler, Clock clock, Random random,
+                         PairingMetrics metrics, BooleanSupplier matched, Listener listener) {
+        mTransport = transport;
+        mScheduler = scheduler;
+        mClock = clock;
+        mRandom = random;
+        mMetrics = metrics;
+        mMatched = matched;
+        mListener = listener;
+        mState = new ClientStateMachine(mStateConfig, random);
+        mState.setListener((from, to) -> log("Client " + from + " -> " + to));
+        mPool = new ConnectionPool<>(MAX_CONNECTIONS, this::connectDevice);
+    }
+
+    // Reconnects to known peers first, scans if there are none; peers may be null
+    public void start(@Nullable PairedPeerStore peers) {
+        mPeers = peers;
+        if (!reconnectKnownPeers()) {
+            startScan();
+        }
+    }
+
+    public void stop() {
+        if (mState.is(ClientStateMachine.State.SCANNING)) {
+            stopScanner();
+        }
+        cancelScanStop();
+        if (mPendingStart != null) {
+            mPendingStart.cancel();
+            mPendingStart = null;
+        }
+        disconnectGattServer();
+        if (!mState.is(ClientStateMachine.State.PAIRED)) {
+            mState.reset();
+        }
+    }
+
+    public ClientStateMachine.State getState() {
+        return mState.getState();
+    }
+
+    // Advertisements ruled out by their beacon since start
+    public long getBeaconRejections() {
+        return mBeaconRejectionsTotal;
+    }
+
+    // Logging
+
+    private void log(String msg) {
+        mListener.log(msg);
+    }
+
+    private void logError(String msg) {
+        log("Error: " + msg);
+    }
+
+    private void tracePacket(String prefix, String address, byte[] value) {
+        if (value != null && mListener.isTracing()) {
+            StringBuilder trace = new StringBuilder(prefix.length() + address.length() + 2
+                    + StringUtils.hexFormatLength(value.length));
+            trace.append(prefix).append(address).append(": ");
+            StringUtils.appendHexFormat(trace, value, 0, value.length);
+            mListener.trace(trace.toString());
+        }
+    }
+
+    // Known peers
+
+    // Connects straight to the most recently paired watches; if none answers the round fails and we scan
+    private boolean reconnectKnownPeers() {
+        if (mMatched.getAsBoolean() || mPeers == null || mPeers.isEmpty()
+                || !mState.moveTo(ClientStateMachine.State.CONNECTING)) {
+            return false;
+        }
+        for (PairedPeerStore.Peer peer : mPeers.getPeers()) {
+            if (mPool.getActiveCount() + mPool.getCandidateCount() >= MAX_CONNECTIONS) {
+                break;
+            }
+            String address = ScanResultTable.formatAddress(peer.address);
+            mPool.offer(address, address);
+            log("Reconnecting to known peer " + address);
+        }
+        if (mPool.isIdle()) {
+            roundFailed("no known peer could be connected");
+        }
+        return true;
+    }
+
+    private void rememberPeer(GattSession session) {
+        // Known peers are reconnected without a scan, so a legacy watch would be sent a frame it can't read
+        if (mPeers == null || session.legacy) {
+            return;
+        }
+        long address = ScanResultTable.packAddress(session.getAddress());
+        int rssi = session.getProximity().getSampleCount() > 0
+                ? (int) Math.round(session.getProximity().getEstimate())
+                : PairedPeerStore.UNKNOWN_RSSI;
+        try {
+            // No peer identity in the handshake yet, the address stands in for it
+            mPeers.put(address, address, rssi, mClock.currentTimeMillis());
+        } catch (IOException e) {
+            logError("Could not store paired peer: " + e);
+        }
+    }
+
+    // Scanning
+    private void startScan() {
+        // Refuses while a scan, connect round or pending start is already underway
+        if (mMatched.getAsBoolean() || mPendingStart != null || !mState.canMoveTo(ClientStateMachine.State.SCANNING)) {
+            return;
+        }
+
+        ScanScheduler.Plan plan = mScanScheduler.nextScan(mClock.elapsedRealtime());
+        if (plan.delayMs > 0) {
+            log("Next scan in " + plan.delayMs + " ms");
+            scheduleStart(plan.delayMs);
+            return;
+        }
+
+        mScanWindowStart = mClock.elapsedRealtime();
+        mScanResults.evict(mScanWindowStart);
+
+        long now = mClock.elapsedRealtime();
+        if (mScanTrace == null || mScanTrace.isMarked(PairingMetrics.Phase.FIRST_RESULT)) {
+            mScanTrace = mMetrics.start(PairingMetrics.Phase.SCAN_STARTED, now);
+        }
+        mState.moveTo(ClientStateMachine.State.SCANNING);
+        mTransport.startScan(SERVICE_UUID, PairingBeacon.COMPANY_ID, scanMode(plan.mode), mScanCallback);
+        mScanScheduler.onScanStarted(now);
+        cancelScanStop();
+        mScanStop = mScheduler.schedule(() -> {
+            mScanStop = null;
+            stopScan();
+        }, plan.windowMs);
+        log("Started scanning " + plan.mode + " for " + plan.windowMs + " ms.");
+    }
+
+    private void scheduleStart(long delayMs) {
+        mPendingStart = mScheduler.schedule(() -> {
+            mPendingStart = null;
+            startScan();
+        }, delayMs);
+    }
+
+    private static int scanMode(ScanScheduler.Mode mode) {
+        switch (mode) {
+            case LOW_LATENCY:
+                return BleTransport.SCAN_MODE_LOW_LATENCY;
+            case BALANCED:
+                return BleTransport.SCAN_MODE_BALANCED;
+            default:
+                return BleTransport.SCAN_MODE_LOW_POWER;
+        }
+    }
+
+    private void stopScan() {
+        if (!mState.is(ClientStateMachine.State.SCANNING)) {
+            return;
+        }
+        stopScanner();
+        log("Stopped scanning.");
+        scanComplete();
+    }
+
+    private void stopScanner() {
+        cancelScanStop();
+        mTransport.stopScan();
+    }
+
+    private void cancelScanStop() {
+        if (mScanStop != null) {
+            mScanStop.cancel();
+            mScanStop = null;
+        }
+    }
+
+    private void scanComplete() {
+        boolean found = mScanResults.countSeenSince(mScanWindowStart) > 0;
+        if (mBeaconRejections > 0) {
+            log("Ruled out " + mBeaconRejections + " advertisements by their beacon");
+            mBeaconRejections = 0;
+        }
+        mScanScheduler.onWindowComplete(mClock.elapsedRealtime(), found);
+        if (found) {
+            mState.moveTo(ClientStateMachine.State.CONNECTING);
+            // Strongest first, so the connection cap goes to the closest watches
+            for (long address : mScanResults.strongestSeenSince(mScanWindowStart)) {
+                String device = mScanResults.getDevice(address);
+                mPool.offer(device, device); //CONNECTING GATT AUTOMATICALLY
+                log("Queued for connection " + device + " rssi " + mScanResults.getAverageRssi(address)
+                        + " seen " + mScanResults.getHits(address) + " times");
+            }
+            log("Connections open: " + mPool.getActiveCount() + " waiting: " + mPool.getCandidateCount());
+            if (mPool.isIdle()) {
+                roundFailed("no connection could be opened");
+            }
+        }else{
+            log("No scanning result.");
+            mState.moveTo(ClientStateMachine.State.IDLE);
+            startScan();
+        }
+    }
+
+    // Every peer of the round failed, or the scan itself did: wait it out, then scan again
+    private void roundFailed(String reason) {
+        long delayMs = mState.fail();
+        if (delayMs < 0) {
+            return;
+        }
+        logError("Backing off " + delayMs + " ms after failure " + mState.getFailures() + ": " + reason);
+        scheduleStart(delayMs);
+    }
+
+    private void addScanResult(String device, int rssi, boolean legacy) {
+        long address = ScanResultTable.packAddress(device);
+        long now = mClock.elapsedRealtime();
+        mScanResults.onResult(address, device, rssi, legacy, now);
+        if (mScanTrace != null) {
+            mScanTrace.mark(PairingMetrics.Phase.FIRST_RESULT, now);
+        }
+    }
+
+    private class ScanCallback implements ScanListener {
+
+        // Busy and foreign watches are ruled out by their beacon, before they cost a connection
+        @Override
+        public void onScanResult(String address, int rssi, @Nullable byte[] manufacturerData) {
+            if (!mState.is(ClientStateMachine.State.SCANNING)) {
+                return;
+            }
+            switch (mBeaconVerifier.evaluate(manufacturerData, mClock.currentTimeMillis())) {
+                case PAIRABLE:
+                    addScanResult(address, rssi, false);
+                    break;
+                case ABSENT:
+                    // A legacy watch
+                    addScanResult(address, rssi, true);
+                    break;
+                default:
+                    mBeaconRejections++;
+                    mBeaconRejectionsTotal++;
+                    break;
+            }
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            logError("BLE Scan Failed with code " + errorCode);
+            if (mState.is(ClientStateMachine.State.SCANNING)) {
+                stopScanner();
+                roundFailed("scan failed with code " + errorCode);
+            }
+        }
+    }
+
+    // Gatt connection
+    private GattSession connectDevice(String address, String device) {
+        log("Connecting to " + address);
+        GattSession session = new GattSession(address,
+                new GattOperationQueue(mScheduler, OPERATION_RETRIES),
+                new ProximityEstimator(mProximityConfig),
+                new ClientStateMachine(mStateConfig, mRandom));
+        long packed = ScanResultTable.packAddress(address);
+        session.knownPeer = mPeers != null && mPeers.contains(packed);
+        // Connections only go to results of this window, so the flag is as of this window
+        session.legacy = !session.knownPeer && mScanResults.isLegacy(packed);
+        session.handshakeSequence = mRandom.nextInt(256);
+        if (mScanTrace != null) {
+            session.trace = mScanTrace.fork();
+        }
+        session.getOperations().setStallListener((type, expired) -> onStallReleased(session, type, expired));
+        session.getState().setListener((from, to) -> armDeadline(session, to));
+        BleConnection connection = mTransport.connect(address, new SessionCallback(session));
+        if (connection == null) {
+            return null;
+        }
+        session.setConnection(connection);
+        session.getState().moveTo(ClientStateMachine.State.CONNECTING);
+        return session;
+    }
+
+    private void disconnectGattServer() {
+        log("Closing Gatt connections");
+        for (GattSession session : mPool.clear()) {
+            session.close();
+        }
+    }
+
+    // Frees the slot for the next candidate; once the pool drains without a pairing the round failed
+    private void closeSession(GattSession session) {
+        if (session.isClosed()) {
+            return;
+        }
+        log("Closing Gatt connection to " + session.getAddress() + " in " + session.getState().getState());
+        if (session.trace != null) {
+            session.trace.abandon();
+        }
+        session.getState().fail();
+        session.close();
+        mPool.release(session.getAddress());
+        if (mPool.isIdle() && mState.is(ClientStateMachine.State.CONNECTING)) {
+            roundFailed("no peer paired");
+        }
+    }
+
+    // A watch that stops answering mid-handshake, or is never brought close enough, gives its slot back
+    private void armDeadline(GattSession session, ClientStateMachine.State state) {
+        if (session.deadline != null) {
+            session.deadline.cancel();
+            session.deadline = null;
+        }
+        long timeoutMs;
+        switch (state) {
+            case DISCOVERING:
+            case HANDSHAKING:
+                timeoutMs = mStateConfig.handshakeTimeoutMs;
+                break;
+            case PROXIMITY:
+                timeoutMs = mStateConfig.proximityTimeoutMs;
+                break;
+            default:
+                return;
+        }
+        session.deadline = mScheduler.schedule(() -> {
+            session.deadline = null;
+            logError(session.getAddress() + " still in " + state + " after " + timeoutMs + " ms");
+            closeSession(session);
+        }, timeoutMs);
+    }
+
+    // The stack answered a timed out operation late or never; in the latter case a late
+    // callback could now be taken for the next one, which only an RSSI reading can afford
+    private void onStallReleased(GattSession session, GattOperationQueue.Type type, boolean expired) {
+        if (type == GattOperationQueue.Type.READ_RSSI) {
+            // The failed read already scheduled a retry, this only brings it forward
+            if (session.getState().is(ClientStateMachine.State.PROXIMITY)) {
+                scheduleRssiSample(session, 0);
+            }
+            return;
+        }
+        if (expired) {
+            logError(type + " never answered by " + session.getAddress());
+            closeSession(session);
+        }
+    }
+
+    // Callbacks of one session's link; the queue is completed first, so whatever they start finds it free
+    private class SessionCallback implements BleConnection.Callback {
+
+        private final GattSession mSession;
+        private final GattOperationQueue mOperations;
+
+        SessionCallback(GattSession session) {
+            mSession = session;
+            mOperations = session.getOperations();
+        }
+
+        @Override
+        public void onConnectionStateChange(BleConnection connection, int status, boolean connected) {
+            log("onConnectionStateChange " + connection.getAddress() + " connected: " + connected);
+
+            if (status != BleTransport.STATUS_SUCCESS) {
+                // handle anything not SUCCESS as failure
+                logError("Connection not GATT success status " + status);
+                closeSession(mSession);
+                return;
+            }
+
+            if (connected) {
+                if (!mSession.getState().moveTo(ClientStateMachine.State.DISCOVERING)) {
+                    return;
+                }
+                log("Connected to device: " + connection.getAddress());
+                mark(mSession, PairingMetrics.Phase.CONNECTED);
+                applyProfile(mSession, LinkProfile.HANDSHAKE_FAST);
+                // Larger MTU first, so every later write carries as much as the link allows
+                mOperations.enqueue(GattOperations.requestMtu(connection, Fragmenter.MAX_MTU)
+                        .setCallback((success, mtuStatus) -> {
+                            log("MTU " + mSession.mtu + " for " + mSession.getAddress());
+                            if (mSession.getState().is(ClientStateMachine.State.DISCOVERING)) {
+                                connection.discoverServices();
+                            }
+                        }));
+            } else {
+                log("Disconnected from device");
+                closeSession(mSession);
+            }
+        }
+
+        @Override
+        public void onMtuChanged(BleConnection connection, int mtu, int status) {
+            if (status == BleTransport.STATUS_SUCCESS) {
+                mSession.mtu = mtu;
+            }
+            mOperations.complete(GattOperationQueue.Type.REQUEST_MTU, status);
+        }
+
+        @Override
+        public void onPhyUpdate(BleConnection connection, int txPhy, int rxPhy, int status) {
+            if (status == BleTransport.STATUS_SUCCESS) {
+                mSession.txPhy = txPhy;
+                mSession.rxPhy = rxPhy;
+            }
+            log("PHY tx " + LinkProfile.phyName(txPhy) + " rx " + LinkProfile.phyName(rxPhy)
+                    + " status " + status + " for " + mSession.getAddress() + " (" + mSession.profile + ")");
+        }
+
+        //DISCOVER SERVICES & CALL sendMessage()
+        @Override
+        public void onServicesDiscovered(BleConnection connection, int status) {
+            if (!mSession.getState().is(ClientStateMachine.State.DISCOVERING)) {
+                return;
+            }
+            if (status != BleTransport.STATUS_SUCCESS) {
+                logError("No services");
+                closeSession(mSession);
+                return;
+            }
+
+            log("Service Discovered!");
+            mark(mSession, PairingMetrics.Phase.SERVICES_DISCOVERED);
+            if (connection.getProperties(CHARACTERISTIC_UUID) < 0) {
+                mListener.showMessage("SERVICE NOT FOUND!");
+                logError("onService: null");
+                closeSession(mSession);
+                return;
+            }
+            mSession.initialized = connection.setCharacteristicNotification(CHARACTERISTIC_UUID, true);
+            if (connection.hasDescriptor(CHARACTERISTIC_UUID, CLIENT_CONFIGURATION_DESCRIPTOR_UUID)) {
+                mOperations.enqueue(GattOperations.writeDescriptor(connection, CHARACTERISTIC_UUID,
+                        CLIENT_CONFIGURATION_DESCRIPTOR_UUID, BleTransport.ENABLE_NOTIFICATION_VALUE));
+            }
+            log("onService: " + SERVICE_UUID);
+            mSession.getState().moveTo(ClientStateMachine.State.HANDSHAKING);
+            mSession.handshakeSequence = (mSession.handshakeSequence + 1) & 0xFF;
+            byte[] matchControl = mSession.legacy ? Handshake.legacyMatchControl()
+                    : Handshake.matchControl(mSession.handshakeSequence, PayloadCodec.SUPPORTED);
+            sendMessage(mSession, matchControl, PairingMetrics.Phase.MATCH_CONTROL_WRITTEN, null);
+        }
+
+        @Override
+        public void onCharacteristicWrite(BleConnection connection, UUID characteristicUuid, int status) {
+            mOperations.complete(GattOperationQueue.Type.WRITE_CHARACTERISTIC, status);
+        }
+
+        // READ DATA FROM SERVER
+        @Override
+        public void onCharacteristicRead(BleConnection connection, UUID characteristicUuid, byte[] value, int status) {
+            mOperations.complete(GattOperationQueue.Type.READ_CHARACTERISTIC, status);
+            readMessage(mSession, value);
+        }
+
+        @Override
+        public void onDescriptorWrite(BleConnection connection, UUID characteristicUuid, UUID descriptorUuid,
+                                      int status) {
+            mOperations.complete(GattOperationQueue.Type.WRITE_DESCRIPTOR, status);
+        }
+
+        // CHARACTERISTIC CHANGED
+        @Override
+        public void onCharacteristicChanged(BleConnection connection, UUID characteristicUuid, byte[] value) {
+            readMessage(mSession, value);
+        }
+
+        @Override
+        public void onReadRemoteRssi(BleConnection connection, int rssi, int status) {
+            boolean current = mOperations.complete(GattOperationQueue.Type.READ_RSSI, status);
+            if (current && status == BleTransport.STATUS_SUCCESS){
+                log("Bluetooth Read RSSI [" + rssi + "]");
+                onRssiSample(mSession, rssi);
+            }
+        }
+    }
+
+    //SEND MESSAGE TO GATT SERVER
+    private void sendMessage(GattSession session, byte[] message, PairingMetrics.Phase writtenPhase,
+                             GattOperationQueue.Callback written) {
+        if (!mMatched.getAsBoolean()){
+            if (!session.isConnected() || !session.initialized) {
+                closeSession(session);
+                return;
+            }
+            if (session.encoder != null) {
+                message = session.encoder.encode(message);
+            }
+            BleConnection connection = session.getConnection();
+            // One write per fragment; the phase counts once the last one is acknowledged
+            List<byte[]> fragments = Fragmenter.split(message, session.mtu, session.nextMessageId++);
+            for (int i = 0; i < fragments.size() - 1; i++) {
+                session.getOperations().enqueue(GattOperations.writeCharacteristic(connection, CHARACTERISTIC_UUID,
+                        fragments.get(i)));
+            }
+            session.getOperations().enqueue(GattOperations.writeCharacteristic(connection, CHARACTERISTIC_UUID,
+                    fragments.get(fragments.size() - 1))
+                    .setCallback((success, status) -> {
+                        log("onSendMessage: " + success + " status " + status);
+                        if (success) {
+                            mark(session, writtenPhase);
+                        }
+                        if (written != null) {
+                            written.onResult(success, status);
+                        }
+                    }));
+        }
+    }
+
+    // Link parameters
+
+    private void applyProfile(GattSession session, LinkProfile profile) {
+        BleConnection connection = session.getConnection();
+        if (connection == null || session.profile == profile) {
+            return;
+        }
+        session.profile = profile;
+        boolean requested = connection.requestConnectionPriority(profile.connectionPriority);
+        connection.setPreferredPhy(profile.phyMask);
+        log("Link " + session.getAddress() + " -> " + profile + (requested ? "" : ", priority refused"));
+    }
+
+    private void readMessage(GattSession session, byte[] messageBytes){
+        tracePacket("Received from ", session.getAddress(), messageBytes);
+        messageBytes = session.reassembler.accept(messageBytes);
+        if (messageBytes == null) {
+            return;
+        }
+
+        // Only the first echo of a handshake counts
+        if (!session.getState().is(ClientStateMachine.State.HANDSHAKING)) {
+            return;
+        }
+
+        // BECOME FRIENDS HERE!!
+        boolean echo = session.legacy ? Handshake.isLegacyEcho(messageBytes)
+                : Handshake.isMatchControlEcho(messageBytes, session.handshakeSequence);
+        if (echo){
+            session.getState().moveTo(ClientStateMachine.State.PROXIMITY);
+            int codecs = PayloadCodec.select(Handshake.codecs(messageBytes));
+            if (codecs != PayloadCodec.CODEC_NONE) {
+                session.encoder = new PayloadCodec.Encoder(codecs);
+                log("Compression " + codecs + " with " + session.getAddress());
+            }
+            mListener.onStatus(PairingStatus.CLIENT_READY);
+            log("Ready to be friends with " + session.getAddress());
+            mark(session, PairingMetrics.Phase.ECHO_RECEIVED);
+            if (session.knownPeer) {
+                // Paired before, the echo proves it is the same watch; no need to wait for proximity again
+                log("Known peer " + session.getAddress() + ", skipping proximity");
+                becomeFriend(session);
+                return;
+            }
+            session.getProximity().reset();
+            scheduleRssiSample(session, 0);
+        }else if (Handshake.isForeignEcho(messageBytes, session.handshakeSequence)){
+            log("Echo for another client, ignored");
+        }else{
+            mListener.onStatus(PairingStatus.CLIENT_REJECTED);
+            log("NOT FRIENDS");
+            closeSession(session);
+        }
+    }
+
+    // Proximity: each RSSI reading schedules the next one until the estimate settles
+
+    private void scheduleRssiSample(GattSession session, long delayMs) {
+        mScheduler.schedule(() -> {
+            GattOperationQueue operations = session.getOperations();
+            if (mMatched.getAsBoolean() || !session.isConnected()
+                    || operations.isPending(GattOperationQueue.Type.READ_RSSI)) {
+                return;
+            }
+            operations.enqueue(GattOperations.readRemoteRssi(session.getConnection())
+                    .setCallback((success, status) -> {
+                        if (!success) {
+                            scheduleRssiSample(session, mProximityConfig.slowIntervalMs);
+                        }
+                    }));
+        }, delayMs);
+    }
+
+    private void onRssiSample(GattSession session, int rssi) {
+        if (!session.getState().is(ClientStateMachine.State.PROXIMITY)) {
+            return;
+        }
+        ProximityEstimator proximity = session.getProximity();
+        if (proximity.onSample(rssi)) {
+            log("RSSI VALUE WHILE CONNECTING!" + Math.round(proximity.getEstimate())
+                    + " after " + proximity.getSampleCount() + " samples");
+            mark(session, PairingMetrics.Phase.PROXIMITY_REACHED);
+            becomeFriend(session);
+        } else {
+            scheduleRssiSample(session, proximity.nextSampleDelayMs());
+        }
+    }
+
+    void becomeFriend(GattSession session){
+        if (!mMatched.getAsBoolean()){
+            byte[] friend = session.legacy ? Handshake.legacyFriend() : Handshake.friend(session.handshakeSequence);
+            sendMessage(session, friend, PairingMetrics.Phase.FRIEND_WRITTEN,
+                    (success, status) -> {
+                        if (!success) {
+                            logError("FRIEND not delivered to " + session.getAddress());
+                            closeSession(session);
+                            return;
+                        }
+                        mListener.onStatus(PairingStatus.CLIENT_PAIRED);
+                        log("FRIENDS with " + session.getAddress());
+                        session.getState().moveTo(ClientStateMachine.State.PAIRED);
+                        mState.moveTo(ClientStateMachine.State.PAIRED);
+                        rememberPeer(session);
+                        // Only once the watch has acknowledged FRIEND, powering down earlier drops it
+                        mListener.onPaired(session.getAddress());
+                    });
+        }
+    }
+
+    // Pairing metrics
+
+    private void mark(GattSession session, PairingMetrics.Phase phase) {
+        PairingTrace trace = session.trace;
+        if (trace == null) {
+            return;
+        }
+        long now = mClock.elapsedRealtime();
+        trace.mark(phase, now);
+        if (phase == PairingMetrics.Phase.FRIEND_WRITTEN) {
+            trace.complete(now);
+        }
+    }
+}
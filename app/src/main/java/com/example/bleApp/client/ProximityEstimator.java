@@ -0,0 +1,164 @@
+package com.example.bleApp.client;
+
+import com.example.bleApp.protocol.Handshake;
+
+import java.util.Arrays;
+
+/**
+ * Filters a stream of RSSI samples from one peer and reports, once, when the peer is
+ * stably close. A sample far off the median of the last few readings is dropped as an
+ * outlier, and the estimate has to stay above enterRssi for a few samples before it
+ * counts; it only counts as gone again below exitRssi.
+ */
+public class ProximityEstimator {
+
+    public enum Filter {
+        EMA,
+        KALMAN
+    }
+
+    public static class Config {
+        public Filter filter = Filter.KALMAN;
+        // EMA weight of a new sample
+        public double emaAlpha = 0.35;
+        // Kalman process and measurement variance, dB^2
+        public double processNoise = 1.0;
+        public double measurementNoise = 9.0;
+        public double outlierDb = 12;
+        // Raw readings the median is taken over, rejected ones included
+        public int outlierWindow = 5;
+        public int enterRssi = Handshake.CLOSE_ENOUGH_RSSI;
+        public int exitRssi = Handshake.CLOSE_ENOUGH_RSSI - 6;
+        public int stableSamples = 3;
+        // Sample near the threshold at the old 1 s poll rate, less often when clearly out of range
+        public long fastIntervalMs = 1000;
+        public long slowIntervalMs = 3000;
+        public int farMarginDb = 10;
+    }
+
+    private final Config mConfig;
+    private final int[] mRecent;
+    private final int[] mSorted;
+    private int mRecentCount;
+    private int mRecentNext;
+
+    private boolean mHasEstimate;
+    private double mEstimate;
+    private double mVariance;
+    private int mSamples;
+    private int mOutliers;
+    private int mStableCount;
+    private boolean mClose;
+    private boolean mFired;
+
+    public ProximityEstimator(Config config) {
+        mConfig = config;
+        mRecent = new int[Math.max(1, config.outlierWindow)];
+        mSorted = new int[mRecent.length];
+    }
+
+    // Returns true exactly once, for the sample that made the peer stably close
+    public boolean onSample(int rssi) {
+        if (rssi >= 0) {
+            // Not a real reading
+            return false;
+        }
+        mSamples++;
+
+        // A spike stays off the median; a real move soon becomes it and is let through
+        if (Math.abs(rssi - recentMedian(rssi)) > mConfig.outlierDb) {
+            mOutliers++;
+            return false;
+        }
+        if (!mHasEstimate) {
+            mEstimate = rssi;
+            mVariance = mConfig.measurementNoise;
+            mHasEstimate = true;
+        } else {
+            update(rssi);
+        }
+
+        if (mClose) {
+            if (mEstimate < mConfig.exitRssi) {
+                mClose = false;
+                mStableCount = 0;
+            }
+        } else if (mEstimate >= mConfig.enterRssi) {
+            if (++mStableCount >= mConfig.stableSamples) {
+                mClose = true;
+            }
+        } else {
+            mStableCount = 0;
+        }
+
+        if (mClose && !mFired) {
+            mFired = true;
+            return true;
+        }
+        return false;
+    }
+
+    // Adds the sample to the window and returns the median of it
+    private double recentMedian(int rssi) {
+        mRecent[mRecentNext] = rssi;
+        mRecentNext = (mRecentNext + 1) % mRecent.length;
+        if (mRecentCount < mRecent.length) {
+            mRecentCount++;
+        }
+        System.arraycopy(mRecent, 0, mSorted, 0, mRecentCount);
+        Arrays.sort(mSorted, 0, mRecentCount);
+        int middle = mRecentCount / 2;
+        return mRecentCount % 2 == 1 ? mSorted[middle] : (mSorted[middle - 1] + mSorted[middle]) / 2.0;
+    }
+
+    private void update(int rssi) {
+        if (mConfig.filter == Filter.EMA) {
+            mEstimate += mConfig.emaAlpha * (rssi - mEstimate);
+            return;
+        }
+        double predictedVariance = mVariance + mConfig.processNoise;
+        double gain = predictedVariance / (predictedVariance + mConfig.measurementNoise);
+        mEstimate += gain * (rssi - mEstimate);
+        mVariance = (1 - gain) * predictedVariance;
+    }
+
+    public long nextSampleDelayMs() {
+        if (mHasEstimate && mEstimate < mConfig.enterRssi - mConfig.farMarginDb) {
+            return mConfig.slowIntervalMs;
+        }
+        return mConfig.fastIntervalMs;
+    }
+
+    public void reset() {
+        mHasEstimate = false;
+        mEstimate = 0;
+        mVariance = 0;
+        mSamples = 0;
+        mOutliers = 0;
+        mRecentCount = 0;
+        mRecentNext = 0;
+        mStableCount = 0;
+        mClose = false;
+        mFired = false;
+    }
+
+    public boolean hasEstimate() {
+        return mHasEstimate;
+    }
+
+    public double getEstimate() {
+        return mEstimate;
+    }
+
+    public boolean isClose() {
+        return mClose;
+    }
+
+    public int getSampleCount() {
+        return mSamples;
+    }
+
+    public int getOutlierCount() {
+        return mOutliers;
+    }
+}
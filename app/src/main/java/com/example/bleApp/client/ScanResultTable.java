@@ -0,0 +1,303 @@
+package com.example.bleApp.client;
+
+import java.util.Arrays;
+
+/**
+ * Scan results keyed by the 48-bit MAC packed into a long. Open addressing with linear
+ * probing over parallel primitive arrays, so recording a result allocates nothing once
+ * the device is known. Entries keep their stats across scan windows and are evicted
+ * when not seen for ttlMs. Not thread safe; feed it from the thread the scan callback
+ * runs on.
+ */
+public class ScanResultTable<D> {
+
+    public interface Visitor<D> {
+        void visit(long address, D device, int lastRssi, int averageRssi, int hits, long lastSeenMs);
+    }
+
+    // No real MAC has the upper 16 bits set
+    private static final long EMPTY = -1L;
+    private static final float AVERAGE_WEIGHT = 0.25f;
+
+    private final long mTtlMs;
+
+    private long[] mKeys;
+    private Object[] mDevices;
+    private int[] mLastRssi;
+    private float[] mAverageRssi;
+    private int[] mHits;
+    private long[] mLastSeen;
+    // Whether the last advertisement came without a pairing beacon
+    private boolean[] mLegacy;
+    private int mMask;
+    private int mSize;
+
+    public ScanResultTable(int expectedDevices, long ttlMs) {
+        mTtlMs = ttlMs;
+        allocate(capacityFor(expectedDevices));
+    }
+
+    // Records one advertisement, returns how many times the device has been seen
+    public int onResult(long address, D device, int rssi, long nowMs) {
+        return onResult(address, device, rssi, false, nowMs);
+    }
+
+    // As above, legacy marking an advertisement without a pairing beacon
+    public int onResult(long address, D device, int rssi, boolean legacy, long nowMs) {
+        if (address == EMPTY) {
+            return 0;
+        }
+        int slot = slotOf(address);
+        if (mKeys[slot] == EMPTY) {
+            if ((mSize + 1) * 2 > mKeys.length) {
+                resize(mKeys.length * 2);
+                slot = slotOf(address);
+            }
+            mKeys[slot] = address;
+            mDevices[slot] = device;
+            mAverageRssi[slot] = rssi;
+            mHits[slot] = 0;
+            mSize++;
+        } else {
+            mAverageRssi[slot] += (rssi - mAverageRssi[slot]) * AVERAGE_WEIGHT;
+        }
+        mLastRssi[slot] = rssi;
+        mLastSeen[slot] = nowMs;
+        mLegacy[slot] = legacy;
+        return ++mHits[slot];
+    }
+
+    // Drops everything not seen within the ttl, returns how many were dropped
+    public int evict(long nowMs) {
+        int evicted = 0;
+        int i = 0;
+        while (i < mKeys.length) {
+            if (mKeys[i] != EMPTY && nowMs - mLastSeen[i] > mTtlMs) {
+                // The shift may pull a later entry into this slot, so look at it again
+                delete(i);
+                evicted++;
+            } else {
+                i++;
+            }
+        }
+        return evicted;
+    }
+
+    public void forEach(Visitor<D> visitor) {
+        forEachSeenSince(Long.MIN_VALUE, visitor);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachSeenSince(long sinceMs, Visitor<D> visitor) {
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mKeys[i] != EMPTY && mLastSeen[i] >= sinceMs) {
+                visitor.visit(mKeys[i], (D) mDevices[i], mLastRssi[i],
+                        Math.round(mAverageRssi[i]), mHits[i], mLastSeen[i]);
+            }
+        }
+    }
+
+    // Addresses seen since sinceMs, strongest average RSSI first
+    public long[] strongestSeenSince(long sinceMs) {
+        int[] slots = new int[countSeenSince(sinceMs)];
+        int count = 0;
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mKeys[i] != EMPTY && mLastSeen[i] >= sinceMs) {
+                // Insertion sort, a window rarely sees more than a handful of watches
+                int j = count++;
+                while (j > 0 && mAverageRssi[slots[j - 1]] < mAverageRssi[i]) {
+                    slots[j] = slots[j - 1];
+                    j--;
+                }
+                slots[j] = i;
+            }
+        }
+        long[] addresses = new long[count];
+        for (int i = 0; i < count; i++) {
+            addresses[i] = mKeys[slots[i]];
+        }
+        return addresses;
+    }
+
+    public int countSeenSince(long sinceMs) {
+        int count = 0;
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mKeys[i] != EMPTY && mLastSeen[i] >= sinceMs) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public boolean contains(long address) {
+        return mKeys[slotOf(address)] != EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    public D getDevice(long address) {
+        return (D) mDevices[slotOf(address)];
+    }
+
+    // Integer.MIN_VALUE when the device is not in the table
+    public int getLastRssi(long address) {
+        int slot = slotOf(address);
+        return mKeys[slot] == EMPTY ? Integer.MIN_VALUE : mLastRssi[slot];
+    }
+
+    public int getAverageRssi(long address) {
+        int slot = slotOf(address);
+        return mKeys[slot] == EMPTY ? Integer.MIN_VALUE : Math.round(mAverageRssi[slot]);
+    }
+
+    public int getHits(long address) {
+        return mHits[slotOf(address)];
+    }
+
+    // As of its last advertisement, false when the device is not in the table
+    public boolean isLegacy(long address) {
+        return mLegacy[slotOf(address)];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(mKeys, EMPTY);
+        Arrays.fill(mDevices, null);
+        Arrays.fill(mHits, 0);
+        Arrays.fill(mLegacy, false);
+        mSize = 0;
+    }
+
+    // "AA:BB:CC:DD:EE:FF" to 0xAABBCCDDEEFF, or -1 if it is not a MAC
+    public static long packAddress(String address) {
+        if (address == null || address.length() != 17) {
+            return EMPTY;
+        }
+        long packed = 0;
+        for (int i = 0; i < 17; i++) {
+            char c = address.charAt(i);
+            if (i % 3 == 2) {
+                if (c != ':') {
+                    return EMPTY;
+                }
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                return EMPTY;
+            }
+            packed = (packed << 4) | digit;
+        }
+        return packed;
+    }
+
+    public static String formatAddress(long address) {
+        char[] chars = new char[17];
+        for (int i = 16, shift = 0; i >= 0; i -= 3, shift += 8) {
+            int b = (int) (address >>> shift) & 0xFF;
+            chars[i] = Character.toUpperCase(Character.forDigit(b & 0x0F, 16));
+            chars[i - 1] = Character.toUpperCase(Character.forDigit(b >>> 4, 16));
+            if (i > 2) {
+                chars[i - 2] = ':';
+            }
+        }
+        return new String(chars);
+    }
+
+    // Slot holding address, or the empty slot where it would go
+    private int slotOf(long address) {
+        int slot = hash(address) & mMask;
+        while (mKeys[slot] != EMPTY && mKeys[slot] != address) {
+            slot = (slot + 1) & mMask;
+        }
+        return slot;
+    }
+
+    // Backward shift deletion, keeps probe chains intact without tombstones
+    private void delete(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mMask;
+        while (mKeys[next] != EMPTY) {
+            int home = hash(mKeys[next]) & mMask;
+            // Move next into the hole unless its home lies cyclically in (hole, next]
+            if (((next - home) & mMask) >= ((next - hole) & mMask)) {
+                move(next, hole);
+                hole = next;
+            }
+            next = (next + 1) & mMask;
+        }
+        mKeys[hole] = EMPTY;
+        mDevices[hole] = null;
+        mHits[hole] = 0;
+        mLegacy[hole] = false;
+        mSize--;
+    }
+
+    private void move(int from, int to) {
+        mKeys[to] = mKeys[from];
+        mDevices[to] = mDevices[from];
+        mLastRssi[to] = mLastRssi[from];
+        mAverageRssi[to] = mAverageRssi[from];
+        mHits[to] = mHits[from];
+        mLastSeen[to] = mLastSeen[from];
+        mLegacy[to] = mLegacy[from];
+    }
+
+    private void resize(int capacity) {
+        long[] keys = mKeys;
+        Object[] devices = mDevices;
+        int[] lastRssi = mLastRssi;
+        float[] averageRssi = mAverageRssi;
+        int[] hits = mHits;
+        long[] lastSeen = mLastSeen;
+        boolean[] legacy = mLegacy;
+
+        allocate(capacity);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                int slot = slotOf(keys[i]);
+                mKeys[slot] = keys[i];
+                mDevices[slot] = devices[i];
+                mLastRssi[slot] = lastRssi[i];
+                mAverageRssi[slot] = averageRssi[i];
+                mHits[slot] = hits[i];
+                mLastSeen[slot] = lastSeen[i];
+                mLegacy[slot] = legacy[i];
+                mSize++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        Arrays.fill(mKeys, EMPTY);
+        mDevices = new Object[capacity];
+        mLastRssi = new int[capacity];
+        mAverageRssi = new float[capacity];
+        mHits = new int[capacity];
+        mLastSeen = new long[capacity];
+        mLegacy = new boolean[capacity];
+        mMask = capacity - 1;
+        mSize = 0;
+    }
+
+    private static int capacityFor(int expectedDevices) {
+        int capacity = 16;
+        while (capacity < expectedDevices * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // Vendor OUIs make the low bits of nearby MACs very similar, so mix before masking
+    private static int hash(long address) {
+        long h = address * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
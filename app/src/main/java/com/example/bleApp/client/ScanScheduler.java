@@ -0,0 +1,123 @@
+package com.example.bleApp.client;
+
+import static com.example.bleApp.Constants.SCAN_PERIOD;
+
+/**
+ * Decides when to scan, for how long and how hard. The first window, and the first
+ * one after a window that found peers, scans at low latency; every empty window backs off
+ * exponentially and drops to the profile's idle mode. Starts are also spaced so that
+ * no more than five happen in 30 s, the point where Android silently stops
+ * delivering results to the app.
+ */
+public class ScanScheduler {
+
+    public static final int MAX_STARTS = 5;
+    public static final long START_LIMIT_WINDOW_MS = 30_000;
+    private static final long START_LIMIT_MARGIN_MS = 250;
+
+    public enum Mode {
+        LOW_LATENCY,
+        BALANCED,
+        LOW_POWER
+    }
+
+    public enum Profile {
+        // firstWindow, idleWindow, initialIdle, maxIdle, burst mode, idle mode
+        LATENCY(3000, 3000, 500, 8_000, Mode.LOW_LATENCY, Mode.BALANCED),
+        BALANCED(3000, 4000, 1000, 30_000, Mode.LOW_LATENCY, Mode.BALANCED),
+        POWER_SAVER(SCAN_PERIOD, SCAN_PERIOD, 2000, 60_000, Mode.BALANCED, Mode.LOW_POWER);
+
+        final long firstWindowMs;
+        final long idleWindowMs;
+        final long initialIdleMs;
+        final long maxIdleMs;
+        final Mode burstMode;
+        final Mode idleMode;
+
+        Profile(long firstWindowMs, long idleWindowMs, long initialIdleMs, long maxIdleMs,
+                Mode burstMode, Mode idleMode) {
+            this.firstWindowMs = firstWindowMs;
+            this.idleWindowMs = idleWindowMs;
+            this.initialIdleMs = initialIdleMs;
+            this.maxIdleMs = maxIdleMs;
+            this.burstMode = burstMode;
+            this.idleMode = idleMode;
+        }
+    }
+
+    public static class Plan {
+        public final long delayMs;
+        public final long windowMs;
+        public final Mode mode;
+
+        Plan(long delayMs, long windowMs, Mode mode) {
+            this.delayMs = delayMs;
+            this.windowMs = windowMs;
+            this.mode = mode;
+        }
+    }
+
+    private Profile mProfile;
+    private int mEmptyWindows;
+    private long mLastWindowEndMs = Long.MIN_VALUE;
+
+    private final long[] mStarts = new long[MAX_STARTS];
+    private int mStartCount;
+    private int mOldestStart;
+
+    public ScanScheduler(Profile profile) {
+        mProfile = profile;
+    }
+
+    public synchronized void setProfile(Profile profile) {
+        mProfile = profile;
+    }
+
+    public synchronized Profile getProfile() {
+        return mProfile;
+    }
+
+    // What the next scan should look like if the caller wants one at nowMs
+    public synchronized Plan nextScan(long nowMs) {
+        long startAt = nowMs;
+        if (mEmptyWindows > 0 && mLastWindowEndMs != Long.MIN_VALUE) {
+            startAt = Math.max(startAt, mLastWindowEndMs + idleDelay());
+        }
+        if (mStartCount == MAX_STARTS) {
+            startAt = Math.max(startAt, mStarts[mOldestStart] + START_LIMIT_WINDOW_MS + START_LIMIT_MARGIN_MS);
+        }
+
+        if (mEmptyWindows == 0) {
+            return new Plan(startAt - nowMs, mProfile.firstWindowMs, mProfile.burstMode);
+        }
+        return new Plan(startAt - nowMs, mProfile.idleWindowMs, mProfile.idleMode);
+    }
+
+    public synchronized void onScanStarted(long nowMs) {
+        if (mStartCount < MAX_STARTS) {
+            mStarts[(mOldestStart + mStartCount) % MAX_STARTS] = nowMs;
+            mStartCount++;
+        } else {
+            mStarts[mOldestStart] = nowMs;
+            mOldestStart = (mOldestStart + 1) % MAX_STARTS;
+        }
+    }
+
+    public synchronized void onWindowComplete(long nowMs, boolean foundResults) {
+        mLastWindowEndMs = nowMs;
+        if (foundResults) {
+            mEmptyWindows = 0;
+        } else {
+            mEmptyWindows++;
+        }
+    }
+
+    public synchronized int getEmptyWindows() {
+        return mEmptyWindows;
+    }
+
+    private long idleDelay() {
+        int doublings = Math.min(mEmptyWindows - 1, 20);
+        return Math.min(mProfile.maxIdleMs, mProfile.initialIdleMs << doublings);
+    }
+}
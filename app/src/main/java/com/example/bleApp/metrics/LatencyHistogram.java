@@ -0,0 +1,97 @@
+package com.example.bleApp.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear millisecond histogram: exact below 8 ms, then 8 buckets per power of two,
+ * so any recorded value is off by at most 12.5%. Recording is a couple of atomic adds
+ * and never allocates or locks.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // Values up to 2^31 ms, anything larger lands in the last bucket
+    private static final int MAX_BITS = 31;
+    private static final int BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong();
+
+    public void record(long valueMs) {
+        if (valueMs < 0) {
+            valueMs = 0;
+        }
+        mCounts.incrementAndGet(bucketOf(valueMs));
+        mCount.incrementAndGet();
+        mSum.addAndGet(valueMs);
+        long max;
+        while (valueMs > (max = mMax.get()) && !mMax.compareAndSet(max, valueMs)) {
+            // Lost a race with another writer, look again
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMax() {
+        return mMax.get();
+    }
+
+    public long getMean() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mSum.get() / count;
+    }
+
+    // Upper bound of the bucket holding the given percentile, 0 when empty
+    public long getPercentile(double percentile) {
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts.set(i, 0);
+        }
+        mCount.set(0);
+        mSum.set(0);
+        mMax.set(0);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        if (msb > MAX_BITS) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (msb - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (msb - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int msb = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long lower = (1L << msb) | ((long) sub << (msb - SUB_BITS));
+        return lower + (1L << (msb - SUB_BITS)) - 1;
+    }
+}
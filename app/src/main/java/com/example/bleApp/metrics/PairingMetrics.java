@@ -0,0 +1,213 @@
+package com.example.bleApp.metrics;
+
+import com.example.bleApp.util.Scheduler;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Where pairing time goes. Every phase of the handshake gets a histogram of the time
+ * since the previous phase of the same attempt, plus counters of how many attempts
+ * reached it and how many gave up right after it. Each role also gets a histogram of
+ * completed attempts. One process-wide instance is shared by both services.
+ */
+public class PairingMetrics {
+
+    public enum Role {
+        CLIENT,
+        SERVER
+    }
+
+    public enum Phase {
+        SCAN_STARTED(Role.CLIENT),
+        FIRST_RESULT(Role.CLIENT),
+        CONNECTED(Role.CLIENT),
+        SERVICES_DISCOVERED(Role.CLIENT),
+        MATCH_CONTROL_WRITTEN(Role.CLIENT),
+        ECHO_RECEIVED(Role.CLIENT),
+        PROXIMITY_REACHED(Role.CLIENT),
+        FRIEND_WRITTEN(Role.CLIENT),
+
+        PEER_CONNECTED(Role.SERVER),
+        MATCH_CONTROL_RECEIVED(Role.SERVER),
+        ECHO_SENT(Role.SERVER),
+        FRIEND_RECEIVED(Role.SERVER);
+
+        public final Role role;
+
+        Phase(Role role) {
+            this.role = role;
+        }
+    }
+
+    public interface Sink {
+        void dump(String line);
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final Role[] ROLES = Role.values();
+    private static final PairingMetrics GLOBAL = new PairingMetrics();
+
+    private final LatencyHistogram[] mPhases = new LatencyHistogram[PHASES.length];
+    private final LatencyHistogram[] mTotals = new LatencyHistogram[ROLES.length];
+    private final AtomicLongArray mReached = new AtomicLongArray(PHASES.length);
+    private final AtomicLongArray mAbandoned = new AtomicLongArray(PHASES.length);
+    private final AtomicLongArray mCompleted = new AtomicLongArray(ROLES.length);
+
+    public PairingMetrics() {
+        for (int i = 0; i < mPhases.length; i++) {
+            mPhases[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < mTotals.length; i++) {
+            mTotals[i] = new LatencyHistogram();
+        }
+    }
+
+    public static PairingMetrics global() {
+        return GLOBAL;
+    }
+
+    // Starts an attempt with its first phase reached at nowMs
+    public PairingTrace start(Phase first, long nowMs) {
+        mReached.incrementAndGet(first.ordinal());
+        return new PairingTrace(this, first, nowMs);
+    }
+
+    void onPhase(Phase phase, long sincePreviousMs) {
+        mPhases[phase.ordinal()].record(sincePreviousMs);
+        mReached.incrementAndGet(phase.ordinal());
+    }
+
+    void onCompleted(Role role, long totalMs) {
+        mTotals[role.ordinal()].record(totalMs);
+        mCompleted.incrementAndGet(role.ordinal());
+    }
+
+    void onAbandoned(Phase lastPhase) {
+        mAbandoned.incrementAndGet(lastPhase.ordinal());
+    }
+
+    public LatencyHistogram getHistogram(Phase phase) {
+        return mPhases[phase.ordinal()];
+    }
+
+    public LatencyHistogram getTotal(Role role) {
+        return mTotals[role.ordinal()];
+    }
+
+    public long getReached(Phase phase) {
+        return mReached.get(phase.ordinal());
+    }
+
+    public long getAbandoned(Phase phase) {
+        return mAbandoned.get(phase.ordinal());
+    }
+
+    public long getAbandoned(Role role) {
+        long abandoned = 0;
+        for (Phase phase : PHASES) {
+            if (phase.role == role) {
+                abandoned += mAbandoned.get(phase.ordinal());
+            }
+        }
+        return abandoned;
+    }
+
+    public long getCompleted(Role role) {
+        return mCompleted.get(role.ordinal());
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : mPhases) {
+            histogram.reset();
+        }
+        for (LatencyHistogram histogram : mTotals) {
+            histogram.reset();
+        }
+        for (int i = 0; i < PHASES.length; i++) {
+            mReached.set(i, 0);
+            mAbandoned.set(i, 0);
+        }
+        for (int i = 0; i < ROLES.length; i++) {
+            mCompleted.set(i, 0);
+        }
+    }
+
+    // One line per role and per phase that was reached at least once
+    public void dump(Sink sink) {
+        for (Role role : ROLES) {
+            if (getReached(PHASES[firstPhase(role)]) == 0) {
+                continue;
+            }
+            LatencyHistogram total = getTotal(role);
+            sink.dump(String.format(Locale.US, "%s completed=%d abandoned=%d total p50=%d p90=%d p99=%d max=%d ms",
+                    role, getCompleted(role), getAbandoned(role), total.getPercentile(50),
+                    total.getPercentile(90), total.getPercentile(99), total.getMax()));
+            for (Phase phase : PHASES) {
+                if (phase.role != role || getReached(phase) == 0) {
+                    continue;
+                }
+                LatencyHistogram histogram = getHistogram(phase);
+                sink.dump(String.format(Locale.US, "  %-22s reached=%d abandoned=%d p50=%d p90=%d p99=%d max=%d ms",
+                        phase, getReached(phase), getAbandoned(phase), histogram.getPercentile(50),
+                        histogram.getPercentile(90), histogram.getPercentile(99), histogram.getMax()));
+            }
+        }
+    }
+
+    // Dumps every intervalMs until cancelled
+    public Scheduler.Cancellable dumpEvery(Scheduler scheduler, long intervalMs, Sink sink) {
+        Dumper dumper = new Dumper(scheduler, intervalMs, sink);
+        dumper.scheduleNext();
+        return dumper;
+    }
+
+    private static int firstPhase(Role role) {
+        for (Phase phase : PHASES) {
+            if (phase.role == role) {
+                return phase.ordinal();
+            }
+        }
+        return 0;
+    }
+
+    private class Dumper implements Scheduler.Cancellable, Runnable {
+
+        private final Scheduler mScheduler;
+        private final long mIntervalMs;
+        private final Sink mSink;
+        private Scheduler.Cancellable mNext;
+        private boolean mCancelled;
+
+        Dumper(Scheduler scheduler, long intervalMs, Sink sink) {
+            mScheduler = scheduler;
+            mIntervalMs = intervalMs;
+            mSink = sink;
+        }
+
+        synchronized void scheduleNext() {
+            if (!mCancelled) {
+                mNext = mScheduler.schedule(this, mIntervalMs);
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (mCancelled) {
+                    return;
+                }
+            }
+            dump(mSink);
+            scheduleNext();
+        }
+
+        @Override
+        public synchronized void cancel() {
+            mCancelled = true;
+            if (mNext != null) {
+                mNext.cancel();
+            }
+        }
+    }
+}
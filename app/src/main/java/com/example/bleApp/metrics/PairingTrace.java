@@ -0,0 +1,72 @@
+package com.example.bleApp.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Phase timestamps of one pairing attempt. Each phase counts the first time it is
+ * marked; later marks of the same phase, or marks after the attempt ended, are ignored.
+ */
+public class PairingTrace {
+
+    private final PairingMetrics mMetrics;
+    private final long[] mMarks = new long[PairingMetrics.Phase.values().length];
+    private final long mStartedAtMs;
+    private PairingMetrics.Phase mLastPhase;
+    private long mLastMarkMs;
+    private boolean mEnded;
+
+    PairingTrace(PairingMetrics metrics, PairingMetrics.Phase first, long nowMs) {
+        mMetrics = metrics;
+        Arrays.fill(mMarks, -1);
+        mMarks[first.ordinal()] = nowMs;
+        mStartedAtMs = nowMs;
+        mLastPhase = first;
+        mLastMarkMs = nowMs;
+    }
+
+    private PairingTrace(PairingTrace other) {
+        mMetrics = other.mMetrics;
+        System.arraycopy(other.mMarks, 0, mMarks, 0, mMarks.length);
+        mStartedAtMs = other.mStartedAtMs;
+        mLastPhase = other.mLastPhase;
+        mLastMarkMs = other.mLastMarkMs;
+    }
+
+    // An independent continuation, e.g. one per peer found by a single scan
+    public synchronized PairingTrace fork() {
+        return new PairingTrace(this);
+    }
+
+    public synchronized void mark(PairingMetrics.Phase phase, long nowMs) {
+        if (mEnded || mMarks[phase.ordinal()] >= 0) {
+            return;
+        }
+        mMarks[phase.ordinal()] = nowMs;
+        mMetrics.onPhase(phase, nowMs - mLastMarkMs);
+        mLastPhase = phase;
+        mLastMarkMs = nowMs;
+    }
+
+    public synchronized boolean isMarked(PairingMetrics.Phase phase) {
+        return mMarks[phase.ordinal()] >= 0;
+    }
+
+    public synchronized void complete(long nowMs) {
+        if (!mEnded) {
+            mEnded = true;
+            mMetrics.onCompleted(mLastPhase.role, nowMs - mStartedAtMs);
+        }
+    }
+
+    // Counts the attempt as given up after its last phase, unless it already ended
+    public synchronized void abandon() {
+        if (!mEnded) {
+            mEnded = true;
+            mMetrics.onAbandoned(mLastPhase);
+        }
+    }
+
+    public synchronized boolean isEnded() {
+        return mEnded;
+    }
+}
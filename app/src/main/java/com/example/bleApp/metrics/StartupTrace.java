@@ -0,0 +1,77 @@
+package com.example.bleApp.metrics;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Cold start timeline, from process start to the first scan and advertisement. Each
+ * step is recorded once as a span of elapsed realtime, so steps that run in parallel
+ * show up overlapping. Nothing is recorded until begin() sets the origin, which keeps
+ * jobs started at boot without the activity out of it.
+ */
+public final class StartupTrace {
+
+    public enum Step {
+        LAYOUT_INFLATED,
+        PEERS_LOADED,
+        ADAPTER_ON,
+        PERMISSIONS_GRANTED,
+        JOBS_SCHEDULED,
+        FIRST_SCAN,
+        FIRST_ADVERTISE
+    }
+
+    private static final Step[] STEPS = Step.values();
+    private static final StartupTrace GLOBAL = new StartupTrace();
+
+    private final long[] mStarts = new long[STEPS.length];
+    private final long[] mEnds = new long[STEPS.length];
+    private long mOriginMs = -1;
+
+    public StartupTrace() {
+        Arrays.fill(mEnds, -1);
+    }
+
+    public static StartupTrace global() {
+        return GLOBAL;
+    }
+
+    // Only the first call counts, later activity recreations keep the cold start origin
+    public synchronized void begin(long originMs) {
+        if (mOriginMs < 0) {
+            mOriginMs = originMs;
+        }
+    }
+
+    // Returns true if this is the first time step was recorded
+    public synchronized boolean span(Step step, long startMs, long endMs) {
+        int i = step.ordinal();
+        if (mOriginMs < 0 || mEnds[i] >= 0) {
+            return false;
+        }
+        mStarts[i] = startMs;
+        mEnds[i] = endMs;
+        return true;
+    }
+
+    // Step that began with the process
+    public synchronized boolean mark(Step step, long nowMs) {
+        return span(step, mOriginMs, nowMs);
+    }
+
+    public synchronized boolean isRecorded(Step step) {
+        return mEnds[step.ordinal()] >= 0;
+    }
+
+    // Start and end relative to the origin, in step order
+    public synchronized void dump(PairingMetrics.Sink sink) {
+        for (Step step : STEPS) {
+            int i = step.ordinal();
+            if (mEnds[i] < 0) {
+                continue;
+            }
+            sink.dump(String.format(Locale.US, "Startup %-20s %6d -> %6d ms (%d ms)", step,
+                    mStarts[i] - mOriginMs, mEnds[i] - mOriginMs, mEnds[i] - mStarts[i]));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.bleApp.protocol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits messages that don't fit into one ATT write into fragments of the negotiated
+ * MTU, each sent as a plain write so a message costs one round trip per packet:
+ *
+ * byte 0   magic (0xEF)
+ * byte 1   message id
+ * byte 2   fragment index
+ * byte 3   flags, FLAG_LAST on the final fragment
+ * byte 4.. message bytes
+ *
+ * Messages that fit go out unchanged, so handshake frames stay single writes.
+ * Reassembler puts them back together.
+ */
+public final class Fragmenter {
+
+    public static final int DEFAULT_MTU = 23;
+    public static final int MAX_MTU = 517;
+    // Opcode and handle of an ATT write or notification
+    public static final int ATT_HEADER_LENGTH = 3;
+
+    public static final int MAGIC = 0xEF;
+    public static final int HEADER_LENGTH = 4;
+    public static final int FLAG_LAST = 0x01;
+    public static final int MAX_FRAGMENTS = 256;
+    // Largest message either side is willing to reassemble
+    public static final int MAX_MESSAGE_LENGTH = 4096;
+
+    private static final int INDEX_MAGIC = 0;
+    static final int INDEX_MESSAGE_ID = 1;
+    static final int INDEX_FRAGMENT = 2;
+    static final int INDEX_FLAGS = 3;
+
+    private Fragmenter() {
+    }
+
+    // Largest value one write or notification can carry at this MTU
+    public static int maxValueLength(int mtu) {
+        return Math.max(mtu, DEFAULT_MTU) - ATT_HEADER_LENGTH;
+    }
+
+    public static boolean isFragment(byte[] value) {
+        return value != null && value.length >= HEADER_LENGTH && (value[INDEX_MAGIC] & 0xFF) == MAGIC;
+    }
+
+    public static boolean needsFragmenting(byte[] message, int mtu) {
+        // A short message that happens to start with the magic still gets a header
+        return message.length > maxValueLength(mtu) || isFragment(message);
+    }
+
+    public static int fragmentCount(int messageLength, int mtu) {
+        int perFragment = maxValueLength(mtu) - HEADER_LENGTH;
+        return Math.max(1, (messageLength + perFragment - 1) / perFragment);
+    }
+
+    // The values to write in order; messageId tells consecutive messages apart
+    public static List<byte[]> split(byte[] message, int mtu, int messageId) {
+        if (!needsFragmenting(message, mtu)) {
+            return Collections.singletonList(message);
+        }
+        int count = fragmentCount(message.length, mtu);
+        if (count > MAX_FRAGMENTS) {
+            throw new IllegalArgumentException("Message of " + message.length + " bytes needs "
+                    + count + " fragments at MTU " + mtu);
+        }
+        int perFragment = maxValueLength(mtu) - HEADER_LENGTH;
+        List<byte[]> fragments = new ArrayList<>(count);
+        for (int index = 0; index < count; index++) {
+            int offset = index * perFragment;
+            int length = Math.min(perFragment, message.length - offset);
+            byte[] fragment = new byte[HEADER_LENGTH + length];
+            fragment[INDEX_MAGIC] = (byte) MAGIC;
+            fragment[INDEX_MESSAGE_ID] = (byte) messageId;
+            fragment[INDEX_FRAGMENT] = (byte) index;
+            fragment[INDEX_FLAGS] = (byte) (index == count - 1 ? FLAG_LAST : 0);
+            System.arraycopy(message, offset, fragment, HEADER_LENGTH, length);
+            fragments.add(fragment);
+        }
+        return fragments;
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.bleApp.protocol;
+
+import static com.example.bleApp.protocol.HandshakeFrame.OP_FRIEND;
+import static com.example.bleApp.protocol.HandshakeFrame.OP_MATCH_CONTROL;
+import static com.example.bleApp.protocol.HandshakeFrame.OP_MATCH_ECHO;
+
+import com.example.bleApp.Constants;
+import com.example.bleApp.util.ByteUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Rules of the pairing handshake, shared by the services and the simulator:
+ * client writes MATCH_CONTROL, server notifies a MATCH_ECHO carrying the same
+ * sequence number, client waits until the peer is close enough and writes FRIEND.
+ * MATCH_CONTROL may carry a one byte PayloadCodec mask offered by the client, and the
+ * echo then carries the mask the server picked; peers without it just see no payload.
+ *
+ * Watches and phones from before HandshakeFrame send the UTF-8 strings of
+ * Constants.XEE_KIDS_MATCH_CONTROL and XEE_KIDS_FRIEND instead, and the echo is the
+ * MATCH_CONTROL string reversed. Both sides still speak that to legacy peers; the
+ * strings never start with the frame magic, so the two can't be confused.
+ */
+public class Handshake {
+
+    public static final int CLOSE_ENOUGH_RSSI = -60;
+    // Stands for the sequence of legacy payloads, which carry none; outside a frame's range
+    public static final int LEGACY_SEQUENCE = 0x100;
+
+    private static final byte[] LEGACY_MATCH_CONTROL = Constants.XEE_KIDS_MATCH_CONTROL.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LEGACY_FRIEND = Constants.XEE_KIDS_FRIEND.getBytes(StandardCharsets.UTF_8);
+
+    public static byte[] matchControl(int sequence) {
+        return HandshakeFrame.encode(OP_MATCH_CONTROL, sequence);
+    }
+
+    public static byte[] matchControl(int sequence, int offeredCodecs) {
+        return HandshakeFrame.encode(OP_MATCH_CONTROL, sequence, new byte[]{(byte) offeredCodecs});
+    }
+
+    public static byte[] friend(int sequence) {
+        return HandshakeFrame.encode(OP_FRIEND, sequence);
+    }
+
+    public static boolean isMatchControl(byte[] value) {
+        return HandshakeFrame.is(value, OP_MATCH_CONTROL);
+    }
+
+    public static boolean isFriend(byte[] value) {
+        return HandshakeFrame.is(value, OP_FRIEND);
+    }
+
+    // Server reply to MATCH_CONTROL
+    public static byte[] echo(byte[] matchControl) {
+        return HandshakeFrame.encode(OP_MATCH_ECHO, HandshakeFrame.sequence(matchControl));
+    }
+
+    public static byte[] echo(byte[] matchControl, int selectedCodecs) {
+        return HandshakeFrame.encode(OP_MATCH_ECHO, HandshakeFrame.sequence(matchControl),
+                new byte[]{(byte) selectedCodecs});
+    }
+
+    // Codec mask offered by MATCH_CONTROL or picked in the echo, CODEC_NONE if absent
+    public static int codecs(byte[] frame) {
+        if (HandshakeFrame.payloadLength(frame) < 1) {
+            return PayloadCodec.CODEC_NONE;
+        }
+        return frame[HandshakeFrame.HEADER_LENGTH] & 0xFF;
+    }
+
+    public static boolean isMatchControlEcho(byte[] value, int sequence) {
+        return HandshakeFrame.is(value, OP_MATCH_ECHO) && HandshakeFrame.sequence(value) == (sequence & 0xFF);
+    }
+
+    // Echo answering some other client's MATCH_CONTROL; current servers only notify the requester
+    public static boolean isForeignEcho(byte[] value, int sequence) {
+        return HandshakeFrame.is(value, OP_MATCH_ECHO) && HandshakeFrame.sequence(value) != (sequence & 0xFF);
+    }
+
+    // Opcode of a frame, or the one a legacy string stands for
+    public static int opcode(byte[] value) {
+        if (isLegacyMatchControl(value)) {
+            return OP_MATCH_CONTROL;
+        }
+        if (isLegacyFriend(value)) {
+            return OP_FRIEND;
+        }
+        return HandshakeFrame.opcode(value);
+    }
+
+    // Sequence of a frame, LEGACY_SEQUENCE for a legacy string
+    public static int sequence(byte[] value) {
+        if (isLegacy(value)) {
+            return LEGACY_SEQUENCE;
+        }
+        return HandshakeFrame.sequence(value);
+    }
+
+    // Legacy peers
+
+    public static byte[] legacyMatchControl() {
+        return LEGACY_MATCH_CONTROL.clone();
+    }
+
+    public static byte[] legacyFriend() {
+        return LEGACY_FRIEND.clone();
+    }
+
+    public static byte[] legacyEcho() {
+        return ByteUtils.reverse(LEGACY_MATCH_CONTROL);
+    }
+
+    public static boolean isLegacy(byte[] value) {
+        return isLegacyMatchControl(value) || isLegacyFriend(value);
+    }
+
+    public static boolean isLegacyMatchControl(byte[] value) {
+        return Arrays.equals(value, LEGACY_MATCH_CONTROL);
+    }
+
+    public static boolean isLegacyFriend(byte[] value) {
+        return Arrays.equals(value, LEGACY_FRIEND);
+    }
+
+    // Compared back to front, without reversing a copy
+    public static boolean isLegacyEcho(byte[] value) {
+        if (value == null || value.length != LEGACY_MATCH_CONTROL.length) {
+            return false;
+        }
+        for (int i = 0, j = value.length - 1; j >= 0; i++, j--) {
+            if (value[i] != LEGACY_MATCH_CONTROL[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.bleApp.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary handshake frame, parsed in place without intermediate Strings:
+ *
+ * byte 0   magic (0xEE)
+ * byte 1   version (high nibble) | opcode (low nibble)
+ * byte 2   sequence number
+ * byte 3.. optional payload
+ *
+ * Parsers return OP_INVALID / -1 for anything that is not a frame we understand.
+ */
+public class HandshakeFrame {
+
+    public static final int MAGIC = 0xEE;
+    public static final int VERSION = 1;
+    public static final int HEADER_LENGTH = 3;
+
+    public static final int OP_INVALID = -1;
+    public static final int OP_MATCH_CONTROL = 0x1;
+    public static final int OP_MATCH_ECHO = 0x2;
+    public static final int OP_FRIEND = 0x3;
+
+    private static final int INDEX_MAGIC = 0;
+    private static final int INDEX_HEADER = 1;
+    private static final int INDEX_SEQUENCE = 2;
+
+    // Encoding
+
+    public static byte[] encode(int opcode, int sequence) {
+        byte[] frame = new byte[HEADER_LENGTH];
+        encode(frame, 0, opcode, sequence);
+        return frame;
+    }
+
+    public static byte[] encode(int opcode, int sequence, byte[] payload) {
+        byte[] frame = new byte[HEADER_LENGTH + payload.length];
+        int offset = encode(frame, 0, opcode, sequence);
+        System.arraycopy(payload, 0, frame, offset, payload.length);
+        return frame;
+    }
+
+    // Writes the header at offset and returns where the payload starts
+    public static int encode(byte[] out, int offset, int opcode, int sequence) {
+        out[offset + INDEX_MAGIC] = (byte) MAGIC;
+        out[offset + INDEX_HEADER] = (byte) ((VERSION << 4) | (opcode & 0x0F));
+        out[offset + INDEX_SEQUENCE] = (byte) sequence;
+        return offset + HEADER_LENGTH;
+    }
+
+    public static void encode(ByteBuffer out, int opcode, int sequence) {
+        out.put((byte) MAGIC);
+        out.put((byte) ((VERSION << 4) | (opcode & 0x0F)));
+        out.put((byte) sequence);
+    }
+
+    // Decoding
+
+    public static int opcode(byte[] frame) {
+        if (frame == null || frame.length < HEADER_LENGTH || (frame[INDEX_MAGIC] & 0xFF) != MAGIC) {
+            return OP_INVALID;
+        }
+        return opcode(frame[INDEX_HEADER]);
+    }
+
+    public static int opcode(ByteBuffer frame) {
+        int position = frame.position();
+        if (frame.remaining() < HEADER_LENGTH || (frame.get(position + INDEX_MAGIC) & 0xFF) != MAGIC) {
+            return OP_INVALID;
+        }
+        return opcode(frame.get(position + INDEX_HEADER));
+    }
+
+    private static int opcode(byte header) {
+        int version = (header & 0xF0) >>> 4;
+        if (version == 0 || version > VERSION) {
+            return OP_INVALID;
+        }
+        return header & 0x0F;
+    }
+
+    public static int sequence(byte[] frame) {
+        if (opcode(frame) == OP_INVALID) {
+            return -1;
+        }
+        return frame[INDEX_SEQUENCE] & 0xFF;
+    }
+
+    public static int sequence(ByteBuffer frame) {
+        if (opcode(frame) == OP_INVALID) {
+            return -1;
+        }
+        return frame.get(frame.position() + INDEX_SEQUENCE) & 0xFF;
+    }
+
+    public static int payloadLength(byte[] frame) {
+        if (opcode(frame) == OP_INVALID) {
+            return -1;
+        }
+        return frame.length - HEADER_LENGTH;
+    }
+
+    public static boolean is(byte[] frame, int opcode) {
+        return opcode(frame) == opcode;
+    }
+}
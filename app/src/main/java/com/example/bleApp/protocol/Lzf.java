@@ -0,0 +1,163 @@
+package com.example.bleApp.protocol;
+
+/**
+ * LZF, a byte oriented LZ77 small enough to run per packet. The stream is a sequence of
+ * control bytes: below 32 it is followed by that many plus one literal bytes, otherwise
+ * its top three bits are a match length (7 meaning another length byte follows) and the
+ * low five bits the high part of a back reference of up to 8 KiB. Matches are found
+ * through a hash table of three byte prefixes, so compression is one pass with no
+ * backtracking.
+ */
+public final class Lzf {
+
+    private static final int HASH_LOG = 12;
+    private static final int HASH_SIZE = 1 << HASH_LOG;
+    private static final int MAX_LITERAL = 1 << 5;
+    private static final int MAX_OFFSET = 1 << 13;
+    private static final int MAX_MATCH = (1 << 8) + (1 << 3);
+
+    private Lzf() {
+    }
+
+    // Scratch table for compress, one per thread or per encoder. It is never cleared: an
+    // entry left by an earlier call is only used if it lies behind the current position
+    // and its three bytes match, which makes it a valid match like any other
+    public static int[] newTable() {
+        return new int[HASH_SIZE];
+    }
+
+    // Worst case output size, for incompressible input
+    public static int maxCompressedLength(int length) {
+        return length + (length + MAX_LITERAL - 1) / MAX_LITERAL + 1;
+    }
+
+    /**
+     * Compresses in[inOffset, inOffset + length) into out at outOffset and returns the
+     * number of bytes written, or 0 if the result would not fit into out.
+     */
+    public static int compress(byte[] in, int inOffset, int length, byte[] out, int outOffset, int[] table) {
+        if (length == 0) {
+            return 0;
+        }
+        int inEnd = inOffset + length;
+        int outEnd = out.length;
+        int literalStart = outOffset;
+        int op = outOffset + 1;
+        int literals = 0;
+        int ip = inOffset;
+        if (op > outEnd) {
+            return 0;
+        }
+
+        while (ip < inEnd - 2) {
+            int hash = hash(in, ip);
+            int ref = table[hash];
+            table[hash] = ip;
+            int offset = ip - ref - 1;
+            if (ref >= inOffset && ref < ip && offset < MAX_OFFSET
+                    && in[ref] == in[ip] && in[ref + 1] == in[ip + 1] && in[ref + 2] == in[ip + 2]) {
+                int maxLength = Math.min(MAX_MATCH, inEnd - ip);
+                int matchLength = 3;
+                while (matchLength < maxLength && in[ref + matchLength] == in[ip + matchLength]) {
+                    matchLength++;
+                }
+                // Close the literal run, or drop its unused control byte
+                if (literals > 0) {
+                    out[literalStart] = (byte) (literals - 1);
+                } else {
+                    op--;
+                }
+                if (op + 3 > outEnd) {
+                    return 0;
+                }
+                int encodedLength = matchLength - 2;
+                if (encodedLength < 7) {
+                    out[op++] = (byte) ((encodedLength << 5) | (offset >>> 8));
+                } else {
+                    out[op++] = (byte) ((7 << 5) | (offset >>> 8));
+                    out[op++] = (byte) (encodedLength - 7);
+                }
+                out[op++] = (byte) offset;
+                ip += matchLength;
+                literalStart = op++;
+                literals = 0;
+                continue;
+            }
+            if (op >= outEnd) {
+                return 0;
+            }
+            out[op++] = in[ip++];
+            if (++literals == MAX_LITERAL) {
+                out[literalStart] = (byte) (MAX_LITERAL - 1);
+                literalStart = op++;
+                literals = 0;
+            }
+        }
+        while (ip < inEnd) {
+            if (op >= outEnd) {
+                return 0;
+            }
+            out[op++] = in[ip++];
+            if (++literals == MAX_LITERAL) {
+                out[literalStart] = (byte) (MAX_LITERAL - 1);
+                literalStart = op++;
+                literals = 0;
+            }
+        }
+        if (literals > 0) {
+            out[literalStart] = (byte) (literals - 1);
+        } else {
+            op--;
+        }
+        return op - outOffset;
+    }
+
+    /**
+     * Decompresses in[inOffset, inOffset + length) into out at outOffset and returns the
+     * number of bytes written. Throws IllegalArgumentException on a corrupt stream or
+     * one that doesn't fit into out.
+     */
+    public static int decompress(byte[] in, int inOffset, int length, byte[] out, int outOffset) {
+        int inEnd = inOffset + length;
+        int ip = inOffset;
+        int op = outOffset;
+        while (ip < inEnd) {
+            int control = in[ip++] & 0xFF;
+            if (control < MAX_LITERAL) {
+                int literals = control + 1;
+                if (ip + literals > inEnd || op + literals > out.length) {
+                    throw new IllegalArgumentException("Literal run past end at " + ip);
+                }
+                System.arraycopy(in, ip, out, op, literals);
+                ip += literals;
+                op += literals;
+                continue;
+            }
+            int matchLength = control >>> 5;
+            if (matchLength == 7) {
+                if (ip >= inEnd) {
+                    throw new IllegalArgumentException("Truncated match at " + ip);
+                }
+                matchLength += in[ip++] & 0xFF;
+            }
+            matchLength += 2;
+            if (ip >= inEnd) {
+                throw new IllegalArgumentException("Truncated match at " + ip);
+            }
+            int ref = op - (((control & 0x1F) << 8) | (in[ip++] & 0xFF)) - 1;
+            if (ref < outOffset || op + matchLength > out.length) {
+                throw new IllegalArgumentException("Bad back reference at " + ip);
+            }
+            // Byte by byte, matches may overlap their own output
+            for (int i = 0; i < matchLength; i++) {
+                out[op++] = out[ref++];
+            }
+        }
+        return op - outOffset;
+    }
+
+    private static int hash(byte[] in, int ip) {
+        int v = ((in[ip] & 0xFF) << 16) | ((in[ip + 1] & 0xFF) << 8) | (in[ip + 2] & 0xFF);
+        return (v * 0x9E3779B1) >>> (32 - HASH_LOG);
+    }
+}
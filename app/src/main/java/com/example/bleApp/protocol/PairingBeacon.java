@@ -0,0 +1,116 @@
+package com.example.bleApp.protocol;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Pairing state a server puts into its advertisement, so a client can rule out a watch
+ * from the scan result alone. Sent as manufacturer data under COMPANY_ID:
+ *
+ * byte 0     version (high nibble) and state (low nibble)
+ * bytes 1-4  token, the first four bytes of SHA-256(key, epoch)
+ *
+ * The epoch is the wall clock in ROTATION_MS steps, so the token changes with it and
+ * only holders of the key produce a matching one. Next to the flags and the 128 bit
+ * service UUID this takes 9 of the 31 legacy advertising bytes. It narrows down the
+ * candidates; the handshake still decides.
+ */
+public final class PairingBeacon {
+
+    // Bluetooth SIG id reserved for testing, the app has no company id of its own
+    public static final int COMPANY_ID = 0xFFFF;
+    public static final int VERSION = 1;
+    public static final int LENGTH = 5;
+    public static final long ROTATION_MS = 10 * 60 * 1000;
+
+    public static final int STATE_PAIRABLE = 1;
+    public static final int STATE_BUSY = 2;
+
+    public enum Verdict {
+        // A watch of ours waiting for a client
+        PAIRABLE,
+        // Ours, but already pairing with someone else
+        BUSY,
+        // Wrong version or token
+        FOREIGN,
+        // No beacon at all, an older server that has to be connected to find out
+        ABSENT
+    }
+
+    private PairingBeacon() {
+    }
+
+    public static long epoch(long wallClockMs) {
+        return Math.floorDiv(wallClockMs, ROTATION_MS);
+    }
+
+    // Time until the token changes
+    public static long untilRotationMs(long wallClockMs) {
+        return (epoch(wallClockMs) + 1) * ROTATION_MS - wallClockMs;
+    }
+
+    public static int token(byte[] key, long epoch) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(key);
+        for (int i = 0; i < 8; i++) {
+            digest.update((byte) (epoch >>> (8 * i)));
+        }
+        byte[] hash = digest.digest();
+        return (hash[0] & 0xFF) | (hash[1] & 0xFF) << 8 | (hash[2] & 0xFF) << 16 | (hash[3] & 0xFF) << 24;
+    }
+
+    public static byte[] encode(int state, int token) {
+        return new byte[]{
+                (byte) (VERSION << 4 | state & 0x0F),
+                (byte) token, (byte) (token >>> 8), (byte) (token >>> 16), (byte) (token >>> 24)};
+    }
+
+    /**
+     * Checks beacons against the tokens of the current epoch and its neighbours, to allow
+     * for clock skew between phone and watch. Tokens are hashed once per epoch, so a
+     * check is a few compares. Not thread safe.
+     */
+    public static final class Verifier {
+
+        private final byte[] mKey;
+        private final int[] mTokens = new int[3];
+        private long mEpoch = Long.MIN_VALUE;
+
+        public Verifier(byte[] key) {
+            mKey = key.clone();
+        }
+
+        public Verdict evaluate(byte[] beacon, long wallClockMs) {
+            if (beacon == null) {
+                return Verdict.ABSENT;
+            }
+            if (beacon.length < LENGTH || (beacon[0] & 0xF0) >>> 4 != VERSION) {
+                return Verdict.FOREIGN;
+            }
+            long epoch = epoch(wallClockMs);
+            if (epoch != mEpoch) {
+                for (int i = 0; i < mTokens.length; i++) {
+                    mTokens[i] = token(mKey, epoch - 1 + i);
+                }
+                mEpoch = epoch;
+            }
+            int token = (beacon[1] & 0xFF) | (beacon[2] & 0xFF) << 8 | (beacon[3] & 0xFF) << 16 | (beacon[4] & 0xFF) << 24;
+            if (token != mTokens[0] && token != mTokens[1] && token != mTokens[2]) {
+                return Verdict.FOREIGN;
+            }
+            switch (beacon[0] & 0x0F) {
+                case STATE_PAIRABLE:
+                    return Verdict.PAIRABLE;
+                case STATE_BUSY:
+                    return Verdict.BUSY;
+                default:
+                    return Verdict.FOREIGN;
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.bleApp.protocol;
+
+import java.util.Arrays;
+
+/**
+ * Optional compression of characteristic values, negotiated per connection in the
+ * handshake: the client offers a codec mask in MATCH_CONTROL and the server answers
+ * with the subset it accepts in the echo. A compressed value is wrapped as
+ *
+ * byte 0     magic (0xED)
+ * byte 1     methods, CODEC_LZ
+ * bytes 2-3  uncompressed length (little endian)
+ * bytes 4..  body
+ *
+ * Values are only wrapped when that makes them smaller; anything else goes out as is,
+ * unless it happens to start with the magic.
+ */
+public final class PayloadCodec {
+
+    public static final int CODEC_NONE = 0;
+    public static final int CODEC_LZ = 0x01;
+    public static final int SUPPORTED = CODEC_LZ;
+
+    public static final int MAGIC = 0xED;
+    public static final int HEADER_LENGTH = 4;
+    // Below this the header eats any gain
+    public static final int MIN_LENGTH = 16;
+
+    private static final int INDEX_METHODS = 1;
+    private static final int INDEX_LENGTH = 2;
+
+    private PayloadCodec() {
+    }
+
+    public static boolean isWrapped(byte[] value) {
+        return value != null && value.length >= HEADER_LENGTH && (value[0] & 0xFF) == MAGIC;
+    }
+
+    // Codec mask both sides agree on
+    public static int select(int offered) {
+        return offered & SUPPORTED;
+    }
+
+    /**
+     * Compressing side of one link direction. Not thread safe.
+     */
+    public static class Encoder {
+
+        private final int mCodecs;
+        private final int[] mTable = Lzf.newTable();
+        private byte[] mScratch = new byte[0];
+
+        private long mBytesIn;
+        private long mBytesOut;
+
+        public Encoder(int codecs) {
+            mCodecs = codecs & SUPPORTED;
+        }
+
+        public int getCodecs() {
+            return mCodecs;
+        }
+
+        public byte[] encode(byte[] value) {
+            mBytesIn += value.length;
+            byte[] encoded = encodeValue(value);
+            mBytesOut += encoded.length;
+            return encoded;
+        }
+
+        private byte[] encodeValue(byte[] value) {
+            int length = value.length;
+            if ((mCodecs & CODEC_LZ) == 0 || length < MIN_LENGTH || length > 0xFFFF) {
+                return isWrapped(value) ? wrapRaw(value) : value;
+            }
+            int bound = HEADER_LENGTH + Lzf.maxCompressedLength(length);
+            if (mScratch.length < bound) {
+                mScratch = new byte[bound];
+            }
+            int bodyLength = Lzf.compress(value, 0, length, mScratch, HEADER_LENGTH, mTable);
+            if (bodyLength == 0 || HEADER_LENGTH + bodyLength >= length) {
+                return isWrapped(value) ? wrapRaw(value) : value;
+            }
+            writeHeader(mScratch, CODEC_LZ, length);
+            return Arrays.copyOf(mScratch, HEADER_LENGTH + bodyLength);
+        }
+
+        // Escapes a value that would otherwise be read as wrapped
+        private byte[] wrapRaw(byte[] value) {
+            byte[] wrapped = new byte[HEADER_LENGTH + value.length];
+            writeHeader(wrapped, CODEC_NONE, value.length);
+            System.arraycopy(value, 0, wrapped, HEADER_LENGTH, value.length);
+            return wrapped;
+        }
+
+        public long getBytesIn() {
+            return mBytesIn;
+        }
+
+        public long getBytesOut() {
+            return mBytesOut;
+        }
+    }
+
+    /**
+     * Receiving side of one link direction. Not thread safe.
+     */
+    public static class Decoder {
+
+        private long mFailures;
+
+        // The original value, value itself if it was never wrapped, or null if it can't be decoded
+        public byte[] decode(byte[] value) {
+            if (!isWrapped(value)) {
+                return value;
+            }
+            int methods = value[INDEX_METHODS] & 0xFF;
+            int length = (value[INDEX_LENGTH] & 0xFF) | (value[INDEX_LENGTH + 1] & 0xFF) << 8;
+            if (methods == CODEC_NONE) {
+                return Arrays.copyOfRange(value, HEADER_LENGTH, value.length);
+            }
+            if (methods != CODEC_LZ) {
+                mFailures++;
+                return null;
+            }
+            byte[] decoded = new byte[length];
+            try {
+                if (Lzf.decompress(value, HEADER_LENGTH, value.length - HEADER_LENGTH, decoded, 0) != length) {
+                    mFailures++;
+                    return null;
+                }
+            } catch (IllegalArgumentException e) {
+                mFailures++;
+                return null;
+            }
+            return decoded;
+        }
+
+        public long getFailureCount() {
+            return mFailures;
+        }
+    }
+
+    private static void writeHeader(byte[] out, int methods, int length) {
+        out[0] = (byte) MAGIC;
+        out[INDEX_METHODS] = (byte) methods;
+        out[INDEX_LENGTH] = (byte) length;
+        out[INDEX_LENGTH + 1] = (byte) (length >>> 8);
+    }
+}
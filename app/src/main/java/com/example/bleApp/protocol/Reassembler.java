@@ -0,0 +1,95 @@
+package com.example.bleApp.protocol;
+
+import java.util.Arrays;
+
+/**
+ * Receiving side of Fragmenter for one link. Fragments arrive in order on a Gatt link,
+ * so anything out of sequence, or a message growing past maxMessageLength, drops the
+ * partial message instead of buffering without bound. Not thread safe.
+ */
+public class Reassembler {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int mMaxMessageLength;
+    private byte[] mBuffer;
+    private int mLength;
+    private int mMessageId = -1;
+    private int mNextIndex;
+    private long mDropped;
+
+    public Reassembler(int maxMessageLength) {
+        mMaxMessageLength = maxMessageLength;
+    }
+
+    /**
+     * Returns the complete message once value finishes one, value itself when it was
+     * never fragmented, and null while a message is still incomplete or was dropped.
+     */
+    public byte[] accept(byte[] value) {
+        if (!Fragmenter.isFragment(value)) {
+            return value;
+        }
+        int messageId = value[Fragmenter.INDEX_MESSAGE_ID] & 0xFF;
+        int index = value[Fragmenter.INDEX_FRAGMENT] & 0xFF;
+        if (index == 0) {
+            if (mMessageId >= 0) {
+                // The previous message never got its last fragment
+                mDropped++;
+            }
+            mMessageId = messageId;
+            mNextIndex = 0;
+            mLength = 0;
+        } else if (messageId != mMessageId || index != mNextIndex) {
+            drop();
+            return null;
+        }
+
+        int length = value.length - Fragmenter.HEADER_LENGTH;
+        if (mLength + length > mMaxMessageLength) {
+            drop();
+            return null;
+        }
+        ensureCapacity(mLength + length);
+        System.arraycopy(value, Fragmenter.HEADER_LENGTH, mBuffer, mLength, length);
+        mLength += length;
+        mNextIndex++;
+
+        if ((value[Fragmenter.INDEX_FLAGS] & Fragmenter.FLAG_LAST) == 0) {
+            return null;
+        }
+        byte[] message = Arrays.copyOf(mBuffer, mLength);
+        reset();
+        return message;
+    }
+
+    public boolean isPending() {
+        return mMessageId >= 0;
+    }
+
+    // Messages given up on, out of order or too long
+    public long getDroppedCount() {
+        return mDropped;
+    }
+
+    public void reset() {
+        mMessageId = -1;
+        mNextIndex = 0;
+        mLength = 0;
+    }
+
+    private void drop() {
+        if (mMessageId >= 0) {
+            mDropped++;
+        }
+        reset();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (mBuffer == null) {
+            mBuffer = new byte[Math.min(mMaxMessageLength, Math.max(INITIAL_CAPACITY, capacity))];
+        } else if (mBuffer.length < capacity) {
+            mBuffer = Arrays.copyOf(mBuffer, Math.min(mMaxMessageLength, Math.max(mBuffer.length * 2, capacity)));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.bleApp.server;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Connected devices keyed by address, in a ConcurrentHashMap so Gatt callbacks can
+ * add, remove and look up sessions from any thread without locks.
+ */
+public class DeviceRegistry<D> {
+
+    private final ConcurrentHashMap<String, DeviceSession<D>> mSessions = new ConcurrentHashMap<>();
+
+    public DeviceSession<D> add(String address, D device, long nowMs) {
+        DeviceSession<D> session = new DeviceSession<>(address, device, nowMs);
+        mSessions.put(address, session);
+        return session;
+    }
+
+    @Nullable
+    public DeviceSession<D> remove(String address) {
+        return mSessions.remove(address);
+    }
+
+    @Nullable
+    public DeviceSession<D> get(String address) {
+        return mSessions.get(address);
+    }
+
+    public boolean contains(String address) {
+        return mSessions.containsKey(address);
+    }
+
+    public int size() {
+        return mSessions.size();
+    }
+
+    public void clear() {
+        mSessions.clear();
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.bleApp.server;
+
+import com.example.bleApp.metrics.PairingTrace;
+import com.example.bleApp.protocol.Fragmenter;
+import com.example.bleApp.protocol.PayloadCodec;
+import com.example.bleApp.protocol.Reassembler;
+
+/**
+ * Per-link state of one connected device. Written from Gatt callbacks, read from
+ * any thread, so every mutable field is volatile. The write buffers are only used
+ * from the BLE event loop.
+ */
+public class DeviceSession<D> {
+
+    public static final int DEFAULT_MTU = 23;
+
+    private final String mAddress;
+    private final D mDevice;
+    private final long mConnectedAtMs;
+
+    private volatile boolean mSubscribed;
+    private volatile int mMtu = DEFAULT_MTU;
+    private volatile int mTxPhy = 1;
+    private volatile int mRxPhy = 1;
+    private volatile long mLastActivityMs;
+    private volatile PairingTrace mTrace;
+    private final PreparedWriteBuffer mPreparedWrites = new PreparedWriteBuffer();
+    private final Reassembler mReassembler = new Reassembler(Fragmenter.MAX_MESSAGE_LENGTH);
+    // Set once the handshake agreed on compression
+    private PayloadCodec.Decoder mDecoder;
+    // Last value written to the echo characteristic, read back by the same device
+    private volatile byte[] mEchoValue = new byte[0];
+    // Sequence of the MATCH_CONTROL echoed to this device, -1 until then
+    private volatile int mHandshakeSequence = -1;
+
+    DeviceSession(String address, D device, long connectedAtMs) {
+        mAddress = address;
+        mDevice = device;
+        mConnectedAtMs = connectedAtMs;
+        mLastActivityMs = connectedAtMs;
+    }
+
+    public String getAddress() {
+        return mAddress;
+    }
+
+    public D getDevice() {
+        return mDevice;
+    }
+
+    public long getConnectedAtMs() {
+        return mConnectedAtMs;
+    }
+
+    public boolean isSubscribed() {
+        return mSubscribed;
+    }
+
+    public void setSubscribed(boolean subscribed) {
+        mSubscribed = subscribed;
+    }
+
+    public int getMtu() {
+        return mMtu;
+    }
+
+    public void setMtu(int mtu) {
+        mMtu = mtu;
+    }
+
+    public int getTxPhy() {
+        return mTxPhy;
+    }
+
+    public int getRxPhy() {
+        return mRxPhy;
+    }
+
+    public void setPhy(int txPhy, int rxPhy) {
+        mTxPhy = txPhy;
+        mRxPhy = rxPhy;
+    }
+
+    public long getLastActivityMs() {
+        return mLastActivityMs;
+    }
+
+    public void touch(long nowMs) {
+        mLastActivityMs = nowMs;
+    }
+
+    public PairingTrace getTrace() {
+        return mTrace;
+    }
+
+    public void setTrace(PairingTrace trace) {
+        mTrace = trace;
+    }
+
+    public PreparedWriteBuffer getPreparedWrites() {
+        return mPreparedWrites;
+    }
+
+    public Reassembler getReassembler() {
+        return mReassembler;
+    }
+
+    public PayloadCodec.Decoder getDecoder() {
+        return mDecoder;
+    }
+
+    public void setDecoder(PayloadCodec.Decoder decoder) {
+        mDecoder = decoder;
+    }
+
+    public int getHandshakeSequence() {
+        return mHandshakeSequence;
+    }
+
+    public boolean isHandshaken() {
+        return mHandshakeSequence >= 0;
+    }
+
+    public void setHandshakeSequence(int sequence) {
+        mHandshakeSequence = sequence;
+    }
+
+    public byte[] getEchoValue() {
+        return mEchoValue;
+    }
+
+    public void setEchoValue(byte[] value) {
+        mEchoValue = value;
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.bleApp.server;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Declared layout of the Gatt server: services, their characteristics and descriptors,
+ * and the handler of each. The BleServer builds its attributes from it once, and
+ * requests are routed through a table keyed on the characteristic UUID, so the cost of
+ * a lookup doesn't grow with the number of characteristics. Characteristic UUIDs must
+ * therefore be unique across the whole schema. Devices are identified by address.
+ */
+public class GattSchema {
+
+    // A whole value, after prepared writes were executed
+    public interface WriteHandler {
+        void onWrite(String address, byte[] value);
+    }
+
+    // The full value; long reads are answered from it by offset
+    public interface ReadHandler {
+        byte[] onRead(String address);
+    }
+
+    public interface DescriptorWriteHandler {
+        void onDescriptorWrite(String address, byte[] value);
+    }
+
+    public static final class Characteristic {
+
+        private final UUID mUuid;
+        private final UUID mServiceUuid;
+        private final int mProperties;
+        private final int mPermissions;
+        private WriteHandler mWriteHandler;
+        private ReadHandler mReadHandler;
+        // Rarely more than the CCC, so a small map per characteristic
+        private final Map<UUID, Descriptor> mDescriptors = new LinkedHashMap<>(2);
+
+        Characteristic(UUID uuid, UUID serviceUuid, int properties, int permissions) {
+            mUuid = uuid;
+            mServiceUuid = serviceUuid;
+            mProperties = properties;
+            mPermissions = permissions;
+        }
+
+        public UUID getUuid() {
+            return mUuid;
+        }
+
+        public UUID getServiceUuid() {
+            return mServiceUuid;
+        }
+
+        public int getProperties() {
+            return mProperties;
+        }
+
+        public int getPermissions() {
+            return mPermissions;
+        }
+
+        @Nullable
+        public WriteHandler getWriteHandler() {
+            return mWriteHandler;
+        }
+
+        @Nullable
+        public ReadHandler getReadHandler() {
+            return mReadHandler;
+        }
+
+        public boolean hasDescriptor(UUID descriptorUuid) {
+            return mDescriptors.containsKey(descriptorUuid);
+        }
+
+        public Collection<Descriptor> getDescriptors() {
+            return Collections.unmodifiableCollection(mDescriptors.values());
+        }
+
+        @Nullable
+        public DescriptorWriteHandler getDescriptorWriteHandler(UUID descriptorUuid) {
+            Descriptor descriptor = mDescriptors.get(descriptorUuid);
+            return descriptor != null ? descriptor.mWriteHandler : null;
+        }
+    }
+
+    public static final class Descriptor {
+
+        final UUID mUuid;
+        final int mPermissions;
+        final DescriptorWriteHandler mWriteHandler;
+
+        Descriptor(UUID uuid, int permissions, DescriptorWriteHandler writeHandler) {
+            mUuid = uuid;
+            mPermissions = permissions;
+            mWriteHandler = writeHandler;
+        }
+
+        public UUID getUuid() {
+            return mUuid;
+        }
+
+        public int getPermissions() {
+            return mPermissions;
+        }
+    }
+
+    public static final class Service {
+
+        final UUID mUuid;
+        final List<Characteristic> mCharacteristics = new ArrayList<>();
+
+        Service(UUID uuid) {
+            mUuid = uuid;
+        }
+
+        public UUID getUuid() {
+            return mUuid;
+        }
+
+        public List<Characteristic> getCharacteristics() {
+            return Collections.unmodifiableList(mCharacteristics);
+        }
+    }
+
+    private final List<Service> mServices;
+    private final Map<UUID, Characteristic> mCharacteristics;
+
+    private GattSchema(List<Service> services, Map<UUID, Characteristic> characteristics) {
+        mServices = services;
+        mCharacteristics = characteristics;
+    }
+
+    @Nullable
+    public Characteristic find(UUID characteristicUuid) {
+        return mCharacteristics.get(characteristicUuid);
+    }
+
+    public int getCharacteristicCount() {
+        return mCharacteristics.size();
+    }
+
+    // In declaration order, the order they are added to a server
+    public List<Service> getServices() {
+        return mServices;
+    }
+
+    /**
+     * Declares the schema top down: each characteristic belongs to the last service,
+     * each handler and descriptor to the last characteristic.
+     */
+    public static class Builder {
+
+        private final List<Service> mServices = new ArrayList<>();
+        private final Map<UUID, Characteristic> mCharacteristics = new HashMap<>();
+        private Service mService;
+        private Characteristic mCharacteristic;
+
+        public Builder service(UUID uuid) {
+            for (Service service : mServices) {
+                if (service.mUuid.equals(uuid)) {
+                    throw new IllegalArgumentException("Service declared twice: " + uuid);
+                }
+            }
+            mService = new Service(uuid);
+            mServices.add(mService);
+            mCharacteristic = null;
+            return this;
+        }
+
+        public Builder characteristic(UUID uuid, int properties, int permissions) {
+            if (mService == null) {
+                throw new IllegalStateException("Characteristic " + uuid + " outside of a service");
+            }
+            if (mCharacteristics.containsKey(uuid)) {
+                throw new IllegalArgumentException("Characteristic declared twice: " + uuid);
+            }
+            mCharacteristic = new Characteristic(uuid, mService.mUuid, properties, permissions);
+            mService.mCharacteristics.add(mCharacteristic);
+            mCharacteristics.put(uuid, mCharacteristic);
+            return this;
+        }
+
+        public Builder onWrite(WriteHandler handler) {
+            current().mWriteHandler = handler;
+            return this;
+        }
+
+        public Builder onRead(ReadHandler handler) {
+            current().mReadHandler = handler;
+            return this;
+        }
+
+        public Builder descriptor(UUID uuid, int permissions, @Nullable DescriptorWriteHandler handler) {
+            Characteristic characteristic = current();
+            if (characteristic.mDescriptors.containsKey(uuid)) {
+                throw new IllegalArgumentException("Descriptor " + uuid + " declared twice on " + characteristic.mUuid);
+            }
+            characteristic.mDescriptors.put(uuid, new Descriptor(uuid, permissions, handler));
+            return this;
+        }
+
+        public GattSchema build() {
+            return new GattSchema(Collections.unmodifiableList(new ArrayList<>(mServices)),
+                    new HashMap<>(mCharacteristics));
+        }
+
+        private Characteristic current() {
+            if (mCharacteristic == null) {
+                throw new IllegalStateException("No characteristic declared yet");
+            }
+            return mCharacteristic;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.bleApp.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Paces notifications to connected devices. Each device has its own queue with at
+ * most one notification in flight, released by onNotificationSent. Devices with
+ * work are served round-robin under a global in-flight cap, and a newer value for a
+ * characteristic that is still queued replaces the older one.
+ */
+public class NotificationFanout<D> {
+
+    public interface Sender<D> {
+        boolean send(D device, UUID characteristicUuid, byte[] value);
+    }
+
+    private static class Pending {
+        final UUID characteristicUuid;
+        byte[] value;
+
+        Pending(UUID characteristicUuid, byte[] value) {
+            this.characteristicUuid = characteristicUuid;
+            this.value = value;
+        }
+    }
+
+    private static class Link<D> {
+        final String address;
+        final D device;
+        final ArrayDeque<Pending> queue = new ArrayDeque<>();
+        final Map<UUID, Pending> queued = new HashMap<>();
+        boolean inFlight;
+        boolean ready;
+
+        Link(String address, D device) {
+            this.address = address;
+            this.device = device;
+        }
+    }
+
+    private static class Dispatch<D> {
+        final Link<D> link;
+        final Pending pending;
+
+        Dispatch(Link<D> link, Pending pending) {
+            this.link = link;
+            this.pending = pending;
+        }
+    }
+
+    private final Sender<D> mSender;
+    private final int mMaxQueuePerDevice;
+    private final int mMaxInFlight;
+
+    private final Map<String, Link<D>> mLinks = new HashMap<>();
+    // Links with queued work and nothing in flight, served in order
+    private final ArrayDeque<Link<D>> mReady = new ArrayDeque<>();
+    private int mInFlight;
+    private int mQueueDepth;
+
+    private long mSent;
+    private long mFailed;
+    private long mCoalesced;
+    private long mDropped;
+
+    public NotificationFanout(Sender<D> sender, int maxQueuePerDevice, int maxInFlight) {
+        mSender = sender;
+        mMaxQueuePerDevice = maxQueuePerDevice;
+        mMaxInFlight = maxInFlight;
+    }
+
+    public void enqueue(String address, D device, UUID characteristicUuid, byte[] value) {
+        synchronized (this) {
+            enqueueLocked(address, device, characteristicUuid, value);
+        }
+        pump();
+    }
+
+    public void onNotificationSent(String address, int status) {
+        synchronized (this) {
+            Link<D> link = mLinks.get(address);
+            if (link == null || !link.inFlight) {
+                return;
+            }
+            link.inFlight = false;
+            mInFlight--;
+            markReady(link);
+        }
+        pump();
+    }
+
+    public void remove(String address) {
+        synchronized (this) {
+            Link<D> link = mLinks.remove(address);
+            if (link == null) {
+                return;
+            }
+            mDropped += link.queue.size();
+            mQueueDepth -= link.queue.size();
+            if (link.inFlight) {
+                mInFlight--;
+            }
+            if (link.ready) {
+                mReady.remove(link);
+            }
+        }
+        pump();
+    }
+
+    public synchronized void clear() {
+        for (Link<D> link : mLinks.values()) {
+            mDropped += link.queue.size();
+        }
+        mLinks.clear();
+        mReady.clear();
+        mInFlight = 0;
+        mQueueDepth = 0;
+    }
+
+    private void enqueueLocked(String address, D device, UUID characteristicUuid, byte[] value) {
+        Link<D> link = mLinks.get(address);
+        if (link == null) {
+            link = new Link<>(address, device);
+            mLinks.put(address, link);
+        }
+
+        Pending queued = link.queued.get(characteristicUuid);
+        if (queued != null) {
+            queued.value = value;
+            mCoalesced++;
+            return;
+        }
+
+        if (link.queue.size() >= mMaxQueuePerDevice) {
+            Pending oldest = link.queue.pollFirst();
+            link.queued.remove(oldest.characteristicUuid);
+            mQueueDepth--;
+            mDropped++;
+        }
+        Pending pending = new Pending(characteristicUuid, value);
+        link.queue.addLast(pending);
+        link.queued.put(characteristicUuid, pending);
+        mQueueDepth++;
+        markReady(link);
+    }
+
+    private void markReady(Link<D> link) {
+        if (!link.ready && !link.inFlight && !link.queue.isEmpty()) {
+            link.ready = true;
+            mReady.addLast(link);
+        }
+    }
+
+    private void pump() {
+        while (true) {
+            List<Dispatch<D>> batch = takeBatch();
+            if (batch.isEmpty()) {
+                return;
+            }
+            // Send outside the lock, the stack call may block
+            for (Dispatch<D> dispatch : batch) {
+                boolean success = mSender.send(dispatch.link.device,
+                        dispatch.pending.characteristicUuid, dispatch.pending.value);
+                synchronized (this) {
+                    if (success) {
+                        mSent++;
+                    } else {
+                        // The value is lost, free the link for its next one
+                        mFailed++;
+                        Link<D> link = dispatch.link;
+                        if (link.inFlight && mLinks.get(link.address) == link) {
+                            link.inFlight = false;
+                            mInFlight--;
+                            markReady(link);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized List<Dispatch<D>> takeBatch() {
+        List<Dispatch<D>> batch = new ArrayList<>();
+        while (mInFlight < mMaxInFlight && !mReady.isEmpty()) {
+            Link<D> link = mReady.pollFirst();
+            link.ready = false;
+            Pending pending = link.queue.pollFirst();
+            if (pending == null) {
+                continue;
+            }
+            link.queued.remove(pending.characteristicUuid);
+            link.inFlight = true;
+            mInFlight++;
+            mQueueDepth--;
+            batch.add(new Dispatch<>(link, pending));
+        }
+        return batch;
+    }
+
+    // Metrics
+
+    public synchronized int getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    public synchronized int getInFlight() {
+        return mInFlight;
+    }
+
+    public synchronized long getSentCount() {
+        return mSent;
+    }
+
+    public synchronized long getFailedCount() {
+        return mFailed;
+    }
+
+    public synchronized long getCoalescedCount() {
+        return mCoalesced;
+    }
+
+    public synchronized long getDroppedCount() {
+        return mDropped;
+    }
+}
@@ -0,0 +1,580 @@
+package com.example.bleApp.server;
+
+import static com.example.bleApp.Constants.CHARACTERISTIC_ECHO_UUID;
+import static com.example.bleApp.Constants.CHARACTERISTIC_TIME_UUID;
+import static com.example.bleApp.Constants.CHARACTERISTIC_UUID;
+import static com.example.bleApp.Constants.CLIENT_CONFIGURATION_DESCRIPTOR_UUID;
+import static com.example.bleApp.Constants.SERVICE_UUID;
+import static com.example.bleApp.Constants.XEE_KIDS_MATCH_CONTROL;
+
+import com.example.bleApp.metrics.PairingMetrics;
+import com.example.bleApp.metrics.PairingTrace;
+import com.example.bleApp.protocol.Handshake;
+import com.example.bleApp.protocol.HandshakeFrame;
+import com.example.bleApp.protocol.PairingBeacon;
+import com.example.bleApp.protocol.PayloadCodec;
+import com.example.bleApp.transport.AdvertiseListener;
+import com.example.bleApp.transport.BleServer;
+import com.example.bleApp.transport.BleTransport;
+import com.example.bleApp.transport.LinkProfile;
+import com.example.bleApp.ui.PairingStatus;
+import com.example.bleApp.util.BoundedStage;
+import com.example.bleApp.util.Clock;
+import com.example.bleApp.util.Scheduler;
+import com.example.bleApp.util.StringUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * Server half of the pairing: advertises the beacon, echoes MATCH_CONTROL and takes
+ * FRIEND from a client that went through it. Runs on any BleTransport, so the same code
+ * backs ServerService on the device and the simulated watches of PairingLoadRun.
+ * Server state is only touched on the loop; BleServer callbacks may come in on any
+ * thread, link events hop onto the loop and requests are answered where they arrive.
+ */
+public class PairingServer {
+
+    public interface Listener {
+
+        void log(String message);
+
+        // Packet dumps are only built when this says so
+        boolean isTracing();
+
+        void trace(String line);
+
+        void onStatus(PairingStatus status);
+
+        // FRIEND accepted, the server is already stopped
+        void onPaired(String address);
+    }
+
+    private static final int MAX_QUEUED_NOTIFICATIONS = 8;
+    private static final int MAX_NOTIFICATIONS_IN_FLIGHT = 4;
+    // Requests waiting for the loop before new ones are refused
+    private static final int MAX_PENDING_REQUESTS = 64;
+    // ATT status codes, as the stack reports them
+    private static final int ATT_SUCCESS = 0x00;
+    private static final int ATT_READ_NOT_PERMITTED = 0x02;
+    private static final int ATT_WRITE_NOT_PERMITTED = 0x03;
+    private static final int ATT_INVALID_OFFSET = 0x07;
+    private static final int ATT_INVALID_ATTRIBUTE_LENGTH = 0x0D;
+    // A full request queue; the client may retry
+    private static final int ATT_INSUFFICIENT_RESOURCES = 0x11;
+    // Outlasts a client's own handshake and proximity deadlines
+    private static final long BUSY_TIMEOUT_MS = 75_000;
+    private static final byte[] BEACON_KEY = StringUtils.bytesFromString(XEE_KIDS_MATCH_CONTROL);
+
+    private final BleTransport mTransport;
+    private final Executor mLoop;
+    private final Scheduler mScheduler;
+    private final Clock mClock;
+    private final PairingMetrics mMetrics;
+    private final Listener mListener;
+
+    private final DeviceRegistry<String> mDevices = new DeviceRegistry<>();
+    private final NotificationFanout<String> mFanout =
+            new NotificationFanout<>(this::sendNotification, MAX_QUEUED_NOTIFICATIONS, MAX_NOTIFICATIONS_IN_FLIGHT);
+
+    private final GattSchema mSchema = buildSchema();
+    // Protocol work of server callbacks, run on the loop
+    private final BoundedStage mRequests;
+    // Read from binder threads to answer requests
+    private volatile BleServer mServer;
+    private final ServerCallback mServerCallback = new ServerCallback();
+    private final AdvertiseCallback mAdvertiseCallback = new AdvertiseCallback();
+    private boolean mAdvertising;
+    private int mBeaconState = PairingBeacon.STATE_PAIRABLE;
+    private Scheduler.Cancellable mBeaconRotation;
+    // Client whose handshake makes the beacon say busy, until it pairs, leaves or times out
+    private String mHandshakingAddress;
+    private Scheduler.Cancellable mBusyTimeout;
+
+    public PairingServer(BleTransport transport, Executor loop, Scheduler scheduler, Clock clock,
+                         PairingMetrics metrics, Listener listener) {
+        mTransport = transport;
+        mLoop = loop;
+        mScheduler = scheduler;
+        mClock = clock;
+        mMetrics = metrics;
+        mListener = listener;
+        mRequests = new BoundedStage("requests", loop, MAX_PENDING_REQUESTS);
+    }
+
+    // On the loop
+    public void start() {
+        mDevices.clear();
+        mFanout.clear();
+        mServer = mTransport.openServer(mServerCallback);
+        if (mServer == null) {
+            logError("Could not open the Gatt server");
+            return;
+        }
+        mServer.addServices(mSchema);
+        startAdvertising();
+    }
+
+    // On the loop
+    public void stop() {
+        stopAdvertising();
+        setHandshaking(null);
+        BleServer server = mServer;
+        mServer = null;
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mRequests.toString();
+    }
+
+    // Logging
+
+    private void log(String msg) {
+        mListener.log(msg);
+    }
+
+    private void logError(String msg) {
+        log("Error: " + msg);
+    }
+
+    private void tracePacket(String prefix, String address, byte[] value) {
+        if (value != null && mListener.isTracing()) {
+            StringBuilder trace = new StringBuilder(prefix.length() + address.length() + 2
+                    + StringUtils.hexFormatLength(value.length));
+            trace.append(prefix).append(address).append(": ");
+            StringUtils.appendHexFormat(trace, value, 0, value.length);
+            mListener.trace(trace.toString());
+        }
+    }
+
+    // Gatt Server
+
+    private GattSchema buildSchema() {
+        int clientConfigurationPermissions = BleTransport.PERMISSION_READ | BleTransport.PERMISSION_WRITE;
+        return new GattSchema.Builder()
+                .service(SERVICE_UUID)
+                // Handshake frames in, echoes out as notifications
+                .characteristic(CHARACTERISTIC_UUID,
+                        BleTransport.PROPERTY_WRITE | BleTransport.PROPERTY_NOTIFY,
+                        BleTransport.PERMISSION_WRITE)
+                .onWrite(this::onHandshakeWrite)
+                .descriptor(CLIENT_CONFIGURATION_DESCRIPTOR_UUID, clientConfigurationPermissions, this::onHandshakeSubscription)
+                // Reads back what the same device wrote last, to check a link end to end
+                .characteristic(CHARACTERISTIC_ECHO_UUID,
+                        BleTransport.PROPERTY_READ | BleTransport.PROPERTY_WRITE,
+                        BleTransport.PERMISSION_READ | BleTransport.PERMISSION_WRITE)
+                .onWrite(this::onEchoWrite)
+                .onRead(this::onEchoRead)
+                // Wall clock in ms, little endian, for the watch to set its time from
+                .characteristic(CHARACTERISTIC_TIME_UUID,
+                        BleTransport.PROPERTY_READ,
+                        BleTransport.PERMISSION_READ)
+                .onRead(address -> ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(mClock.currentTimeMillis()).array())
+                .build();
+    }
+
+    private boolean sendNotification(String address, UUID characteristicUuid, byte[] value) {
+        BleServer server = mServer;
+        return server != null && server.notifyCharacteristicChanged(address, characteristicUuid, value);
+    }
+
+    // Advertising
+
+    private void startAdvertising() {
+        long now = mClock.currentTimeMillis();
+        byte[] beacon = PairingBeacon.encode(mBeaconState, PairingBeacon.token(BEACON_KEY, PairingBeacon.epoch(now)));
+        // Pairing state and token, so clients skip busy or foreign watches without connecting
+        mTransport.startAdvertising(SERVICE_UUID, PairingBeacon.COMPANY_ID, beacon, mAdvertiseCallback);
+        mAdvertising = true;
+        mBeaconRotation = mScheduler.schedule(this::restartAdvertising, PairingBeacon.untilRotationMs(now));
+    }
+
+    // New token or state: advertising data can't be changed in place on a legacy set
+    private void restartAdvertising() {
+        if (mAdvertising) {
+            stopAdvertising();
+            startAdvertising();
+        }
+    }
+
+    private void setBeaconState(int state) {
+        if (mBeaconState != state) {
+            mBeaconState = state;
+            restartAdvertising();
+        }
+    }
+
+    private void setHandshaking(String address) {
+        if (mBusyTimeout != null) {
+            mBusyTimeout.cancel();
+            mBusyTimeout = null;
+        }
+        mHandshakingAddress = address;
+        if (address != null) {
+            mBusyTimeout = mScheduler.schedule(() -> {
+                mBusyTimeout = null;
+                log("Handshake with " + address + " timed out, pairable again");
+                setHandshaking(null);
+            }, BUSY_TIMEOUT_MS);
+        }
+        setBeaconState(address != null ? PairingBeacon.STATE_BUSY : PairingBeacon.STATE_PAIRABLE);
+    }
+
+    private void stopAdvertising() {
+        if (mBeaconRotation != null) {
+            mBeaconRotation.cancel();
+            mBeaconRotation = null;
+        }
+        if (mAdvertising) {
+            mAdvertising = false;
+            mTransport.stopAdvertising();
+        }
+    }
+
+    private class AdvertiseCallback implements AdvertiseListener {
+
+        @Override
+        public void onAdvertiseStarted() {
+            log("Peripheral advertising started.");
+        }
+
+        @Override
+        public void onAdvertiseFailed(int errorCode) {
+            log("Peripheral advertising failed: " + errorCode);
+        }
+    }
+
+    // Gatt Server Actions
+
+    private void addDevice(String address) {
+        log("Device added: " + address);
+        long now = mClock.elapsedRealtime();
+        DeviceSession<String> session = mDevices.add(address, address, now);
+        session.setTrace(mMetrics.start(PairingMetrics.Phase.PEER_CONNECTED, now));
+        // The peripheral can't pick the connection interval, only ask for the faster PHY
+        BleServer server = mServer;
+        if (server != null) {
+            server.setPreferredPhy(address, LinkProfile.HANDSHAKE_FAST.phyMask);
+        }
+    }
+
+    private void removeDevice(String address) {
+        log("Device removed: " + address);
+        DeviceSession<String> session = mDevices.remove(address);
+        if (session != null && session.getTrace() != null) {
+            session.getTrace().abandon();
+        }
+        mFanout.remove(address);
+        if (address.equals(mHandshakingAddress)) {
+            setHandshaking(null);
+        }
+    }
+
+    // Characteristic handlers, called on the loop by GattSchema dispatch
+
+    // A whole attribute value, from a single or a long write; fragments are collected until the message is complete
+    private void onHandshakeWrite(String address, byte[] value) {
+        tracePacket("Write from ", address, value);
+        DeviceSession<String> session = mDevices.get(address);
+        if (session != null) {
+            value = session.getReassembler().accept(value);
+            if (value != null && session.getDecoder() != null) {
+                value = session.getDecoder().decode(value);
+                if (value == null) {
+                    logError("Could not decompress write from " + address);
+                }
+            }
+            if (value == null) {
+                return;
+            }
+        }
+        onMessage(session, value);
+    }
+
+    private void onMessage(DeviceSession<String> session, byte[] value) {
+        long now = mClock.elapsedRealtime();
+        PairingTrace trace = null;
+        if (session != null) {
+            session.touch(now);
+            trace = session.getTrace();
+        }
+
+        // Frames, or the strings of legacy clients
+        switch (Handshake.opcode(value)) {
+            case HandshakeFrame.OP_MATCH_CONTROL:
+                onMatchControl(session, trace, value, now);
+                break;
+            case HandshakeFrame.OP_FRIEND:
+                onFriend(session, trace, value, now);
+                break;
+            default:
+                mListener.onStatus(PairingStatus.SERVER_REJECTED);
+                log("Device sent message is not Xee Kids Watch!");
+                break;
+        }
+    }
+
+    private void onMatchControl(DeviceSession<String> session, PairingTrace trace, byte[] value, long now) {
+        if (trace != null) {
+            trace.mark(PairingMetrics.Phase.MATCH_CONTROL_RECEIVED, now);
+        }
+        if (session == null) {
+            log("MATCH_CONTROL from a device that is not connected, not echoed");
+            return;
+        }
+        if (mHandshakingAddress == null) {
+            // Other clients see the watch as taken until this one pairs, leaves or times out
+            setHandshaking(session.getAddress());
+        } else if (!mHandshakingAddress.equals(session.getAddress())) {
+            // Connected before the beacon said busy, and still echoed: whichever client is brought
+            // close first pairs. Refusing it would let the first to handshake, if it is never brought
+            // close, hold the watch until its proximity deadline.
+            log("Busy with " + mHandshakingAddress + ", echoing " + session.getAddress() + " as well");
+        }
+
+        // Compression for this link's later writes, told to the client in the echo
+        int codecs = PayloadCodec.select(Handshake.codecs(value));
+        session.setDecoder(codecs != PayloadCodec.CODEC_NONE ? new PayloadCodec.Decoder() : null);
+        session.setHandshakeSequence(Handshake.sequence(value));
+
+        // Only to the requester, other clients couldn't tell it from the echo to their own
+        byte[] echo = Handshake.isLegacy(value) ? Handshake.legacyEcho() : Handshake.echo(value, codecs);
+        mFanout.enqueue(session.getAddress(), session.getDevice(), CHARACTERISTIC_UUID, echo);
+        log("Notifications queued: " + mFanout.getQueueDepth() + " dropped: " + mFanout.getDroppedCount());
+
+        mListener.onStatus(PairingStatus.SERVER_READY);
+        log("Server is ready to become friend!");
+    }
+
+    private void onFriend(DeviceSession<String> session, PairingTrace trace, byte[] value, long now) {
+        // Only from a device that went through MATCH_CONTROL on this link, with the sequence it was echoed
+        if (session == null || !session.isHandshaken()
+                || session.getHandshakeSequence() != Handshake.sequence(value)) {
+            mListener.onStatus(PairingStatus.SERVER_REJECTED);
+            log("FRIEND without a handshake from " + (session != null ? session.getAddress() : "unknown device"));
+            return;
+        }
+        if (trace != null) {
+            trace.mark(PairingMetrics.Phase.FRIEND_RECEIVED, now);
+            trace.complete(now);
+        }
+        mListener.onStatus(PairingStatus.SERVER_PAIRED);
+        log("FRIENDS!");
+
+        stop();
+        mListener.onPaired(session.getAddress());
+    }
+
+    private void onHandshakeSubscription(String address, byte[] value) {
+        DeviceSession<String> session = mDevices.get(address);
+        if (session != null) {
+            session.setSubscribed(Arrays.equals(value, BleTransport.ENABLE_NOTIFICATION_VALUE));
+        }
+    }
+
+
+    private void onEchoWrite(String address, byte[] value) {
+        DeviceSession<String> session = mDevices.get(address);
+        if (session != null) {
+            session.setEchoValue(value);
+        }
+    }
+
+    private byte[] onEchoRead(String address) {
+        DeviceSession<String> session = mDevices.get(address);
+        return session != null ? session.getEchoValue() : new byte[0];
+    }
+
+    // Server callbacks
+
+    // Link events hop onto the loop unbounded, they must not be lost; requests are
+    // answered where they arrive and only their work is queued
+    private class ServerCallback implements BleServer.Callback {
+
+        @Override
+        public void onConnectionStateChange(String address, boolean connected) {
+            mLoop.execute(() -> {
+                if (connected) {
+                    addDevice(address);
+                } else {
+                    removeDevice(address);
+                }
+            });
+        }
+
+        @Override
+        public void onCharacteristicWriteRequest(String address,
+                                                 int requestId,
+                                                 UUID characteristicUuid,
+                                                 boolean preparedWrite,
+                                                 boolean responseNeeded,
+                                                 int offset,
+                                                 byte[] value) {
+            GattSchema.Characteristic entry = mSchema.find(characteristicUuid);
+            GattSchema.WriteHandler handler = entry != null ? entry.getWriteHandler() : null;
+            if (handler == null) {
+                respond(address, requestId, responseNeeded, ATT_WRITE_NOT_PERMITTED);
+                logError("Write to unknown characteristic " + characteristicUuid);
+                return;
+            }
+            if (!mRequests.tryReserve()) {
+                // A write without response is simply lost, the sender has no way to hear of it
+                respond(address, requestId, responseNeeded, ATT_INSUFFICIENT_RESOURCES);
+                return;
+            }
+            if (preparedWrite) {
+                // The buffer belongs to the loop, so the part is answered there once stored
+                mRequests.submit(() -> onPrepareWrite(address, requestId, characteristicUuid, responseNeeded, offset, value));
+                return;
+            }
+            // Answered before the work is queued, so FRIEND can't close the server ahead of its response
+            respond(address, requestId, responseNeeded, ATT_SUCCESS);
+            mRequests.submit(() -> handler.onWrite(address, value));
+        }
+
+        // Part of a long write, held until Execute Write
+        private void onPrepareWrite(String address,
+                                    int requestId,
+                                    UUID characteristicUuid,
+                                    boolean responseNeeded,
+                                    int offset,
+                                    byte[] value) {
+            DeviceSession<String> session = mDevices.get(address);
+            boolean queued = session != null && session.getPreparedWrites().prepare(characteristicUuid, offset, value);
+            BleServer server = mServer;
+            if (responseNeeded && server != null) {
+                server.sendResponse(address, requestId,
+                        queued ? ATT_SUCCESS : ATT_INVALID_ATTRIBUTE_LENGTH, offset, value);
+            }
+        }
+
+        @Override
+        public void onExecuteWrite(String address, int requestId, boolean execute) {
+            if (!mRequests.tryReserve()) {
+                respond(address, requestId, true, ATT_INSUFFICIENT_RESOURCES);
+                return;
+            }
+            respond(address, requestId, true, ATT_SUCCESS);
+            mRequests.submit(() -> {
+                DeviceSession<String> session = mDevices.get(address);
+                if (session == null) {
+                    return;
+                }
+                PreparedWriteBuffer writes = session.getPreparedWrites();
+                GattSchema.Characteristic characteristic = writes.isEmpty() ? null : mSchema.find(writes.getCharacteristicUuid());
+                byte[] value = writes.take();
+                if (execute && value != null && characteristic != null && characteristic.getWriteHandler() != null) {
+                    characteristic.getWriteHandler().onWrite(address, value);
+                }
+            });
+        }
+
+        @Override
+        public void onCharacteristicReadRequest(String address, int requestId, int offset, UUID characteristicUuid) {
+            GattSchema.Characteristic entry = mSchema.find(characteristicUuid);
+            GattSchema.ReadHandler handler = entry != null ? entry.getReadHandler() : null;
+            if (handler == null) {
+                respond(address, requestId, true, ATT_READ_NOT_PERMITTED);
+                return;
+            }
+            // The value comes from loop state, so reads are answered from the stage
+            if (!mRequests.offer(() -> onRead(address, requestId, handler, offset))) {
+                respond(address, requestId, true, ATT_INSUFFICIENT_RESOURCES);
+            }
+        }
+
+        private void onRead(String address, int requestId, GattSchema.ReadHandler handler, int offset) {
+            BleServer server = mServer;
+            if (server == null) {
+                return;
+            }
+            byte[] value = handler.onRead(address);
+            if (offset > value.length) {
+                server.sendResponse(address, requestId, ATT_INVALID_OFFSET, offset, null);
+                return;
+            }
+            // Long reads come back with growing offsets, each answered from the same full value
+            server.sendResponse(address, requestId, ATT_SUCCESS, offset,
+                    offset == 0 ? value : Arrays.copyOfRange(value, offset, value.length));
+        }
+
+        @Override
+        public void onDescriptorWriteRequest(String address,
+                                             int requestId,
+                                             UUID characteristicUuid,
+                                             UUID descriptorUuid,
+                                             boolean preparedWrite,
+                                             boolean responseNeeded,
+                                             int offset,
+                                             byte[] value) {
+            GattSchema.Characteristic entry = mSchema.find(characteristicUuid);
+            if (entry == null || !entry.hasDescriptor(descriptorUuid)) {
+                respond(address, requestId, responseNeeded, ATT_WRITE_NOT_PERMITTED);
+                return;
+            }
+            if (!mRequests.tryReserve()) {
+                respond(address, requestId, responseNeeded, ATT_INSUFFICIENT_RESOURCES);
+                return;
+            }
+            respond(address, requestId, responseNeeded, ATT_SUCCESS);
+            GattSchema.DescriptorWriteHandler handler = entry.getDescriptorWriteHandler(descriptorUuid);
+            mRequests.submit(() -> {
+                DeviceSession<String> session = mDevices.get(address);
+                if (session != null) {
+                    session.touch(mClock.elapsedRealtime());
+                }
+                if (handler != null) {
+                    handler.onDescriptorWrite(address, value);
+                }
+            });
+        }
+
+        private void respond(String address, int requestId, boolean responseNeeded, int status) {
+            BleServer server = mServer;
+            if (responseNeeded && server != null) {
+                server.sendResponse(address, requestId, status, 0, null);
+            }
+        }
+
+        @Override
+        public void onNotificationSent(String address, int status) {
+            mLoop.execute(() -> {
+                mFanout.onNotificationSent(address, status);
+                DeviceSession<String> session = mDevices.get(address);
+                if (status == ATT_SUCCESS && session != null && session.getTrace() != null) {
+                    session.getTrace().mark(PairingMetrics.Phase.ECHO_SENT, mClock.elapsedRealtime());
+                }
+            });
+        }
+
+        @Override
+        public void onPhyUpdate(String address, int txPhy, int rxPhy, int status) {
+            mLoop.execute(() -> {
+                DeviceSession<String> session = mDevices.get(address);
+                if (session != null && status == ATT_SUCCESS) {
+                    session.setPhy(txPhy, rxPhy);
+                }
+                log("PHY tx " + LinkProfile.phyName(txPhy) + " rx " + LinkProfile.phyName(rxPhy)
+                        + " status " + status + " for " + address);
+            });
+        }
+
+        @Override
+        public void onMtuChanged(String address, int mtu) {
+            mLoop.execute(() -> {
+                DeviceSession<String> session = mDevices.get(address);
+                if (session != null) {
+                    log("MTU " + mtu + " for " + address);
+                    session.setMtu(mtu);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.bleApp.server;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Queued prepared writes of one device until it sends Execute Write. Peers doing a long
+ * write send the value in pieces at increasing offsets; the attribute value can't
+ * exceed MAX_ATTRIBUTE_LENGTH, which bounds the buffer. Only one characteristic per
+ * queue is supported.
+ */
+public class PreparedWriteBuffer {
+
+    public static final int MAX_ATTRIBUTE_LENGTH = 512;
+
+    private byte[] mBuffer;
+    private int mLength;
+    private UUID mCharacteristicUuid;
+
+    // False, leaving the queue untouched, if the piece doesn't fit or targets another characteristic
+    public boolean prepare(UUID characteristicUuid, int offset, byte[] value) {
+        int length = value != null ? value.length : 0;
+        if (mCharacteristicUuid != null && !mCharacteristicUuid.equals(characteristicUuid)) {
+            return false;
+        }
+        if (offset < 0 || offset > mLength || offset + length > MAX_ATTRIBUTE_LENGTH) {
+            return false;
+        }
+        if (mBuffer == null) {
+            mBuffer = new byte[MAX_ATTRIBUTE_LENGTH];
+        }
+        mCharacteristicUuid = characteristicUuid;
+        if (length > 0) {
+            System.arraycopy(value, 0, mBuffer, offset, length);
+        }
+        mLength = Math.max(mLength, offset + length);
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return mCharacteristicUuid == null;
+    }
+
+    public UUID getCharacteristicUuid() {
+        return mCharacteristicUuid;
+    }
+
+    // The assembled value, emptying the queue
+    public byte[] take() {
+        byte[] value = mCharacteristicUuid != null ? Arrays.copyOf(mBuffer, mLength) : null;
+        clear();
+        return value;
+    }
+
+    public void clear() {
+        mLength = 0;
+        mCharacteristicUuid = null;
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.bleApp.store;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Watches we've paired with, kept in an append-only file of fixed 32 byte records so a
+ * restart can reconnect to them by address instead of scanning and handshaking again.
+ * The whole file is loaded with one read; the last record for an address wins, and a
+ * torn or corrupt tail is ignored. Once dead records outnumber live ones the file is
+ * rewritten to a temp file and renamed over the old one.
+ * Not thread safe; use it from the BLE event loop.
+ */
+public class PairedPeerStore {
+
+    public static final int UNKNOWN_RSSI = 127;
+
+    private static final int MAGIC = 0x584B5053; // "XKPS"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 32;
+    private static final short FLAG_PAIRED = 1;
+    private static final short FLAG_FORGOTTEN = 0;
+    private static final int MIN_RECORDS_BEFORE_COMPACTION = 16;
+
+    public static class Peer {
+        public final long address;
+        public final long peerId;
+        public final int lastRssi;
+        public final long pairedAtMs;
+
+        Peer(long address, long peerId, int lastRssi, long pairedAtMs) {
+            this.address = address;
+            this.peerId = peerId;
+            this.lastRssi = lastRssi;
+            this.pairedAtMs = pairedAtMs;
+        }
+    }
+
+    private static PairedPeerStore sInstance;
+
+    // Null when kept in memory only
+    private final File mFile;
+    // Insertion ordered, so iteration is oldest pairing first
+    private final Map<Long, Peer> mPeers = new LinkedHashMap<>();
+    private final ByteBuffer mRecord = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 mCrc = new CRC32();
+    private int mRecordsOnDisk;
+
+    private PairedPeerStore(File file) {
+        mFile = file;
+    }
+
+    // Process-wide store in dir, loaded on first use
+    public static synchronized PairedPeerStore get(File dir) throws IOException {
+        if (sInstance == null) {
+            sInstance = open(new File(dir, "paired_peers.bin"));
+        }
+        return sInstance;
+    }
+
+    public static PairedPeerStore open(File file) throws IOException {
+        PairedPeerStore store = new PairedPeerStore(file);
+        store.load();
+        return store;
+    }
+
+    // Kept in memory only, for simulated devices and tests
+    public static PairedPeerStore inMemory() {
+        return new PairedPeerStore(null);
+    }
+
+    public boolean isEmpty() {
+        return mPeers.isEmpty();
+    }
+
+    public int size() {
+        return mPeers.size();
+    }
+
+    public Peer get(long address) {
+        return mPeers.get(address);
+    }
+
+    public boolean contains(long address) {
+        return mPeers.containsKey(address);
+    }
+
+    // Most recently paired first
+    public List<Peer> getPeers() {
+        List<Peer> peers = new ArrayList<>(mPeers.values());
+        Collections.reverse(peers);
+        return peers;
+    }
+
+    public void put(long address, long peerId, int lastRssi, long pairedAtMs) throws IOException {
+        Peer peer = new Peer(address, peerId, lastRssi, pairedAtMs);
+        mPeers.remove(address);
+        mPeers.put(address, peer);
+        append(peer, FLAG_PAIRED);
+    }
+
+    public void forget(long address) throws IOException {
+        Peer peer = mPeers.remove(address);
+        if (peer != null) {
+            append(peer, FLAG_FORGOTTEN);
+        }
+    }
+
+    private void load() throws IOException {
+        if (!mFile.exists()) {
+            return;
+        }
+        byte[] bytes = new byte[(int) mFile.length()];
+        int read = 0;
+        try (FileInputStream in = new FileInputStream(mFile)) {
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, read).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+            // Unknown format, start over
+            mFile.delete();
+            return;
+        }
+        buffer.getShort();
+        while (buffer.remaining() >= RECORD_SIZE) {
+            int start = buffer.position();
+            mCrc.reset();
+            mCrc.update(bytes, start, RECORD_SIZE - 4);
+            long address = buffer.getLong();
+            long peerId = buffer.getLong();
+            long pairedAtMs = buffer.getLong();
+            short lastRssi = buffer.getShort();
+            short flags = buffer.getShort();
+            int crc = buffer.getInt();
+            if (crc != (int) mCrc.getValue()) {
+                // Torn write, everything after it is suspect
+                break;
+            }
+            mRecordsOnDisk++;
+            mPeers.remove(address);
+            if (flags == FLAG_PAIRED) {
+                mPeers.put(address, new Peer(address, peerId, lastRssi, pairedAtMs));
+            }
+        }
+        if (HEADER_SIZE + (long) mRecordsOnDisk * RECORD_SIZE != mFile.length()) {
+            compact();
+        }
+    }
+
+    private void append(Peer peer, short flags) throws IOException {
+        if (mFile == null) {
+            return;
+        }
+        if (mRecordsOnDisk >= MIN_RECORDS_BEFORE_COMPACTION && mRecordsOnDisk >= mPeers.size() * 2) {
+            // The rewrite already reflects this change
+            compact();
+            return;
+        }
+        boolean fresh = !mFile.exists() || mFile.length() == 0;
+        try (FileOutputStream out = new FileOutputStream(mFile, true)) {
+            if (fresh) {
+                out.write(header());
+            }
+            out.write(encode(peer, flags));
+            out.getFD().sync();
+        }
+        mRecordsOnDisk++;
+    }
+
+    private void compact() throws IOException {
+        File temp = new File(mFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + mPeers.size() * RECORD_SIZE);
+            buffer.put(header());
+            for (Peer peer : mPeers.values()) {
+                buffer.put(encode(peer, FLAG_PAIRED));
+            }
+            out.write(buffer.array(), 0, buffer.position());
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("Could not replace " + mFile);
+        }
+        mRecordsOnDisk = mPeers.size();
+    }
+
+    private byte[] encode(Peer peer, short flags) {
+        mRecord.clear();
+        mRecord.putLong(peer.address);
+        mRecord.putLong(peer.peerId);
+        mRecord.putLong(peer.pairedAtMs);
+        mRecord.putShort((short) peer.lastRssi);
+        mRecord.putShort(flags);
+        mCrc.reset();
+        mCrc.update(mRecord.array(), 0, RECORD_SIZE - 4);
+        mRecord.putInt((int) mCrc.getValue());
+        return mRecord.array();
+    }
+
+    private static byte[] header() {
+        return ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+                .putInt(MAGIC)
+                .putShort(VERSION)
+                .putShort((short) 0)
+                .array();
+    }
+}
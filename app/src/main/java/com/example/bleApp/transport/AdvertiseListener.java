@@ -0,0 +1,8 @@
+package com.example.bleApp.transport;
+
+public interface AdvertiseListener {
+
+    void onAdvertiseStarted();
+
+    void onAdvertiseFailed(int errorCode);
+}
@@ -0,0 +1,62 @@
+package com.example.bleApp.transport;
+
+import java.util.UUID;
+
+/**
+ * Client side of one Gatt link, mirroring the subset of BluetoothGatt used by PairingClient.
+ * Characteristics are addressed by UUID alone, which the server keeps unique across
+ * its services. Like BluetoothGatt, only one request may be outstanding at a time.
+ */
+public interface BleConnection {
+
+    String getAddress();
+
+    boolean requestMtu(int mtu);
+
+    // LinkProfile values; the PHY is only a preference and may be ignored
+    boolean requestConnectionPriority(int priority);
+
+    void setPreferredPhy(int phyMask);
+
+    boolean discoverServices();
+
+    // After discovery: PROPERTY_* bits of the characteristic, -1 if the peer doesn't have it
+    int getProperties(UUID characteristicUuid);
+
+    boolean hasDescriptor(UUID characteristicUuid, UUID descriptorUuid);
+
+    boolean setCharacteristicNotification(UUID characteristicUuid, boolean enable);
+
+    // Without response the write completes once the local stack has taken it
+    boolean writeCharacteristic(UUID characteristicUuid, byte[] value, boolean withResponse);
+
+    boolean readCharacteristic(UUID characteristicUuid);
+
+    boolean writeDescriptor(UUID characteristicUuid, UUID descriptorUuid, byte[] value);
+
+    boolean readRemoteRssi();
+
+    // Drops the link and releases it; no further callbacks
+    void close();
+
+    interface Callback {
+
+        void onConnectionStateChange(BleConnection connection, int status, boolean connected);
+
+        void onMtuChanged(BleConnection connection, int mtu, int status);
+
+        void onPhyUpdate(BleConnection connection, int txPhy, int rxPhy, int status);
+
+        void onServicesDiscovered(BleConnection connection, int status);
+
+        void onCharacteristicWrite(BleConnection connection, UUID characteristicUuid, int status);
+
+        void onCharacteristicRead(BleConnection connection, UUID characteristicUuid, byte[] value, int status);
+
+        void onDescriptorWrite(BleConnection connection, UUID characteristicUuid, UUID descriptorUuid, int status);
+
+        void onCharacteristicChanged(BleConnection connection, UUID characteristicUuid, byte[] value);
+
+        void onReadRemoteRssi(BleConnection connection, int rssi, int status);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.bleApp.transport;
+
+import com.example.bleApp.server.GattSchema;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+
+/**
+ * Server side of the Gatt links, mirroring the subset of BluetoothGattServer used by PairingServer.
+ * Callbacks may arrive on any thread, so requests can be answered where they come in.
+ */
+public interface BleServer {
+
+    // Adds the services of the schema in declaration order
+    void addServices(GattSchema schema);
+
+    boolean sendResponse(String address, int requestId, int status, int offset, @Nullable byte[] value);
+
+    boolean notifyCharacteristicChanged(String address, UUID characteristicUuid, byte[] value);
+
+    // The peripheral can't pick the connection interval, only ask for a PHY
+    void setPreferredPhy(String address, int phyMask);
+
+    void close();
+
+    interface Callback {
+
+        void onConnectionStateChange(String address, boolean connected);
+
+        void onCharacteristicWriteRequest(String address,
+                                          int requestId,
+                                          UUID characteristicUuid,
+                                          boolean preparedWrite,
+                                          boolean responseNeeded,
+                                          int offset,
+                                          byte[] value);
+
+        void onExecuteWrite(String address, int requestId, boolean execute);
+
+        void onCharacteristicReadRequest(String address, int requestId, int offset, UUID characteristicUuid);
+
+        void onDescriptorWriteRequest(String address,
+                                      int requestId,
+                                      UUID characteristicUuid,
+                                      UUID descriptorUuid,
+                                      boolean preparedWrite,
+                                      boolean responseNeeded,
+                                      int offset,
+                                      byte[] value);
+
+        void onNotificationSent(String address, int status);
+
+        void onMtuChanged(String address, int mtu);
+
+        void onPhyUpdate(String address, int txPhy, int rxPhy, int status);
+    }
+}
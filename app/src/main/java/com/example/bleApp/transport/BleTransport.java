@@ -0,0 +1,58 @@
+package com.example.bleApp.transport;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+
+/**
+ * The radio operations the pairing code needs, independent of the Android Bluetooth
+ * stack. Status codes, scan modes and attribute bits follow the values of the
+ * framework constants, so the Android implementation passes them through as is.
+ * Scan, advertise and connection callbacks arrive on the thread the pairing code runs
+ * on; BleServer callbacks may come from any thread.
+ */
+public interface BleTransport {
+
+    int STATUS_SUCCESS = 0;
+    int STATUS_FAILURE = 257;
+
+    // ScanSettings.SCAN_MODE_*
+    int SCAN_MODE_LOW_POWER = 0;
+    int SCAN_MODE_BALANCED = 1;
+    int SCAN_MODE_LOW_LATENCY = 2;
+
+    // BluetoothGattCharacteristic.PROPERTY_*
+    int PROPERTY_READ = 0x02;
+    int PROPERTY_WRITE_NO_RESPONSE = 0x04;
+    int PROPERTY_WRITE = 0x08;
+    int PROPERTY_NOTIFY = 0x10;
+
+    // BluetoothGattCharacteristic.PERMISSION_*, the same bits for descriptors
+    int PERMISSION_READ = 0x01;
+    int PERMISSION_WRITE = 0x10;
+
+    byte[] ENABLE_NOTIFICATION_VALUE = {0x01, 0x00};
+
+    String getAddress();
+
+    // Scanning: advertisers of serviceUuid, with their manufacturer data for manufacturerId
+
+    void startScan(UUID serviceUuid, int manufacturerId, int scanMode, ScanListener listener);
+
+    void stopScan();
+
+    // Advertising: connectable, replaces what was advertised before
+
+    void startAdvertising(UUID serviceUuid, int manufacturerId, byte[] manufacturerData, AdvertiseListener listener);
+
+    void stopAdvertising();
+
+    // Gatt
+
+    // Null if the connection could not be started
+    @Nullable
+    BleConnection connect(String address, BleConnection.Callback callback);
+
+    @Nullable
+    BleServer openServer(BleServer.Callback callback);
+}
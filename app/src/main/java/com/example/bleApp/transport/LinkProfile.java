@@ -0,0 +1,43 @@
+package com.example.bleApp.transport;
+
+/**
+ * Connection parameters for a phase of a link. The priority values are those of
+ * BluetoothGatt.CONNECTION_PRIORITY_* and the PHY masks those of
+ * BluetoothDevice.PHY_LE_*_MASK, so the services pass them to the stack as is.
+ * The stack may settle on something else; onPhyUpdate and the connection update
+ * callback report what was actually used.
+ */
+public enum LinkProfile {
+
+    // Round trips dominate: shortest interval, and 2M to halve time on air per packet
+    HANDSHAKE_FAST(LinkProfile.PRIORITY_HIGH, LinkProfile.PHY_2M_MASK);
+
+    public static final int PRIORITY_BALANCED = 0;
+    public static final int PRIORITY_HIGH = 1;
+    public static final int PRIORITY_LOW_POWER = 2;
+
+    public static final int PHY_1M_MASK = 1;
+    public static final int PHY_2M_MASK = 2;
+
+    public final int connectionPriority;
+    public final int phyMask;
+
+    LinkProfile(int connectionPriority, int phyMask) {
+        this.connectionPriority = connectionPriority;
+        this.phyMask = phyMask;
+    }
+
+    // PHY constant (1 = 1M, 2 = 2M, 3 = Coded) as a readable name for logs
+    public static String phyName(int phy) {
+        switch (phy) {
+            case 1:
+                return "1M";
+            case 2:
+                return "2M";
+            case 3:
+                return "Coded";
+            default:
+                return "PHY" + phy;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.bleApp.transport;
+
+import org.jetbrains.annotations.Nullable;
+
+public interface ScanListener {
+
+    // manufacturerData is null when the advertisement carries none for the id scanned for
+    void onScanResult(String address, int rssi, @Nullable byte[] manufacturerData);
+
+    void onScanFailed(int errorCode);
+}
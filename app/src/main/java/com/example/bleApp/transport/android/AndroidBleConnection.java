@@ -0,0 +1,264 @@
+package com.example.bleApp.transport.android;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothProfile;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.bleApp.transport.BleConnection;
+import com.example.bleApp.util.BleEventLoop;
+import com.example.bleApp.util.GattIndex;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * BleConnection over a BluetoothGatt. Characteristics are looked up in a GattIndex
+ * built on discovery; values are set when a request starts, since the stack shares
+ * the characteristic and descriptor objects.
+ */
+class AndroidBleConnection implements BleConnection {
+
+    private static final String TAG = "BLE CONNECTION";
+
+    private final String mAddress;
+    private final Callback mCallback;
+    private final BleEventLoop mLoop;
+    private final GattCallback mGattCallback = new GattCallback();
+
+    // Loop only
+    private BluetoothGatt mGatt;
+    private GattIndex mIndex;
+    private boolean mClosed;
+
+    AndroidBleConnection(String address, Callback callback, BleEventLoop loop) {
+        mAddress = address;
+        mCallback = callback;
+        mLoop = loop;
+    }
+
+    BluetoothGattCallback getGattCallback() {
+        return mGattCallback;
+    }
+
+    void setGatt(BluetoothGatt gatt) {
+        mGatt = gatt;
+    }
+
+    @Override
+    public String getAddress() {
+        return mAddress;
+    }
+
+    @Override
+    public boolean requestMtu(int mtu) {
+        return mGatt.requestMtu(mtu);
+    }
+
+    @Override
+    public boolean requestConnectionPriority(int priority) {
+        return mGatt.requestConnectionPriority(priority);
+    }
+
+    @Override
+    public void setPreferredPhy(int phyMask) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            mGatt.setPreferredPhy(phyMask, phyMask, BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+        }
+    }
+
+    @Override
+    public boolean discoverServices() {
+        return mGatt.discoverServices();
+    }
+
+    @Override
+    public int getProperties(UUID characteristicUuid) {
+        BluetoothGattCharacteristic characteristic = find(characteristicUuid);
+        return characteristic != null ? characteristic.getProperties() : -1;
+    }
+
+    @Override
+    public boolean hasDescriptor(UUID characteristicUuid, UUID descriptorUuid) {
+        BluetoothGattCharacteristic characteristic = find(characteristicUuid);
+        return characteristic != null && characteristic.getDescriptor(descriptorUuid) != null;
+    }
+
+    @Override
+    public boolean setCharacteristicNotification(UUID characteristicUuid, boolean enable) {
+        BluetoothGattCharacteristic characteristic = find(characteristicUuid);
+        return characteristic != null && mGatt.setCharacteristicNotification(characteristic, enable);
+    }
+
+    @Override
+    public boolean writeCharacteristic(UUID characteristicUuid, byte[] value, boolean withResponse) {
+        BluetoothGattCharacteristic characteristic = find(characteristicUuid);
+        if (characteristic == null) {
+            return false;
+        }
+        characteristic.setWriteType(withResponse ? BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT
+                : BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+        characteristic.setValue(value);
+        return mGatt.writeCharacteristic(characteristic);
+    }
+
+    @Override
+    public boolean readCharacteristic(UUID characteristicUuid) {
+        BluetoothGattCharacteristic characteristic = find(characteristicUuid);
+        return characteristic != null && mGatt.readCharacteristic(characteristic);
+    }
+
+    @Override
+    public boolean writeDescriptor(UUID characteristicUuid, UUID descriptorUuid, byte[] value) {
+        BluetoothGattCharacteristic characteristic = find(characteristicUuid);
+        BluetoothGattDescriptor descriptor = characteristic != null ? characteristic.getDescriptor(descriptorUuid) : null;
+        if (descriptor == null) {
+            return false;
+        }
+        descriptor.setValue(value);
+        return mGatt.writeDescriptor(descriptor);
+    }
+
+    @Override
+    public boolean readRemoteRssi() {
+        return mGatt.readRemoteRssi();
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+        mIndex = null;
+        mGatt.disconnect();
+        mGatt.close();
+    }
+
+    @Nullable
+    private BluetoothGattCharacteristic find(UUID characteristicUuid) {
+        return mIndex != null ? mIndex.getCharacteristic(characteristicUuid) : null;
+    }
+
+    // Runs on a binder thread before O; every callback hops onto the loop and is dropped once closed
+    private class GattCallback extends BluetoothGattCallback {
+
+        @Override
+        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+            super.onConnectionStateChange(gatt, status, newState);
+            Log.d(TAG, "onConnectionStateChange " + mAddress + " status " + status + " newState " + newState);
+            mLoop.execute(() -> {
+                if (mClosed) {
+                    return;
+                }
+                if (status != BluetoothGatt.GATT_SUCCESS || newState == BluetoothProfile.STATE_DISCONNECTED) {
+                    mCallback.onConnectionStateChange(AndroidBleConnection.this, status, false);
+                } else if (newState == BluetoothProfile.STATE_CONNECTED) {
+                    mCallback.onConnectionStateChange(AndroidBleConnection.this, status, true);
+                }
+            });
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            super.onMtuChanged(gatt, mtu, status);
+            mLoop.execute(() -> {
+                if (!mClosed) {
+                    mCallback.onMtuChanged(AndroidBleConnection.this, mtu, status);
+                }
+            });
+        }
+
+        @Override
+        public void onPhyUpdate(BluetoothGatt gatt, int txPhy, int rxPhy, int status) {
+            super.onPhyUpdate(gatt, txPhy, rxPhy, status);
+            mLoop.execute(() -> {
+                if (!mClosed) {
+                    mCallback.onPhyUpdate(AndroidBleConnection.this, txPhy, rxPhy, status);
+                }
+            });
+        }
+
+        // Hidden in the SDK but called by the stack on every connection parameter update
+        public void onConnectionUpdated(BluetoothGatt gatt, int interval, int latency, int timeout, int status) {
+            Log.d(TAG, String.format(Locale.US,
+                    "Connection interval %.2f ms latency %d timeout %d ms status %d for %s",
+                    interval * 1.25, latency, timeout * 10, status, mAddress));
+        }
+
+        @Override
+        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            super.onServicesDiscovered(gatt, status);
+            mLoop.execute(() -> {
+                if (mClosed) {
+                    return;
+                }
+                if (status == BluetoothGatt.GATT_SUCCESS) {
+                    mIndex = GattIndex.build(gatt.getServices());
+                }
+                mCallback.onServicesDiscovered(AndroidBleConnection.this, status);
+            });
+        }
+
+        @Override
+        public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            super.onCharacteristicWrite(gatt, characteristic, status);
+            UUID characteristicUuid = characteristic.getUuid();
+            mLoop.execute(() -> {
+                if (!mClosed) {
+                    mCallback.onCharacteristicWrite(AndroidBleConnection.this, characteristicUuid, status);
+                }
+            });
+        }
+
+        @Override
+        public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+            super.onCharacteristicRead(gatt, characteristic, status);
+            // The stack reuses the characteristic, take the value before hopping threads
+            byte[] value = characteristic.getValue();
+            UUID characteristicUuid = characteristic.getUuid();
+            mLoop.execute(() -> {
+                if (!mClosed) {
+                    mCallback.onCharacteristicRead(AndroidBleConnection.this, characteristicUuid, value, status);
+                }
+            });
+        }
+
+        @Override
+        public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+            super.onDescriptorWrite(gatt, descriptor, status);
+            UUID characteristicUuid = descriptor.getCharacteristic().getUuid();
+            UUID descriptorUuid = descriptor.getUuid();
+            mLoop.execute(() -> {
+                if (!mClosed) {
+                    mCallback.onDescriptorWrite(AndroidBleConnection.this, characteristicUuid, descriptorUuid, status);
+                }
+            });
+        }
+
+        @Override
+        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+            super.onCharacteristicChanged(gatt, characteristic);
+            byte[] value = characteristic.getValue();
+            UUID characteristicUuid = characteristic.getUuid();
+            mLoop.execute(() -> {
+                if (!mClosed) {
+                    mCallback.onCharacteristicChanged(AndroidBleConnection.this, characteristicUuid, value);
+                }
+            });
+        }
+
+        @Override
+        public void onReadRemoteRssi(BluetoothGatt gatt, int rssi, int status) {
+            super.onReadRemoteRssi(gatt, rssi, status);
+            mLoop.execute(() -> {
+                if (!mClosed) {
+                    mCallback.onReadRemoteRssi(AndroidBleConnection.this, rssi, status);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.bleApp.transport.android;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattServer;
+import android.bluetooth.BluetoothGattServerCallback;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.bleApp.server.GattSchema;
+import com.example.bleApp.transport.BleServer;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BleServer over a BluetoothGattServer. The attributes are built from the GattSchema
+ * and added one service at a time, the stack refuses the next until the last is in.
+ * Callbacks are passed on from the binder thread they arrive on.
+ */
+class AndroidBleServer implements BleServer {
+
+    private static final String TAG = "BLE SERVER";
+
+    private final BluetoothAdapter mBluetoothAdapter;
+    private final Callback mCallback;
+    private final GattCallback mGattCallback = new GattCallback();
+    // Connected devices, so responses and notifications don't look them up again
+    private final Map<String, BluetoothDevice> mDevices = new ConcurrentHashMap<>();
+    private final Map<UUID, BluetoothGattCharacteristic> mCharacteristics = new ConcurrentHashMap<>();
+    private final ArrayDeque<BluetoothGattService> mPendingServices = new ArrayDeque<>();
+    // Read from binder threads to answer requests
+    private volatile BluetoothGattServer mGattServer;
+
+    AndroidBleServer(BluetoothAdapter bluetoothAdapter, Callback callback) {
+        mBluetoothAdapter = bluetoothAdapter;
+        mCallback = callback;
+    }
+
+    BluetoothGattServerCallback getGattCallback() {
+        return mGattCallback;
+    }
+
+    void setGattServer(BluetoothGattServer gattServer) {
+        mGattServer = gattServer;
+    }
+
+    @Override
+    public void addServices(GattSchema schema) {
+        synchronized (mPendingServices) {
+            for (GattSchema.Service service : schema.getServices()) {
+                mPendingServices.add(build(service));
+            }
+        }
+        addNextService();
+    }
+
+    private BluetoothGattService build(GattSchema.Service service) {
+        BluetoothGattService gattService = new BluetoothGattService(service.getUuid(),
+                BluetoothGattService.SERVICE_TYPE_PRIMARY);
+        for (GattSchema.Characteristic characteristic : service.getCharacteristics()) {
+            BluetoothGattCharacteristic attribute = new BluetoothGattCharacteristic(characteristic.getUuid(),
+                    characteristic.getProperties(), characteristic.getPermissions());
+            for (GattSchema.Descriptor descriptor : characteristic.getDescriptors()) {
+                attribute.addDescriptor(new BluetoothGattDescriptor(descriptor.getUuid(), descriptor.getPermissions()));
+            }
+            gattService.addCharacteristic(attribute);
+            mCharacteristics.put(characteristic.getUuid(), attribute);
+        }
+        return gattService;
+    }
+
+    // The next goes in from onServiceAdded
+    private void addNextService() {
+        BluetoothGattService service;
+        synchronized (mPendingServices) {
+            service = mPendingServices.poll();
+        }
+        BluetoothGattServer gattServer = mGattServer;
+        if (service != null && gattServer != null && !gattServer.addService(service)) {
+            Log.e(TAG, "Could not add service " + service.getUuid());
+        }
+    }
+
+    @Override
+    public boolean sendResponse(String address, int requestId, int status, int offset, @Nullable byte[] value) {
+        BluetoothGattServer gattServer = mGattServer;
+        return gattServer != null && gattServer.sendResponse(device(address), requestId, status, offset, value);
+    }
+
+    @Override
+    public boolean notifyCharacteristicChanged(String address, UUID characteristicUuid, byte[] value) {
+        BluetoothGattServer gattServer = mGattServer;
+        BluetoothGattCharacteristic characteristic = mCharacteristics.get(characteristicUuid);
+        if (gattServer == null || characteristic == null) {
+            return false;
+        }
+        // Only the loop sets the value, and the stack reads it during the call
+        characteristic.setValue(value);
+        return gattServer.notifyCharacteristicChanged(device(address), characteristic, false);
+    }
+
+    @Override
+    public void setPreferredPhy(String address, int phyMask) {
+        BluetoothGattServer gattServer = mGattServer;
+        if (gattServer != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            gattServer.setPreferredPhy(device(address), phyMask, phyMask, BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+        }
+    }
+
+    @Override
+    public void close() {
+        BluetoothGattServer gattServer = mGattServer;
+        mGattServer = null;
+        if (gattServer != null) {
+            gattServer.close();
+        }
+    }
+
+    private BluetoothDevice device(String address) {
+        BluetoothDevice device = mDevices.get(address);
+        return device != null ? device : mBluetoothAdapter.getRemoteDevice(address);
+    }
+
+    private class GattCallback extends BluetoothGattServerCallback {
+
+        @Override
+        public void onConnectionStateChange(BluetoothDevice device, int status, int newState) {
+            super.onConnectionStateChange(device, status, newState);
+            Log.d(TAG, "onConnectionStateChange " + device.getAddress() + " status " + status + " newState " + newState);
+            if (newState == BluetoothProfile.STATE_CONNECTED) {
+                mDevices.put(device.getAddress(), device);
+                mCallback.onConnectionStateChange(device.getAddress(), true);
+            } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
+                mDevices.remove(device.getAddress());
+                mCallback.onConnectionStateChange(device.getAddress(), false);
+            }
+        }
+
+        @Override
+        public void onServiceAdded(int status, BluetoothGattService service) {
+            super.onServiceAdded(status, service);
+            if (status != BluetoothGatt.GATT_SUCCESS) {
+                Log.e(TAG, "Service " + service.getUuid() + " not added: " + status);
+            }
+            addNextService();
+        }
+
+        @Override
+        public void onCharacteristicWriteRequest(BluetoothDevice device,
+                                                 int requestId,
+                                                 BluetoothGattCharacteristic characteristic,
+                                                 boolean preparedWrite,
+                                                 boolean responseNeeded,
+                                                 int offset,
+                                                 byte[] value) {
+            super.onCharacteristicWriteRequest(device, requestId, characteristic, preparedWrite, responseNeeded, offset, value);
+            mCallback.onCharacteristicWriteRequest(device.getAddress(), requestId, characteristic.getUuid(),
+                    preparedWrite, responseNeeded, offset, value);
+        }
+
+        @Override
+        public void onExecuteWrite(BluetoothDevice device, int requestId, boolean execute) {
+            super.onExecuteWrite(device, requestId, execute);
+            mCallback.onExecuteWrite(device.getAddress(), requestId, execute);
+        }
+
+        @Override
+        public void onCharacteristicReadRequest(BluetoothDevice device,
+                                                int requestId,
+                                                int offset,
+                                                BluetoothGattCharacteristic characteristic) {
+            super.onCharacteristicReadRequest(device, requestId, offset, characteristic);
+            mCallback.onCharacteristicReadRequest(device.getAddress(), requestId, offset, characteristic.getUuid());
+        }
+
+        @Override
+        public void onDescriptorWriteRequest(BluetoothDevice device,
+                                             int requestId,
+                                             BluetoothGattDescriptor descriptor,
+                                             boolean preparedWrite,
+                                             boolean responseNeeded,
+                                             int offset,
+                                             byte[] value) {
+            super.onDescriptorWriteRequest(device, requestId, descriptor, preparedWrite, responseNeeded, offset, value);
+            mCallback.onDescriptorWriteRequest(device.getAddress(), requestId, descriptor.getCharacteristic().getUuid(),
+                    descriptor.getUuid(), preparedWrite, responseNeeded, offset, value);
+        }
+
+        @Override
+        public void onNotificationSent(BluetoothDevice device, int status) {
+            super.onNotificationSent(device, status);
+            mCallback.onNotificationSent(device.getAddress(), status);
+        }
+
+        @Override
+        public void onMtuChanged(BluetoothDevice device, int mtu) {
+            super.onMtuChanged(device, mtu);
+            mCallback.onMtuChanged(device.getAddress(), mtu);
+        }
+
+        @Override
+        public void onPhyUpdate(BluetoothDevice device, int txPhy, int rxPhy, int status) {
+            super.onPhyUpdate(device, txPhy, rxPhy, status);
+            mCallback.onPhyUpdate(device.getAddress(), txPhy, rxPhy, status);
+        }
+
+        // Hidden in the SDK but called by the stack on every connection parameter update
+        public void onConnectionUpdated(BluetoothDevice device, int interval, int latency, int timeout, int status) {
+            Log.d(TAG, String.format(Locale.US,
+                    "Connection interval %.2f ms latency %d timeout %d ms status %d for %s",
+                    interval * 1.25, latency, timeout * 10, status, device.getAddress()));
+        }
+    }
+}
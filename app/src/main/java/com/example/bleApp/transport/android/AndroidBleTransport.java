@@ -0,0 +1,247 @@
+package com.example.bleApp.transport.android;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattServer;
+import android.bluetooth.BluetoothManager;
+import android.bluetooth.le.AdvertiseCallback;
+import android.bluetooth.le.AdvertiseData;
+import android.bluetooth.le.AdvertiseSettings;
+import android.bluetooth.le.BluetoothLeAdvertiser;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanRecord;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Message;
+import android.os.ParcelUuid;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.bleApp.metrics.StartupTrace;
+import com.example.bleApp.transport.AdvertiseListener;
+import com.example.bleApp.transport.BleConnection;
+import com.example.bleApp.transport.BleServer;
+import com.example.bleApp.transport.BleTransport;
+import com.example.bleApp.transport.ScanListener;
+import com.example.bleApp.util.BleEventLoop;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * BleTransport over the Android stack. Scan and advertise callbacks come in on the
+ * main thread and connection callbacks on binder threads; all of them are handed to
+ * the BLE event loop, scan results in pooled Messages since they are the hottest.
+ */
+public class AndroidBleTransport implements BleTransport {
+
+    private static final String TAG = "BLE TRANSPORT";
+    private static final int MSG_SCAN_RESULT = 1;
+
+    private final Context mContext;
+    private final BluetoothManager mBluetoothManager;
+    private final BluetoothAdapter mBluetoothAdapter;
+    private final BleEventLoop mLoop;
+    private final Handler mScanHandler;
+
+    // Loop only
+    private BluetoothLeScanner mBluetoothLeScanner;
+    private ScanCallback mScanCallback;
+    private ScanListener mScanListener;
+    private int mManufacturerId;
+    private BluetoothLeAdvertiser mBluetoothLeAdvertiser;
+    private AdvertiseListener mAdvertiseListener;
+
+    public AndroidBleTransport(Context context, BluetoothManager bluetoothManager, BluetoothAdapter bluetoothAdapter,
+                               BleEventLoop loop) {
+        mContext = context;
+        mBluetoothManager = bluetoothManager;
+        mBluetoothAdapter = bluetoothAdapter;
+        mLoop = loop;
+        mScanHandler = loop.newHandler(this::handleScanMessage);
+    }
+
+    @Override
+    public String getAddress() {
+        return mBluetoothAdapter.getAddress();
+    }
+
+    // Scanning
+
+    @Override
+    public void startScan(UUID serviceUuid, int manufacturerId, int scanMode, ScanListener listener) {
+        stopScan();
+        mBluetoothLeScanner = mBluetoothAdapter.getBluetoothLeScanner();
+        if (mBluetoothLeScanner == null) {
+            listener.onScanFailed(ScanCallback.SCAN_FAILED_INTERNAL_ERROR);
+            return;
+        }
+        mScanListener = listener;
+        mManufacturerId = manufacturerId;
+        mScanCallback = new BtleScanCallback();
+
+        ScanFilter scanFilter = new ScanFilter.Builder()
+                .setServiceUuid(new ParcelUuid(serviceUuid))
+                .build();
+        List<ScanFilter> filters = new ArrayList<>();
+        filters.add(scanFilter);
+
+        ScanSettings settings = new ScanSettings.Builder()
+                .setScanMode(scanMode)
+                .build();
+
+        mBluetoothLeScanner.startScan(filters, settings, mScanCallback);
+        if (StartupTrace.global().mark(StartupTrace.Step.FIRST_SCAN, SystemClock.elapsedRealtime())) {
+            StartupTrace.global().dump(line -> Log.d(TAG, line));
+        }
+    }
+
+    @Override
+    public void stopScan() {
+        if (mBluetoothAdapter.isEnabled() && mBluetoothLeScanner != null && mScanCallback != null) {
+            mBluetoothLeScanner.stopScan(mScanCallback);
+        }
+        mScanCallback = null;
+        mScanListener = null;
+    }
+
+    private boolean handleScanMessage(Message message) {
+        if (message.what != MSG_SCAN_RESULT) {
+            return false;
+        }
+        ScanResult result = (ScanResult) message.obj;
+        ScanListener listener = mScanListener;
+        if (listener != null) {
+            ScanRecord record = result.getScanRecord();
+            byte[] manufacturerData = record != null ? record.getManufacturerSpecificData(mManufacturerId) : null;
+            listener.onScanResult(result.getDevice().getAddress(), result.getRssi(), manufacturerData);
+        }
+        return true;
+    }
+
+    private class BtleScanCallback extends ScanCallback {
+
+        // Delivered on the main thread; pooled Messages carry results to the loop
+        @Override
+        public void onScanResult(int callbackType, ScanResult result) {
+            mScanHandler.obtainMessage(MSG_SCAN_RESULT, result).sendToTarget();
+        }
+
+        @Override
+        public void onBatchScanResults(List<ScanResult> results) {
+            for (ScanResult result : results) {
+                mScanHandler.obtainMessage(MSG_SCAN_RESULT, result).sendToTarget();
+            }
+        }
+
+        @Override
+        public void onScanFailed(int errorCode) {
+            mLoop.execute(() -> {
+                ScanListener listener = mScanListener;
+                if (mScanCallback == this && listener != null) {
+                    listener.onScanFailed(errorCode);
+                }
+            });
+        }
+    }
+
+    // Advertising
+
+    @Override
+    public void startAdvertising(UUID serviceUuid, int manufacturerId, byte[] manufacturerData,
+                                 AdvertiseListener listener) {
+        mBluetoothLeAdvertiser = mBluetoothAdapter.getBluetoothLeAdvertiser();
+        if (mBluetoothLeAdvertiser == null) {
+            listener.onAdvertiseFailed(AdvertiseCallback.ADVERTISE_FAILED_INTERNAL_ERROR);
+            return;
+        }
+        mAdvertiseListener = listener;
+
+        AdvertiseSettings settings = new AdvertiseSettings.Builder().setAdvertiseMode(AdvertiseSettings.ADVERTISE_MODE_BALANCED)
+                .setConnectable(true)
+                .setTimeout(0)
+                .setTxPowerLevel(AdvertiseSettings.ADVERTISE_TX_POWER_LOW)
+                .build();
+
+        AdvertiseData data = new AdvertiseData.Builder().setIncludeDeviceName(false)
+                .addServiceUuid(new ParcelUuid(serviceUuid))
+                .addManufacturerData(manufacturerId, manufacturerData)
+                .build();
+
+        mBluetoothLeAdvertiser.startAdvertising(settings, data, mAdvertiseCallback);
+    }
+
+    @Override
+    public void stopAdvertising() {
+        mAdvertiseListener = null;
+        if (mBluetoothLeAdvertiser != null) {
+            mBluetoothLeAdvertiser.stopAdvertising(mAdvertiseCallback);
+        }
+    }
+
+    private final AdvertiseCallback mAdvertiseCallback = new AdvertiseCallback() {
+        @Override
+        public void onStartSuccess(AdvertiseSettings settingsInEffect) {
+            mLoop.execute(() -> {
+                if (StartupTrace.global().mark(StartupTrace.Step.FIRST_ADVERTISE, SystemClock.elapsedRealtime())) {
+                    StartupTrace.global().dump(line -> Log.d(TAG, line));
+                }
+                if (mAdvertiseListener != null) {
+                    mAdvertiseListener.onAdvertiseStarted();
+                }
+            });
+        }
+
+        @Override
+        public void onStartFailure(int errorCode) {
+            mLoop.execute(() -> {
+                if (mAdvertiseListener != null) {
+                    mAdvertiseListener.onAdvertiseFailed(errorCode);
+                }
+            });
+        }
+    };
+
+    // Gatt
+
+    @Nullable
+    @Override
+    public BleConnection connect(String address, BleConnection.Callback callback) {
+        BluetoothDevice device = mBluetoothAdapter.getRemoteDevice(address);
+        AndroidBleConnection connection = new AndroidBleConnection(address, callback, mLoop);
+        BluetoothGatt gatt;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            // Callbacks arrive on the loop directly
+            gatt = device.connectGatt(mContext, false, connection.getGattCallback(), BluetoothDevice.TRANSPORT_LE,
+                    BluetoothDevice.PHY_LE_1M_MASK, mLoop.getHandler());
+        } else {
+            gatt = device.connectGatt(mContext, false, connection.getGattCallback(), BluetoothDevice.TRANSPORT_LE);
+        }
+        if (gatt == null) {
+            return null;
+        }
+        connection.setGatt(gatt);
+        return connection;
+    }
+
+    @Nullable
+    @Override
+    public BleServer openServer(BleServer.Callback callback) {
+        AndroidBleServer server = new AndroidBleServer(mBluetoothAdapter, callback);
+        BluetoothGattServer gattServer = mBluetoothManager.openGattServer(mContext, server.getGattCallback());
+        if (gattServer == null) {
+            return null;
+        }
+        server.setGattServer(gattServer);
+        return server;
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.bleApp.transport.sim;
+
+import com.example.bleApp.client.PairingClient;
+import com.example.bleApp.client.ScanResultTable;
+import com.example.bleApp.metrics.PairingMetrics;
+import com.example.bleApp.server.PairingServer;
+import com.example.bleApp.store.PairedPeerStore;
+import com.example.bleApp.ui.PairingStatus;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs many virtual watches through the pairing on the simulated radio and reports
+ * pairing throughput and latency percentiles. Every watch runs the app's own
+ * PairingClient and PairingServer over a SimulatedTransport, so the connection pool,
+ * operation queue, fragmentation, compression and beacon are all exercised. Watches
+ * are placed in pairs half a meter apart, pairs on a grid; a pair powers on together,
+ * and some pairs already know each other from an earlier pairing.
+ */
+public class PairingLoadRun {
+
+    public static class Config {
+        public int watches = 200;
+        public double pairSpacingMeters = 8;
+        public double pairDistanceMeters = 0.5;
+        public long startSpreadMs = 1000;
+        // Pairs whose peer stores already hold each other, so they reconnect without a scan
+        public double knownPeerFraction = 0.25;
+        public long timeLimitMs = 10 * 60 * 1000;
+        public SimulatedRadio.Config radio = new SimulatedRadio.Config();
+    }
+
+    public static class Report {
+        public int watches;
+        public int pairedWatches;
+        public int knownPeerWatches;
+        public long simulatedMs;
+        public long wallMs;
+        public long events;
+        public long p50Ms;
+        public long p90Ms;
+        public long p99Ms;
+        public long maxMs;
+        // Median of the watches that reconnected to a known peer, and of those that scanned
+        public long knownPeerP50Ms;
+        public long scanP50Ms;
+        // Advertisements clients skipped on their beacon, without connecting
+        public long beaconRejections;
+        public PairingMetrics metrics;
+
+        public double pairingsPerSecond() {
+            return simulatedMs == 0 ? 0 : (pairedWatches / 2.0) * 1000.0 / simulatedMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d/%d watches paired in %d ms simulated (%.2f pairings/s), latency p50=%d p90=%d p99=%d max=%d ms, "
+                            + "known peer p50=%d ms (%d watches) scan p50=%d ms, %d beacon rejections, "
+                            + "%d events in %d ms wall",
+                    pairedWatches, watches, simulatedMs, pairingsPerSecond(),
+                    p50Ms, p90Ms, p99Ms, maxMs, knownPeerP50Ms, knownPeerWatches, scanP50Ms, beaconRejections,
+                    events, wallMs);
+        }
+    }
+
+    // Both halves of the app on one simulated device
+    private static final class Watch implements PairingClient.Listener, PairingServer.Listener {
+
+        private final SimulatedRadio mRadio;
+        private final PairedPeerStore mPeers = PairedPeerStore.inMemory();
+        private final PairingClient mClient;
+        private final PairingServer mServer;
+        private final Runnable mOnMatched;
+        private boolean mKnownPeer;
+        private long mStartedAt = -1;
+        private long mMatchedAt = -1;
+
+        Watch(SimulatedRadio radio, SimulatedTransport transport, PairingMetrics metrics, Runnable onMatched) {
+            mRadio = radio;
+            mOnMatched = onMatched;
+            // Callbacks already come in on the simulation's only thread
+            Executor loop = Runnable::run;
+            mClient = new PairingClient(transport, radio.getScheduler(), radio.getClock(), radio.getRandom(),
+                    metrics, this::isMatched, this);
+            mServer = new PairingServer(transport, loop, radio.getScheduler(), radio.getClock(), metrics, this);
+        }
+
+        void knowPeer(String address) {
+            long packed = ScanResultTable.packAddress(address);
+            try {
+                mPeers.put(packed, packed, PairedPeerStore.UNKNOWN_RSSI, mRadio.getClock().currentTimeMillis());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            mKnownPeer = true;
+        }
+
+        void start() {
+            mStartedAt = mRadio.now();
+            mServer.start();
+            mClient.start(mPeers);
+        }
+
+        boolean isMatched() {
+            return mMatchedAt >= 0;
+        }
+
+        long getPairingLatencyMs() {
+            return isMatched() ? mMatchedAt - mStartedAt : -1;
+        }
+
+        @Override
+        public void onPaired(String address) {
+            if (isMatched()) {
+                return;
+            }
+            mMatchedAt = mRadio.now();
+            mOnMatched.run();
+            // The device powers down, but not from inside the callback that paired it
+            mRadio.schedule(0, () -> {
+                mClient.stop();
+                mServer.stop();
+            });
+        }
+
+        @Override
+        public void log(String message) {
+        }
+
+        @Override
+        public boolean isTracing() {
+            return false;
+        }
+
+        @Override
+        public void trace(String line) {
+        }
+
+        @Override
+        public void showMessage(String message) {
+        }
+
+        @Override
+        public void onStatus(PairingStatus status) {
+        }
+    }
+
+    public static Report run(Config config) {
+        long wallStart = System.nanoTime();
+        SimulatedRadio radio = new SimulatedRadio(config.radio);
+        List<Watch> watches = new ArrayList<>();
+        int[] matched = new int[1];
+        PairingMetrics metrics = new PairingMetrics();
+
+        int pairs = (config.watches + 1) / 2;
+        int pairsPerRow = Math.max(1, (int) Math.ceil(Math.sqrt(config.watches / 2.0)));
+        boolean knownPair = false;
+        for (int i = 0; i < config.watches; i++) {
+            int pair = i / 2;
+            double x = (pair % pairsPerRow) * config.pairSpacingMeters + (i % 2) * config.pairDistanceMeters;
+            double y = (pair / pairsPerRow) * config.pairSpacingMeters;
+            SimulatedTransport transport = radio.addDevice(address(i), x, y);
+            Watch watch = new Watch(radio, transport, metrics, () -> matched[0]++);
+            watches.add(watch);
+            if (i % 2 == 0) {
+                knownPair = radio.getRandom().nextDouble() < config.knownPeerFraction;
+            } else if (knownPair) {
+                watches.get(i - 1).knowPeer(address(i));
+                watch.knowPeer(address(i - 1));
+            }
+            radio.schedule((long) (config.startSpreadMs * (pair / (double) pairs)), watch::start);
+        }
+
+        long lastMatchedAt = 0;
+        while (radio.now() <= config.timeLimitMs && matched[0] < config.watches && radio.runNext()) {
+            lastMatchedAt = radio.now();
+        }
+
+        Report report = new Report();
+        report.watches = config.watches;
+        report.metrics = metrics;
+        long[] latencies = new long[config.watches];
+        long[] knownPeer = new long[config.watches];
+        long[] scanned = new long[config.watches];
+        int knownPeerPaired = 0;
+        int scannedPaired = 0;
+        for (Watch watch : watches) {
+            report.beaconRejections += watch.mClient.getBeaconRejections();
+            if (watch.mKnownPeer) {
+                report.knownPeerWatches++;
+            }
+            if (!watch.isMatched()) {
+                continue;
+            }
+            long latency = watch.getPairingLatencyMs();
+            latencies[report.pairedWatches++] = latency;
+            if (watch.mKnownPeer) {
+                knownPeer[knownPeerPaired++] = latency;
+            } else {
+                scanned[scannedPaired++] = latency;
+            }
+        }
+        latencies = sorted(latencies, report.pairedWatches);
+        report.p50Ms = percentile(latencies, 0.50);
+        report.p90Ms = percentile(latencies, 0.90);
+        report.p99Ms = percentile(latencies, 0.99);
+        report.maxMs = latencies.length == 0 ? 0 : latencies[latencies.length - 1];
+        report.knownPeerP50Ms = percentile(sorted(knownPeer, knownPeerPaired), 0.50);
+        report.scanP50Ms = percentile(sorted(scanned, scannedPaired), 0.50);
+        report.simulatedMs = lastMatchedAt;
+        report.events = radio.getEventCount();
+        report.wallMs = (System.nanoTime() - wallStart) / 1_000_000;
+        return report;
+    }
+
+    private static long[] sorted(long[] values, int count) {
+        long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static String address(int index) {
+        return String.format(Locale.US, "02:00:00:%02X:%02X:%02X",
+                (index >> 16) & 0xFF, (index >> 8) & 0xFF, index & 0xFF);
+    }
+
+    public static void main(String[] args) {
+        Config config = new Config();
+        if (args.length > 0) {
+            config.watches = Integer.parseInt(args[0]);
+        }
+        Report report = run(config);
+        System.out.println(report);
+        report.metrics.dump(System.out::println);
+    }
+}
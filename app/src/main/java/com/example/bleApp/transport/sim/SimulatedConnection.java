@@ -0,0 +1,257 @@
+package com.example.bleApp.transport.sim;
+
+import com.example.bleApp.server.GattSchema;
+import com.example.bleApp.transport.BleConnection;
+import com.example.bleApp.transport.BleTransport;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+class SimulatedConnection implements BleConnection {
+
+    private static final int PHY_LE_1M = 1;
+    private static final int PHY_LE_2M = 2;
+    private static final int PHY_LE_CODED = 3;
+
+    private final SimulatedTransport mClient;
+    private final String mAddress;
+    private final Callback mCallback;
+    private final Set<UUID> mNotifying = new HashSet<>();
+
+    private SimulatedServer mServer;
+    // What discovery found, null until then
+    private GattSchema mSchema;
+    private boolean mConnected;
+    private boolean mClosed;
+    // Packets on a link arrive in order, each direction is held behind the one before
+    private long mLastToServer;
+    private long mLastToClient;
+
+    SimulatedConnection(SimulatedTransport client, String address, Callback callback) {
+        mClient = client;
+        mAddress = address;
+        mCallback = callback;
+    }
+
+    @Override
+    public String getAddress() {
+        return mAddress;
+    }
+
+    String getClientAddress() {
+        return mClient.getAddress();
+    }
+
+    Callback getCallback() {
+        return mCallback;
+    }
+
+    boolean isNotifying(UUID characteristicUuid) {
+        return mNotifying.contains(characteristicUuid);
+    }
+
+    void establish() {
+        if (mClosed) {
+            return;
+        }
+        SimulatedRadio radio = mClient.getRadio();
+        SimulatedTransport peer = radio.getDevice(mAddress);
+        SimulatedServer server = peer != null ? peer.getServer() : null;
+        if (server == null || !radio.inRange(mClient, peer)) {
+            mCallback.onConnectionStateChange(this, BleTransport.STATUS_FAILURE, false);
+            return;
+        }
+        mServer = server;
+        mConnected = true;
+        server.attach(this);
+        mCallback.onConnectionStateChange(this, BleTransport.STATUS_SUCCESS, true);
+    }
+
+    // Called by the server when it goes away, noticed by the client after the supervision timeout
+    void dropped() {
+        SimulatedRadio radio = mClient.getRadio();
+        radio.schedule(radio.supervisionTimeout(), () -> {
+            if (!mConnected || mClosed) {
+                return;
+            }
+            mConnected = false;
+            mServer = null;
+            mCallback.onConnectionStateChange(this, BleTransport.STATUS_SUCCESS, false);
+        });
+    }
+
+    // Link
+
+    private void toServer(Runnable task) {
+        SimulatedRadio radio = mClient.getRadio();
+        mLastToServer = Math.max(radio.now() + radio.linkDelay(), mLastToServer);
+        radio.schedule(mLastToServer - radio.now(), () -> {
+            if (mConnected) {
+                task.run();
+            }
+        });
+    }
+
+    void toClient(Runnable task) {
+        SimulatedRadio radio = mClient.getRadio();
+        mLastToClient = Math.max(radio.now() + radio.linkDelay(), mLastToClient);
+        radio.schedule(mLastToClient - radio.now(), () -> {
+            if (mConnected) {
+                task.run();
+            }
+        });
+    }
+
+    @Override
+    public boolean requestMtu(int mtu) {
+        if (!mConnected) {
+            return false;
+        }
+        SimulatedServer server = mServer;
+        int agreed = Math.min(mtu, mClient.getRadio().getConfig().mtu);
+        toServer(() -> {
+            server.onMtuChanged(this, agreed);
+            toClient(() -> mCallback.onMtuChanged(this, agreed, BleTransport.STATUS_SUCCESS));
+        });
+        return true;
+    }
+
+    @Override
+    public boolean requestConnectionPriority(int priority) {
+        return mConnected;
+    }
+
+    @Override
+    public void setPreferredPhy(int phyMask) {
+        if (!mConnected) {
+            return;
+        }
+        int phy = preferredPhy(phyMask);
+        toServer(() -> toClient(() -> mCallback.onPhyUpdate(this, phy, phy, BleTransport.STATUS_SUCCESS)));
+    }
+
+    // Fastest PHY in the mask, every simulated radio supports all of them
+    static int preferredPhy(int phyMask) {
+        if ((phyMask & 2) != 0) {
+            return PHY_LE_2M;
+        }
+        return (phyMask & 4) != 0 && (phyMask & 1) == 0 ? PHY_LE_CODED : PHY_LE_1M;
+    }
+
+    // Gatt
+
+    @Override
+    public boolean discoverServices() {
+        if (!mConnected) {
+            return false;
+        }
+        SimulatedServer server = mServer;
+        mClient.getRadio().schedule(mClient.getRadio().getConfig().discoveryMs, () -> {
+            if (mConnected) {
+                mSchema = server.getSchema();
+                int status = mSchema != null ? BleTransport.STATUS_SUCCESS : BleTransport.STATUS_FAILURE;
+                mCallback.onServicesDiscovered(this, status);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public int getProperties(UUID characteristicUuid) {
+        GattSchema.Characteristic characteristic = mSchema != null ? mSchema.find(characteristicUuid) : null;
+        return characteristic != null ? characteristic.getProperties() : -1;
+    }
+
+    @Override
+    public boolean hasDescriptor(UUID characteristicUuid, UUID descriptorUuid) {
+        GattSchema.Characteristic characteristic = mSchema != null ? mSchema.find(characteristicUuid) : null;
+        return characteristic != null && characteristic.hasDescriptor(descriptorUuid);
+    }
+
+    @Override
+    public boolean setCharacteristicNotification(UUID characteristicUuid, boolean enable) {
+        if (!mConnected) {
+            return false;
+        }
+        if (enable) {
+            mNotifying.add(characteristicUuid);
+        } else {
+            mNotifying.remove(characteristicUuid);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean writeCharacteristic(UUID characteristicUuid, byte[] value, boolean withResponse) {
+        if (!mConnected) {
+            return false;
+        }
+        SimulatedServer server = mServer;
+        byte[] copy = value.clone();
+        toServer(() -> server.deliverWrite(this, characteristicUuid, copy, withResponse));
+        if (!withResponse) {
+            // Done once the stack took it, the peer doesn't answer
+            mClient.getRadio().schedule(0, () -> {
+                if (mConnected) {
+                    mCallback.onCharacteristicWrite(this, characteristicUuid, BleTransport.STATUS_SUCCESS);
+                }
+            });
+        }
+        return true;
+    }
+
+    @Override
+    public boolean readCharacteristic(UUID characteristicUuid) {
+        if (!mConnected) {
+            return false;
+        }
+        SimulatedServer server = mServer;
+        toServer(() -> server.deliverRead(this, characteristicUuid));
+        return true;
+    }
+
+    @Override
+    public boolean writeDescriptor(UUID characteristicUuid, UUID descriptorUuid, byte[] value) {
+        if (!mConnected) {
+            return false;
+        }
+        SimulatedServer server = mServer;
+        byte[] copy = value.clone();
+        toServer(() -> server.deliverDescriptorWrite(this, characteristicUuid, descriptorUuid, copy));
+        return true;
+    }
+
+    @Override
+    public boolean readRemoteRssi() {
+        if (!mConnected) {
+            return false;
+        }
+        SimulatedRadio radio = mClient.getRadio();
+        if (radio.loseRssiRead()) {
+            return true;
+        }
+        radio.schedule(radio.linkDelay(), () -> {
+            SimulatedTransport peer = radio.getDevice(mAddress);
+            if (mConnected && peer != null) {
+                mCallback.onReadRemoteRssi(this, radio.rssiBetween(mClient, peer), BleTransport.STATUS_SUCCESS);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        if (!mConnected) {
+            return;
+        }
+        SimulatedServer server = mServer;
+        mConnected = false;
+        mServer = null;
+        mClient.getRadio().schedule(mClient.getRadio().linkDelay(), () -> server.detach(this));
+    }
+}
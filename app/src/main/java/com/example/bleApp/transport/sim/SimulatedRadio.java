@@ -0,0 +1,202 @@
+package com.example.bleApp.transport.sim;
+
+import com.example.bleApp.util.Clock;
+import com.example.bleApp.util.Scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * In-process air shared by simulated devices. Everything runs on the caller's thread
+ * against a virtual millisecond clock, so a run is deterministic for a given seed and
+ * hundreds of devices finish in a fraction of the simulated time.
+ */
+public class SimulatedRadio {
+
+    public static class Config {
+        public long seed = 1;
+        public int connectMs = 30;
+        public int discoveryMs = 60;
+        public int connectionIntervalMs = 15;
+        public int advertisingIntervalMs = 100;
+        public int txPowerAt1m = -59;
+        public double pathLossExponent = 2.0;
+        public double rssiNoiseDb = 2.0;
+        public int sensitivityDbm = -85;
+        // Largest MTU both ends of a link agree on
+        public int mtu = 247;
+        // Wall clock at virtual time zero, beacon epochs are derived from it
+        public long wallClockOriginMs = 1_700_000_000_000L;
+        // Share of RSSI reads the controller never answers
+        public double lostRssiReads = 0;
+        // Share of notifications that never reach the client
+        public double lostNotifications = 0;
+    }
+
+    public final class Timer implements Comparable<Timer> {
+        private final long mTime;
+        private final long mSeq;
+        private final Runnable mTask;
+        private boolean mCancelled;
+
+        Timer(long time, long seq, Runnable task) {
+            mTime = time;
+            mSeq = seq;
+            mTask = task;
+        }
+
+        public void cancel() {
+            mCancelled = true;
+        }
+
+        @Override
+        public int compareTo(Timer other) {
+            if (mTime != other.mTime) {
+                return Long.compare(mTime, other.mTime);
+            }
+            return Long.compare(mSeq, other.mSeq);
+        }
+    }
+
+    private final Config mConfig;
+    private final Random mRandom;
+    private final PriorityQueue<Timer> mQueue = new PriorityQueue<>();
+    private final Scheduler mScheduler = (task, delayMs) -> schedule(delayMs, task)::cancel;
+    private final Clock mClock = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return mNow;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mConfig.wallClockOriginMs + mNow;
+        }
+    };
+    private final Map<String, SimulatedTransport> mDevices = new LinkedHashMap<>();
+    private long mNow;
+    private long mSeq;
+    private long mEventCount;
+
+    public SimulatedRadio(Config config) {
+        mConfig = config;
+        mRandom = new Random(config.seed);
+    }
+
+    public SimulatedTransport addDevice(String address, double x, double y) {
+        SimulatedTransport device = new SimulatedTransport(this, address, x, y);
+        mDevices.put(address, device);
+        return device;
+    }
+
+    SimulatedTransport getDevice(String address) {
+        return mDevices.get(address);
+    }
+
+    Collection<SimulatedTransport> getDevices() {
+        return mDevices.values();
+    }
+
+    Random getRandom() {
+        return mRandom;
+    }
+
+    Config getConfig() {
+        return mConfig;
+    }
+
+    // Clock
+
+    public long now() {
+        return mNow;
+    }
+
+    // The virtual clock, for code written against Scheduler and Clock
+    public Scheduler getScheduler() {
+        return mScheduler;
+    }
+
+    public Clock getClock() {
+        return mClock;
+    }
+
+    public long getEventCount() {
+        return mEventCount;
+    }
+
+    public Timer schedule(long delayMs, Runnable task) {
+        Timer timer = new Timer(mNow + Math.max(0, delayMs), mSeq++, task);
+        mQueue.add(timer);
+        return timer;
+    }
+
+    public boolean runNext() {
+        Timer timer = mQueue.poll();
+        if (timer == null) {
+            return false;
+        }
+        mNow = timer.mTime;
+        if (!timer.mCancelled) {
+            mEventCount++;
+            timer.mTask.run();
+        }
+        return true;
+    }
+
+    public void runUntil(long timeMs) {
+        while (!mQueue.isEmpty() && mQueue.peek().mTime <= timeMs) {
+            runNext();
+        }
+        mNow = Math.max(mNow, timeMs);
+    }
+
+    // Air
+
+    long linkDelay() {
+        // Lands somewhere in the next connection event
+        int interval = mConfig.connectionIntervalMs;
+        return interval + mRandom.nextInt(interval);
+    }
+
+    long supervisionTimeout() {
+        return mConfig.connectionIntervalMs * 6L;
+    }
+
+    long advertisingDelay() {
+        return 1 + mRandom.nextInt(mConfig.advertisingIntervalMs);
+    }
+
+    int rssiBetween(SimulatedTransport a, SimulatedTransport b) {
+        double distance = Math.max(0.1, Math.hypot(a.getX() - b.getX(), a.getY() - b.getY()));
+        double pathLoss = 10 * mConfig.pathLossExponent * Math.log10(distance);
+        double noise = mRandom.nextGaussian() * mConfig.rssiNoiseDb;
+        return (int) Math.round(mConfig.txPowerAt1m - pathLoss + noise);
+    }
+
+    boolean loseRssiRead() {
+        return mConfig.lostRssiReads > 0 && mRandom.nextDouble() < mConfig.lostRssiReads;
+    }
+
+    boolean loseNotification() {
+        return mConfig.lostNotifications > 0 && mRandom.nextDouble() < mConfig.lostNotifications;
+    }
+
+    boolean inRange(SimulatedTransport a, SimulatedTransport b) {
+        return rssiBetween(a, b) >= mConfig.sensitivityDbm;
+    }
+
+    List<SimulatedTransport> advertisersInRange(SimulatedTransport scanner) {
+        List<SimulatedTransport> found = new ArrayList<>();
+        for (SimulatedTransport device : mDevices.values()) {
+            if (device != scanner && device.isAdvertising() && inRange(scanner, device)) {
+                found.add(device);
+            }
+        }
+        return found;
+    }
+}
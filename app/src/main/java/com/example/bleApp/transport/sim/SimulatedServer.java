@@ -0,0 +1,187 @@
+package com.example.bleApp.transport.sim;
+
+import com.example.bleApp.server.GattSchema;
+import com.example.bleApp.transport.BleConnection;
+import com.example.bleApp.transport.BleServer;
+import com.example.bleApp.transport.BleTransport;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+class SimulatedServer implements BleServer {
+
+    private final SimulatedTransport mOwner;
+    private final Callback mCallback;
+    private final Map<String, SimulatedConnection> mConnections = new HashMap<>();
+    private final Map<Integer, PendingRequest> mPendingRequests = new HashMap<>();
+    private GattSchema mSchema;
+    private int mNextRequestId;
+    private boolean mClosed;
+
+    private enum Kind {
+        WRITE,
+        READ,
+        WRITE_DESCRIPTOR
+    }
+
+    // A request the client waits on until the server answers it
+    private static class PendingRequest {
+        final Kind kind;
+        final SimulatedConnection connection;
+        final UUID characteristicUuid;
+        final UUID descriptorUuid;
+
+        PendingRequest(Kind kind, SimulatedConnection connection, UUID characteristicUuid, UUID descriptorUuid) {
+            this.kind = kind;
+            this.connection = connection;
+            this.characteristicUuid = characteristicUuid;
+            this.descriptorUuid = descriptorUuid;
+        }
+    }
+
+    SimulatedServer(SimulatedTransport owner, Callback callback) {
+        mOwner = owner;
+        mCallback = callback;
+    }
+
+    @Nullable
+    GattSchema getSchema() {
+        return mSchema;
+    }
+
+    void attach(SimulatedConnection connection) {
+        mConnections.put(connection.getClientAddress(), connection);
+        mCallback.onConnectionStateChange(connection.getClientAddress(), true);
+    }
+
+    void detach(SimulatedConnection connection) {
+        if (mConnections.remove(connection.getClientAddress(), connection)) {
+            mCallback.onConnectionStateChange(connection.getClientAddress(), false);
+        }
+    }
+
+    // Requests from a client, already carried across the link
+
+    void onMtuChanged(SimulatedConnection connection, int mtu) {
+        if (!mClosed) {
+            mCallback.onMtuChanged(connection.getClientAddress(), mtu);
+        }
+    }
+
+    void deliverWrite(SimulatedConnection connection, UUID characteristicUuid, byte[] value, boolean responseNeeded) {
+        if (mClosed) {
+            return;
+        }
+        int requestId = mNextRequestId++;
+        if (responseNeeded) {
+            mPendingRequests.put(requestId, new PendingRequest(Kind.WRITE, connection, characteristicUuid, null));
+        }
+        mCallback.onCharacteristicWriteRequest(connection.getClientAddress(), requestId, characteristicUuid,
+                false, responseNeeded, 0, value);
+    }
+
+    void deliverRead(SimulatedConnection connection, UUID characteristicUuid) {
+        if (mClosed) {
+            return;
+        }
+        int requestId = mNextRequestId++;
+        mPendingRequests.put(requestId, new PendingRequest(Kind.READ, connection, characteristicUuid, null));
+        mCallback.onCharacteristicReadRequest(connection.getClientAddress(), requestId, 0, characteristicUuid);
+    }
+
+    void deliverDescriptorWrite(SimulatedConnection connection, UUID characteristicUuid, UUID descriptorUuid,
+                                byte[] value) {
+        if (mClosed) {
+            return;
+        }
+        int requestId = mNextRequestId++;
+        mPendingRequests.put(requestId,
+                new PendingRequest(Kind.WRITE_DESCRIPTOR, connection, characteristicUuid, descriptorUuid));
+        mCallback.onDescriptorWriteRequest(connection.getClientAddress(), requestId, characteristicUuid,
+                descriptorUuid, false, true, 0, value);
+    }
+
+    // BleServer
+
+    @Override
+    public void addServices(GattSchema schema) {
+        mSchema = schema;
+    }
+
+    @Override
+    public boolean sendResponse(String address, int requestId, int status, int offset, @Nullable byte[] value) {
+        PendingRequest pending = mPendingRequests.remove(requestId);
+        if (pending == null || mClosed) {
+            return false;
+        }
+        SimulatedConnection connection = pending.connection;
+        BleConnection.Callback callback = connection.getCallback();
+        switch (pending.kind) {
+            case WRITE:
+                connection.toClient(() -> callback.onCharacteristicWrite(connection, pending.characteristicUuid, status));
+                break;
+            case READ:
+                byte[] copy = value != null ? value.clone() : null;
+                connection.toClient(() -> callback.onCharacteristicRead(connection, pending.characteristicUuid, copy,
+                        status));
+                break;
+            default:
+                connection.toClient(() -> callback.onDescriptorWrite(connection, pending.characteristicUuid,
+                        pending.descriptorUuid, status));
+                break;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean notifyCharacteristicChanged(String address, UUID characteristicUuid, byte[] value) {
+        SimulatedConnection connection = mConnections.get(address);
+        if (connection == null || mClosed) {
+            return false;
+        }
+        byte[] copy = value.clone();
+        boolean lost = mOwner.getRadio().loseNotification();
+        connection.toClient(() -> {
+            if (!lost && connection.isNotifying(characteristicUuid)) {
+                connection.getCallback().onCharacteristicChanged(connection, characteristicUuid, copy);
+            }
+            if (!mClosed) {
+                mCallback.onNotificationSent(address, BleTransport.STATUS_SUCCESS);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public void setPreferredPhy(String address, int phyMask) {
+        SimulatedConnection connection = mConnections.get(address);
+        if (connection == null || mClosed) {
+            return;
+        }
+        int phy = SimulatedConnection.preferredPhy(phyMask);
+        SimulatedRadio radio = mOwner.getRadio();
+        radio.schedule(radio.linkDelay(), () -> {
+            if (!mClosed) {
+                mCallback.onPhyUpdate(address, phy, phy, BleTransport.STATUS_SUCCESS);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        mOwner.serverClosed(this);
+        for (SimulatedConnection connection : new ArrayList<>(mConnections.values())) {
+            connection.dropped();
+        }
+        mConnections.clear();
+        mPendingRequests.clear();
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.bleApp.transport.sim;
+
+import com.example.bleApp.transport.AdvertiseListener;
+import com.example.bleApp.transport.BleConnection;
+import com.example.bleApp.transport.BleServer;
+import com.example.bleApp.transport.BleTransport;
+import com.example.bleApp.transport.ScanListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class SimulatedTransport implements BleTransport {
+
+    private final SimulatedRadio mRadio;
+    private final String mAddress;
+    private final double mX;
+    private final double mY;
+
+    private UUID mAdvertisedService;
+    private int mManufacturerId;
+    private byte[] mManufacturerData;
+    private ScanListener mScanListener;
+    private final List<SimulatedRadio.Timer> mScanTimers = new ArrayList<>();
+    private SimulatedServer mServer;
+
+    SimulatedTransport(SimulatedRadio radio, String address, double x, double y) {
+        mRadio = radio;
+        mAddress = address;
+        mX = x;
+        mY = y;
+    }
+
+    @Override
+    public String getAddress() {
+        return mAddress;
+    }
+
+    double getX() {
+        return mX;
+    }
+
+    double getY() {
+        return mY;
+    }
+
+    SimulatedRadio getRadio() {
+        return mRadio;
+    }
+
+    // Scanning
+
+    @Override
+    public void startScan(UUID serviceUuid, int manufacturerId, int scanMode, ScanListener listener) {
+        stopScan();
+        mScanListener = listener;
+        // One result per advertiser in range, like CALLBACK_TYPE_FIRST_MATCH
+        for (SimulatedTransport advertiser : mRadio.advertisersInRange(this)) {
+            if (!serviceUuid.equals(advertiser.mAdvertisedService)) {
+                continue;
+            }
+            mScanTimers.add(mRadio.schedule(mRadio.advertisingDelay(), () -> {
+                // The advertisement on air when the result comes in, the beacon may have changed since
+                if (mScanListener == listener && serviceUuid.equals(advertiser.mAdvertisedService)) {
+                    listener.onScanResult(advertiser.getAddress(), mRadio.rssiBetween(this, advertiser),
+                            advertiser.getManufacturerData(manufacturerId));
+                }
+            }));
+        }
+    }
+
+    @Override
+    public void stopScan() {
+        mScanListener = null;
+        for (SimulatedRadio.Timer timer : mScanTimers) {
+            timer.cancel();
+        }
+        mScanTimers.clear();
+    }
+
+    // Advertising
+
+    @Override
+    public void startAdvertising(UUID serviceUuid, int manufacturerId, byte[] manufacturerData,
+                                 AdvertiseListener listener) {
+        mAdvertisedService = serviceUuid;
+        mManufacturerId = manufacturerId;
+        mManufacturerData = manufacturerData.clone();
+        mRadio.schedule(0, () -> {
+            if (mAdvertisedService != null) {
+                listener.onAdvertiseStarted();
+            }
+        });
+    }
+
+    @Override
+    public void stopAdvertising() {
+        mAdvertisedService = null;
+        mManufacturerData = null;
+    }
+
+    private byte[] getManufacturerData(int manufacturerId) {
+        return manufacturerId == mManufacturerId && mManufacturerData != null ? mManufacturerData.clone() : null;
+    }
+
+    boolean isAdvertising() {
+        return mAdvertisedService != null;
+    }
+
+    // Gatt
+
+    @Override
+    public BleConnection connect(String address, BleConnection.Callback callback) {
+        SimulatedConnection connection = new SimulatedConnection(this, address, callback);
+        mRadio.schedule(mRadio.getConfig().connectMs, connection::establish);
+        return connection;
+    }
+
+    @Override
+    public BleServer openServer(BleServer.Callback callback) {
+        mServer = new SimulatedServer(this, callback);
+        return mServer;
+    }
+
+    SimulatedServer getServer() {
+        return mServer;
+    }
+
+    void serverClosed(SimulatedServer server) {
+        if (mServer == server) {
+            mServer = null;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.bleApp.ui;
+
+/**
+ * What the pairing screen shows. Services publish these instead of raw strings;
+ * the activity decides how each one is drawn.
+ */
+public enum PairingStatus {
+
+    CLIENT_READY("CLIENT IS READY TO BE FRIENDS!", false),
+    CLIENT_REJECTED("DEVICE IS NOT XEE-KIDS WATCH!", false),
+    CLIENT_PAIRED("CLIENT IS FRIEND!", true),
+    SERVER_READY("SERVER IS READY TO BE FRIENDS!", false),
+    SERVER_REJECTED("Device sent message is not Xee Kids Watch!", false),
+    SERVER_PAIRED("SERVER IS FRIEND!", true);
+
+    public final String text;
+    // Pairing is done, nothing published later replaces it
+    public final boolean paired;
+
+    PairingStatus(String text, boolean paired) {
+        this.text = text;
+        this.paired = paired;
+    }
+}
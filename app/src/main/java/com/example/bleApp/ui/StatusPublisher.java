@@ -0,0 +1,108 @@
+package com.example.bleApp.ui;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands the pairing status from BLE threads to the screen. publish() never blocks: it
+ * replaces the latest status and schedules at most one frame callback, which renders
+ * whatever is latest by then. A burst of failures between two frames costs one
+ * setText, and intermediate states are never drawn. Once a paired status is published
+ * it sticks until reset() starts the next pairing attempt.
+ */
+public final class StatusPublisher {
+
+    public interface Renderer {
+        // Main thread
+        void render(PairingStatus status);
+    }
+
+    private static final StatusPublisher sInstance = new StatusPublisher();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicReference<PairingStatus> mLatest = new AtomicReference<>();
+    private final AtomicBoolean mFrameScheduled = new AtomicBoolean();
+    private final AtomicLong mPublished = new AtomicLong();
+    private final AtomicLong mRendered = new AtomicLong();
+    private final Choreographer.FrameCallback mFrameCallback = frameTimeNanos -> renderLatest();
+    private final Runnable mScheduleFrame = () -> Choreographer.getInstance().postFrameCallback(mFrameCallback);
+
+    // Main thread only
+    private Renderer mRenderer;
+    private PairingStatus mShown;
+
+    private StatusPublisher() {
+    }
+
+    public static StatusPublisher get() {
+        return sInstance;
+    }
+
+    // Any thread; false if a paired status already took its place
+    public boolean publish(PairingStatus status) {
+        PairingStatus current;
+        do {
+            current = mLatest.get();
+            if (current != null && current.paired) {
+                return false;
+            }
+        } while (!mLatest.compareAndSet(current, status));
+        mPublished.incrementAndGet();
+        if (mFrameScheduled.compareAndSet(false, true)) {
+            // The Choreographer is per looper, so the callback is posted from the main thread
+            mMainHandler.post(mScheduleFrame);
+        }
+        return true;
+    }
+
+    // Any thread; a new pairing attempt starts, a paired status no longer holds
+    public void reset() {
+        mLatest.set(null);
+    }
+
+    public PairingStatus getLatest() {
+        return mLatest.get();
+    }
+
+    // Main thread; shows the latest status right away so a recreated screen is up to date
+    public void attach(Renderer renderer) {
+        mRenderer = renderer;
+        mShown = null;
+        renderLatest();
+    }
+
+    public void detach(Renderer renderer) {
+        if (mRenderer == renderer) {
+            mRenderer = null;
+        }
+    }
+
+    private void renderLatest() {
+        mFrameScheduled.set(false);
+        PairingStatus status = mLatest.get();
+        if (mRenderer == null || status == null || status == mShown) {
+            return;
+        }
+        mShown = status;
+        mRendered.incrementAndGet();
+        mRenderer.render(status);
+    }
+
+    public long getPublishedCount() {
+        return mPublished.get();
+    }
+
+    public long getRenderedCount() {
+        return mRendered.get();
+    }
+
+    @Override
+    public String toString() {
+        return "status published " + mPublished.get() + " rendered " + mRendered.get();
+    }
+}
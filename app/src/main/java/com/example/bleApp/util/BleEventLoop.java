@@ -0,0 +1,73 @@
+package com.example.bleApp.util;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * The one thread that owns all client and server BLE state. Binder callbacks post onto
+ * it instead of touching service fields directly, so that state needs no locks and
+ * BLE work never runs on the UI thread. Lives as long as the process.
+ */
+public final class BleEventLoop implements Executor {
+
+    private static volatile BleEventLoop sInstance;
+
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private final HandlerScheduler mScheduler;
+
+    private BleEventLoop() {
+        mThread = new HandlerThread("BleEventLoop");
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+        mScheduler = new HandlerScheduler(mHandler);
+    }
+
+    public static BleEventLoop get() {
+        BleEventLoop instance = sInstance;
+        if (instance == null) {
+            synchronized (BleEventLoop.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    instance = new BleEventLoop();
+                    sInstance = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    public Looper getLooper() {
+        return mThread.getLooper();
+    }
+
+    public Handler getHandler() {
+        return mHandler;
+    }
+
+    public Scheduler getScheduler() {
+        return mScheduler;
+    }
+
+    public boolean isCurrentThread() {
+        return Looper.myLooper() == mThread.getLooper();
+    }
+
+    // Runs task inline when already on the loop, posts it otherwise
+    @Override
+    public void execute(Runnable task) {
+        if (isCurrentThread()) {
+            task.run();
+        } else {
+            mHandler.post(task);
+        }
+    }
+
+    // Handler over the loop for callbacks that are hot enough to want pooled Messages
+    public Handler newHandler(Handler.Callback callback) {
+        return new Handler(mThread.getLooper(), callback);
+    }
+}
@@ -1,9 +1,9 @@
 package com.example.bleApp.util;
 
-import static com.example.bleApp.Constants.CHARACTERISTIC_ECHO_STRING;
-import static com.example.bleApp.Constants.CHARACTERISTIC_TIME_STRING;
+import static com.example.bleApp.Constants.CHARACTERISTIC_ECHO_UUID;
+import static com.example.bleApp.Constants.CHARACTERISTIC_TIME_UUID;
 import static com.example.bleApp.Constants.CLIENT_CONFIGURATION_DESCRIPTOR_SHORT_ID;
-import static com.example.bleApp.Constants.SERVICE_STRING;
+import static com.example.bleApp.Constants.SERVICE_UUID;
 
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
@@ -41,17 +41,36 @@ public class BluetoothUtils {
 
     @Nullable
     public static BluetoothGattCharacteristic findEchoCharacteristic(BluetoothGatt bluetoothGatt) {
-        return findCharacteristic(bluetoothGatt, CHARACTERISTIC_ECHO_STRING);
+        return findEchoCharacteristic(bluetoothGatt.getServices());
+    }
+
+    @Nullable
+    public static BluetoothGattCharacteristic findEchoCharacteristic(List<BluetoothGattService> serviceList) {
+        return findCharacteristic(serviceList, CHARACTERISTIC_ECHO_UUID);
     }
 
     @Nullable
     public static BluetoothGattCharacteristic findTimeCharacteristic(BluetoothGatt bluetoothGatt) {
-        return findCharacteristic(bluetoothGatt, CHARACTERISTIC_TIME_STRING);
+        return findTimeCharacteristic(bluetoothGatt.getServices());
     }
 
     @Nullable
-    private static BluetoothGattCharacteristic findCharacteristic(BluetoothGatt bluetoothGatt, String uuidString) {
-        List<BluetoothGattService> serviceList = bluetoothGatt.getServices();
+    public static BluetoothGattCharacteristic findTimeCharacteristic(List<BluetoothGattService> serviceList) {
+        return findCharacteristic(serviceList, CHARACTERISTIC_TIME_UUID);
+    }
+
+    @Nullable
+    public static BluetoothGattCharacteristic findEchoCharacteristic(GattIndex index) {
+        return index.getCharacteristic(SERVICE_UUID, CHARACTERISTIC_ECHO_UUID);
+    }
+
+    @Nullable
+    public static BluetoothGattCharacteristic findTimeCharacteristic(GattIndex index) {
+        return index.getCharacteristic(SERVICE_UUID, CHARACTERISTIC_TIME_UUID);
+    }
+
+    @Nullable
+    private static BluetoothGattCharacteristic findCharacteristic(List<BluetoothGattService> serviceList, UUID uuid) {
         BluetoothGattService service = BluetoothUtils.findService(serviceList);
         if (service == null) {
             return null;
@@ -59,7 +78,7 @@ public class BluetoothUtils {
 
         List<BluetoothGattCharacteristic> characteristicList = service.getCharacteristics();
         for (BluetoothGattCharacteristic characteristic : characteristicList) {
-            if (characteristicMatches(characteristic, uuidString)) {
+            if (characteristicMatches(characteristic, uuid)) {
                 return characteristic;
             }
         }
@@ -68,19 +87,18 @@ public class BluetoothUtils {
     }
 
     public static boolean isEchoCharacteristic(BluetoothGattCharacteristic characteristic) {
-        return characteristicMatches(characteristic, CHARACTERISTIC_ECHO_STRING);
+        return characteristicMatches(characteristic, CHARACTERISTIC_ECHO_UUID);
     }
 
     public static boolean isTimeCharacteristic(BluetoothGattCharacteristic characteristic) {
-        return characteristicMatches(characteristic, CHARACTERISTIC_TIME_STRING);
+        return characteristicMatches(characteristic, CHARACTERISTIC_TIME_UUID);
     }
 
-    private static boolean characteristicMatches(BluetoothGattCharacteristic characteristic, String uuidString) {
+    private static boolean characteristicMatches(BluetoothGattCharacteristic characteristic, UUID uuid) {
         if (characteristic == null) {
             return false;
         }
-        UUID uuid = characteristic.getUuid();
-        return uuidMatches(uuid.toString(), uuidString);
+        return uuid.equals(characteristic.getUuid());
     }
 
     private static boolean isMatchingCharacteristic(BluetoothGattCharacteristic characteristic) {
@@ -88,11 +106,7 @@ public class BluetoothUtils {
             return false;
         }
         UUID uuid = characteristic.getUuid();
-        return matchesCharacteristicUuidString(uuid.toString());
-    }
-
-    private static boolean matchesCharacteristicUuidString(String characteristicIdString) {
-        return uuidMatches(characteristicIdString, CHARACTERISTIC_ECHO_STRING, CHARACTERISTIC_TIME_STRING);
+        return CHARACTERISTIC_ECHO_UUID.equals(uuid) || CHARACTERISTIC_TIME_UUID.equals(uuid);
     }
 
     public static boolean requiresResponse(BluetoothGattCharacteristic characteristic) {
@@ -122,40 +136,26 @@ public class BluetoothUtils {
         if (descriptor == null) {
             return false;
         }
-        UUID uuid = descriptor.getUuid();
-        String uuidSubstring = uuid.toString().substring(4, 8);
-        return uuidMatches(uuidSubstring, CLIENT_CONFIGURATION_DESCRIPTOR_SHORT_ID);
+        return shortId(descriptor.getUuid()) == CLIENT_CONFIGURATION_DESCRIPTOR_SHORT_ID;
     }
 
     // Service
 
-    private static boolean matchesServiceUuidString(String serviceIdString) {
-        return uuidMatches(serviceIdString, SERVICE_STRING);
-    }
-
     @Nullable
     private static BluetoothGattService findService(List<BluetoothGattService> serviceList) {
         for (BluetoothGattService service : serviceList) {
-            String serviceIdString = service.getUuid()
-                    .toString();
-            if (matchesServiceUuidString(serviceIdString)) {
+            if (SERVICE_UUID.equals(service.getUuid())) {
                 return service;
             }
         }
         return null;
     }
 
-    // String matching
+    // UUID matching
 
-    // If manually filtering, substring to match:
+    // 16-bit short form, the XXXX in:
     // 0000XXXX-0000-0000-0000-000000000000
-    private static boolean uuidMatches(String uuidString, String... matches) {
-        for (String match : matches) {
-            if (uuidString.equalsIgnoreCase(match)) {
-                return true;
-            }
-        }
-
-        return false;
+    public static int shortId(UUID uuid) {
+        return (int) (uuid.getMostSignificantBits() >>> 32) & 0xFFFF;
     }
 }
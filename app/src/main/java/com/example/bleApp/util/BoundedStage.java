@@ -0,0 +1,102 @@
+package com.example.bleApp.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One stage of a pipeline: a bounded number of tasks waiting on a target executor.
+ * Producers on other threads reserve a slot first, so they can answer a request
+ * before its work is queued and still refuse it when the stage is full. Counters are
+ * kept for back-pressure: how deep the stage got and how much it turned away.
+ */
+public final class BoundedStage implements Executor {
+
+    private final String mName;
+    private final Executor mTarget;
+    private final int mCapacity;
+    private final AtomicInteger mDepth = new AtomicInteger();
+    private final AtomicInteger mMaxDepth = new AtomicInteger();
+    private final AtomicLong mSubmitted = new AtomicLong();
+    private final AtomicLong mRejected = new AtomicLong();
+
+    public BoundedStage(String name, Executor target, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        mName = name;
+        mTarget = target;
+        mCapacity = capacity;
+    }
+
+    // Takes a slot for a later submit(), false (and counted) if the stage is full
+    public boolean tryReserve() {
+        while (true) {
+            int depth = mDepth.get();
+            if (depth >= mCapacity) {
+                mRejected.incrementAndGet();
+                return false;
+            }
+            if (mDepth.compareAndSet(depth, depth + 1)) {
+                int max = mMaxDepth.get();
+                while (depth + 1 > max && !mMaxDepth.compareAndSet(max, depth + 1)) {
+                    max = mMaxDepth.get();
+                }
+                return true;
+            }
+        }
+    }
+
+    // Queues a task into a slot taken by tryReserve()
+    public void submit(Runnable task) {
+        mSubmitted.incrementAndGet();
+        mTarget.execute(() -> {
+            mDepth.decrementAndGet();
+            task.run();
+        });
+    }
+
+    public boolean offer(Runnable task) {
+        if (!tryReserve()) {
+            return false;
+        }
+        submit(task);
+        return true;
+    }
+
+    // Drops the task when the stage is full; use offer() to find out
+    @Override
+    public void execute(Runnable task) {
+        offer(task);
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public int getDepth() {
+        return mDepth.get();
+    }
+
+    public int getMaxDepth() {
+        return mMaxDepth.get();
+    }
+
+    public long getSubmittedCount() {
+        return mSubmitted.get();
+    }
+
+    public long getRejectedCount() {
+        return mRejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return mName + " depth " + mDepth.get() + "/" + mCapacity + " max " + mMaxDepth.get()
+                + " submitted " + mSubmitted.get() + " rejected " + mRejected.get();
+    }
+}
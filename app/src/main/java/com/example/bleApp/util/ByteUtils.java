@@ -1,5 +1,7 @@
 package com.example.bleApp.util;
 
+import java.nio.ByteBuffer;
+
 public class ByteUtils {
 
     public static byte[] reverse(byte[] value) {
@@ -10,4 +12,38 @@ public class ByteUtils {
         }
         return reversed;
     }
+
+    public static void reverseInPlace(byte[] value) {
+        reverseInPlace(value, 0, value.length);
+    }
+
+    // Reverses value[from, to) in place
+    public static void reverseInPlace(byte[] value, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            byte b = value[i];
+            value[i] = value[j];
+            value[j] = b;
+        }
+    }
+
+    // Reverses the remaining bytes in place without moving the buffer's position
+    public static void reverseInPlace(ByteBuffer value) {
+        if (value.hasArray()) {
+            int base = value.arrayOffset();
+            reverseInPlace(value.array(), base + value.position(), base + value.limit());
+            return;
+        }
+        for (int i = value.position(), j = value.limit() - 1; i < j; i++, j--) {
+            byte b = value.get(i);
+            value.put(i, value.get(j));
+            value.put(j, b);
+        }
+    }
+
+    // Copies value[from, to) reversed into dst at dstOffset
+    public static void reverse(byte[] value, int from, int to, byte[] dst, int dstOffset) {
+        for (int i = to - 1; i >= from; i--) {
+            dst[dstOffset++] = value[i];
+        }
+    }
 }
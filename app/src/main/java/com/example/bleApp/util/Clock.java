@@ -0,0 +1,14 @@
+package com.example.bleApp.util;
+
+/**
+ * Time sources, so the pairing code reads SystemClock on the device and the simulated
+ * radio's clock on the JVM.
+ */
+public interface Clock {
+
+    // Monotonic, for timeouts and phase latencies
+    long elapsedRealtime();
+
+    // Wall clock, for beacon epochs and pairing dates
+    long currentTimeMillis();
+}
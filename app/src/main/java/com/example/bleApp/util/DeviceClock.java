@@ -0,0 +1,28 @@
+package com.example.bleApp.util;
+
+import android.os.SystemClock;
+
+/**
+ * Clock of the device: SystemClock for elapsed time, System for the wall clock.
+ */
+public final class DeviceClock implements Clock {
+
+    private static final DeviceClock sInstance = new DeviceClock();
+
+    private DeviceClock() {
+    }
+
+    public static DeviceClock get() {
+        return sInstance;
+    }
+
+    @Override
+    public long elapsedRealtime() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
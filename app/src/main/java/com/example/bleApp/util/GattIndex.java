@@ -0,0 +1,83 @@
+package com.example.bleApp.util;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Lookup table over the services of one connection, keyed on the binary UUID.
+ * Build it once in onServicesDiscovered and drop it on disconnect; lookups are
+ * then hash hits with no String conversion.
+ */
+public class GattIndex {
+
+    private final Map<UUID, BluetoothGattService> mServices = new HashMap<>();
+    private final Map<UUID, Map<UUID, BluetoothGattCharacteristic>> mCharacteristics = new HashMap<>();
+    // Across services, for peers whose characteristic UUIDs are unique
+    private final Map<UUID, BluetoothGattCharacteristic> mByUuid = new HashMap<>();
+    private final Map<BluetoothGattCharacteristic, BluetoothGattDescriptor> mClientConfigurationDescriptors =
+            new IdentityHashMap<>();
+
+    public static GattIndex build(List<BluetoothGattService> serviceList) {
+        GattIndex index = new GattIndex();
+        for (BluetoothGattService service : serviceList) {
+            index.add(service);
+        }
+        return index;
+    }
+
+    private void add(BluetoothGattService service) {
+        UUID serviceUuid = service.getUuid();
+        if (mServices.containsKey(serviceUuid)) {
+            // Keep the first instance, like BluetoothGatt.getService
+            return;
+        }
+        mServices.put(serviceUuid, service);
+
+        Map<UUID, BluetoothGattCharacteristic> characteristics = new HashMap<>();
+        for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+            if (!characteristics.containsKey(characteristic.getUuid())) {
+                characteristics.put(characteristic.getUuid(), characteristic);
+            }
+            if (!mByUuid.containsKey(characteristic.getUuid())) {
+                mByUuid.put(characteristic.getUuid(), characteristic);
+            }
+            BluetoothGattDescriptor descriptor =
+                    BluetoothUtils.findClientConfigurationDescriptor(characteristic.getDescriptors());
+            if (descriptor != null) {
+                mClientConfigurationDescriptors.put(characteristic, descriptor);
+            }
+        }
+        mCharacteristics.put(serviceUuid, characteristics);
+    }
+
+    @Nullable
+    public BluetoothGattService getService(UUID serviceUuid) {
+        return mServices.get(serviceUuid);
+    }
+
+    @Nullable
+    public BluetoothGattCharacteristic getCharacteristic(UUID serviceUuid, UUID characteristicUuid) {
+        Map<UUID, BluetoothGattCharacteristic> characteristics = mCharacteristics.get(serviceUuid);
+        return characteristics == null ? null : characteristics.get(characteristicUuid);
+    }
+
+    // First match in discovery order
+    @Nullable
+    public BluetoothGattCharacteristic getCharacteristic(UUID characteristicUuid) {
+        return mByUuid.get(characteristicUuid);
+    }
+
+    @Nullable
+    public BluetoothGattDescriptor getClientConfigurationDescriptor(BluetoothGattCharacteristic characteristic) {
+        return mClientConfigurationDescriptors.get(characteristic);
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.bleApp.util;
+
+import android.os.Handler;
+
+public class HandlerScheduler implements Scheduler {
+
+    private final Handler mHandler;
+
+    public HandlerScheduler(Handler handler) {
+        mHandler = handler;
+    }
+
+    public Handler getHandler() {
+        return mHandler;
+    }
+
+    @Override
+    public Cancellable schedule(Runnable task, long delayMs) {
+        // Wrap so removeCallbacks only removes this posting
+        Runnable posted = task::run;
+        mHandler.postDelayed(posted, delayMs);
+        return () -> mHandler.removeCallbacks(posted);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.bleApp.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Lookup-table hex encoding and decoding into caller supplied buffers, so packet
+ * dumps don't allocate per byte. Encoding is lower case, matching
+ * the existing packet dumps; decoding takes either case.
+ */
+public final class HexCodec {
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+    // Two chars per byte value, high digit first
+    private static final char[] PAIRS = new char[256 * 2];
+    // Digit value per ASCII char, -1 for anything else
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            PAIRS[i * 2] = DIGITS[i >>> 4];
+            PAIRS[i * 2 + 1] = DIGITS[i & 0x0F];
+        }
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            VALUES['A' + i] = (byte) (10 + i);
+            VALUES['a' + i] = (byte) (10 + i);
+        }
+    }
+
+    private HexCodec() {
+    }
+
+    public static int encodedLength(int byteCount) {
+        return byteCount * 2;
+    }
+
+    // Writes 2 * length chars into dst at dstOffset, returns the offset after them
+    public static int encode(byte[] src, int offset, int length, char[] dst, int dstOffset) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int pair = (src[i] & 0xFF) * 2;
+            dst[dstOffset++] = PAIRS[pair];
+            dst[dstOffset++] = PAIRS[pair + 1];
+        }
+        return dstOffset;
+    }
+
+    // Encodes the remaining bytes without moving the buffer's position
+    public static int encode(ByteBuffer src, char[] dst, int dstOffset) {
+        for (int i = src.position(); i < src.limit(); i++) {
+            int pair = (src.get(i) & 0xFF) * 2;
+            dst[dstOffset++] = PAIRS[pair];
+            dst[dstOffset++] = PAIRS[pair + 1];
+        }
+        return dstOffset;
+    }
+
+    public static String encode(byte[] src) {
+        char[] chars = new char[encodedLength(src.length)];
+        encode(src, 0, src.length, chars, 0);
+        return new String(chars);
+    }
+
+    public static void append(Appendable out, byte b) throws IOException {
+        int pair = (b & 0xFF) * 2;
+        out.append(PAIRS[pair]).append(PAIRS[pair + 1]);
+    }
+
+    public static void append(StringBuilder out, byte b) {
+        int pair = (b & 0xFF) * 2;
+        out.append(PAIRS[pair]).append(PAIRS[pair + 1]);
+    }
+
+    public static void append(Appendable out, byte[] src, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            append(out, src[i]);
+        }
+    }
+
+    public static void append(StringBuilder out, byte[] src, int offset, int length) {
+        out.ensureCapacity(out.length() + encodedLength(length));
+        for (int i = offset; i < offset + length; i++) {
+            append(out, src[i]);
+        }
+    }
+
+    // Decodes hex.length() / 2 bytes into dst at dstOffset, returns the offset after them
+    public static int decode(CharSequence hex, byte[] dst, int dstOffset) {
+        int length = hex.length();
+        if ((length & 1) != 0) {
+            throw new IllegalArgumentException("Odd number of hex digits: " + length);
+        }
+        for (int i = 0; i < length; i += 2) {
+            dst[dstOffset++] = (byte) ((value(hex, i) << 4) | value(hex, i + 1));
+        }
+        return dstOffset;
+    }
+
+    public static void decode(CharSequence hex, ByteBuffer dst) {
+        int length = hex.length();
+        if ((length & 1) != 0) {
+            throw new IllegalArgumentException("Odd number of hex digits: " + length);
+        }
+        for (int i = 0; i < length; i += 2) {
+            dst.put((byte) ((value(hex, i) << 4) | value(hex, i + 1)));
+        }
+    }
+
+    public static byte[] decode(CharSequence hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        decode(hex, bytes, 0);
+        return bytes;
+    }
+
+    private static int value(CharSequence hex, int index) {
+        char c = hex.charAt(index);
+        int value = c < 128 ? VALUES[c] : -1;
+        if (value < 0) {
+            throw new IllegalArgumentException("Not a hex digit at " + index + ": " + c);
+        }
+        return value;
+    }
+}
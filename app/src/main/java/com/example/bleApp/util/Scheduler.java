@@ -0,0 +1,14 @@
+package com.example.bleApp.util;
+
+/**
+ * Delayed task execution, so timing logic can run on a Handler on the device and on
+ * an executor or the simulated clock on the JVM.
+ */
+public interface Scheduler {
+
+    interface Cancellable {
+        void cancel();
+    }
+
+    Cancellable schedule(Runnable task, long delayMs);
+}
@@ -1,8 +1,7 @@
 package com.example.bleApp.util;
 
-import android.util.Log;
-import org.jetbrains.annotations.Nullable;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 /**
  * This class is meant to be a replacement for TextUtils to allow unit testing
@@ -10,53 +9,51 @@ import java.io.UnsupportedEncodingException;
  */
 public class StringUtils {
 
-    private static final String TAG = "StringUtils";
-
-    private static String byteToHex(byte b) {
-        char char1 = Character.forDigit((b & 0xF0) >> 4, 16);
-        char char2 = Character.forDigit((b & 0x0F), 16);
-
-        return String.format("0x%1$s%2$s", char1, char2);
-    }
-
     public static String byteArrayInHexFormat(byte[] byteArray) {
         if (byteArray == null) {
             return null;
         }
 
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder.append("{ ");
-        for (int i = 0; i < byteArray.length; i++) {
-            if (i > 0) {
-                stringBuilder.append(", ");
+        StringBuilder stringBuilder = new StringBuilder(hexFormatLength(byteArray.length));
+        appendHexFormat(stringBuilder, byteArray, 0, byteArray.length);
+        return stringBuilder.toString();
+    }
+
+    // Same "{ 0x0a, 0xff }" format, appended to a caller supplied builder
+    public static void appendHexFormat(StringBuilder out, byte[] bytes, int offset, int length) {
+        out.ensureCapacity(out.length() + hexFormatLength(length));
+        out.append("{ ");
+        for (int i = offset; i < offset + length; i++) {
+            if (i > offset) {
+                out.append(", ");
             }
-            String hexString = byteToHex(byteArray[i]);
-            stringBuilder.append(hexString);
+            out.append("0x");
+            HexCodec.append(out, bytes[i]);
         }
-        stringBuilder.append(" }");
-
-        return stringBuilder.toString();
+        out.append(" }");
     }
 
-    public static byte[] bytesFromString(String string) {
-        byte[] stringBytes = new byte[0];
-        try {
-            stringBytes = string.getBytes("UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            Log.e(TAG, "Failed to convert message string to byte array");
+    public static void appendHexFormat(Appendable out, byte[] bytes, int offset, int length) throws IOException {
+        out.append("{ ");
+        for (int i = offset; i < offset + length; i++) {
+            if (i > offset) {
+                out.append(", ");
+            }
+            out.append("0x");
+            HexCodec.append(out, bytes[i]);
         }
+        out.append(" }");
+    }
 
-        return stringBytes;
+    public static int hexFormatLength(int byteCount) {
+        return byteCount == 0 ? 4 : byteCount * 6 + 2;
+    }
+
+    public static byte[] bytesFromString(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
     }
 
-    @Nullable
     public static String stringFromBytes(byte[] bytes) {
-        String byteString = null;
-        try {
-            byteString = new String(bytes, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            Log.e(TAG, "Unable to convert message bytes to string");
-        }
-        return byteString;
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 }
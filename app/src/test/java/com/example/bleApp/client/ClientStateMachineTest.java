@@ -0,0 +1,110 @@
+package com.example.bleApp.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.bleApp.client.ClientStateMachine.State;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ClientStateMachineTest {
+
+    private ClientStateMachine.Config mConfig;
+    private ClientStateMachine mMachine;
+
+    @Before
+    public void setUp() {
+        mConfig = new ClientStateMachine.Config();
+        mConfig.initialBackoffMs = 100;
+        mConfig.maxBackoffMs = 1000;
+        mMachine = new ClientStateMachine(mConfig, new Random(1));
+    }
+
+    @Test
+    public void walksThePairingPath() {
+        assertTrue(mMachine.moveTo(State.SCANNING));
+        assertTrue(mMachine.moveTo(State.CONNECTING));
+        assertTrue(mMachine.moveTo(State.DISCOVERING));
+        assertTrue(mMachine.moveTo(State.HANDSHAKING));
+        assertTrue(mMachine.moveTo(State.PROXIMITY));
+        assertTrue(mMachine.moveTo(State.PAIRED));
+        assertTrue(mMachine.is(State.PAIRED));
+    }
+
+    @Test
+    public void refusesTransitionsTheStateDoesNotAllow() {
+        assertFalse(mMachine.moveTo(State.HANDSHAKING));
+        assertEquals(State.IDLE, mMachine.getState());
+        mMachine.moveTo(State.SCANNING);
+        assertFalse(mMachine.canMoveTo(State.SCANNING));
+        assertFalse(mMachine.moveTo(State.PROXIMITY));
+        assertEquals(State.SCANNING, mMachine.getState());
+    }
+
+    @Test
+    public void pairedIsFinal() {
+        mMachine.moveTo(State.PAIRED);
+        for (State state : State.values()) {
+            assertFalse(state.name(), mMachine.canMoveTo(state));
+        }
+        assertEquals(-1, mMachine.fail());
+    }
+
+    @Test
+    public void backoffDoublesWithinJitterAndCaps() {
+        long ceiling = mConfig.initialBackoffMs;
+        for (int i = 1; i <= 8; i++) {
+            mMachine.moveTo(State.SCANNING);
+            long delay = mMachine.fail();
+            assertEquals(i, mMachine.getFailures());
+            assertTrue("delay " + delay + " below half of " + ceiling, delay >= ceiling / 2);
+            assertTrue("delay " + delay + " above " + ceiling, delay <= ceiling);
+            ceiling = Math.min(ceiling * 2, mConfig.maxBackoffMs);
+        }
+    }
+
+    @Test
+    public void failWhileBackingOffIsIgnored() {
+        mMachine.moveTo(State.SCANNING);
+        assertTrue(mMachine.fail() >= 0);
+        assertEquals(-1, mMachine.fail());
+        assertEquals(1, mMachine.getFailures());
+    }
+
+    @Test
+    public void largeFailureCountsDoNotOverflowTheDelay() {
+        mConfig.maxBackoffMs = Long.MAX_VALUE / 4;
+        for (int i = 0; i < 70; i++) {
+            mMachine.moveTo(State.SCANNING);
+            assertTrue(mMachine.fail() >= 0);
+        }
+    }
+
+    @Test
+    public void pairingClearsFailuresAndResetKeepsThem() {
+        mMachine.moveTo(State.SCANNING);
+        mMachine.fail();
+        mMachine.reset();
+        assertEquals(State.IDLE, mMachine.getState());
+        assertEquals(1, mMachine.getFailures());
+        mMachine.moveTo(State.PAIRED);
+        assertEquals(0, mMachine.getFailures());
+    }
+
+    @Test
+    public void listenerSeesEveryMove() {
+        List<String> moves = new ArrayList<>();
+        mMachine.setListener((from, to) -> moves.add(from + ">" + to));
+        mMachine.moveTo(State.SCANNING);
+        mMachine.moveTo(State.HANDSHAKING);
+        mMachine.reset();
+        mMachine.reset();
+        assertEquals("[IDLE>SCANNING, SCANNING>IDLE]", moves.toString());
+    }
+}
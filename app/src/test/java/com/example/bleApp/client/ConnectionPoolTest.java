@@ -0,0 +1,117 @@
+package com.example.bleApp.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class ConnectionPoolTest {
+
+    private final List<String> mConnected = new ArrayList<>();
+    // Peers whose connect fails before it returns
+    private final Set<String> mRefused = new HashSet<>();
+    // Peers whose connection drops from inside connect
+    private final Set<String> mDropped = new HashSet<>();
+    private ConnectionPool<String, String> mPool;
+
+    @Before
+    public void setUp() {
+        mPool = new ConnectionPool<>(2, (address, device) -> {
+            mConnected.add(address);
+            if (mRefused.contains(address)) {
+                return null;
+            }
+            if (mDropped.contains(address)) {
+                mPool.release(address);
+            }
+            return "session " + device;
+        });
+    }
+
+    @Test
+    public void admitsUpToTheCapInArrivalOrder() {
+        assertTrue(mPool.offer("a", "1"));
+        assertTrue(mPool.offer("b", "2"));
+        assertTrue(mPool.offer("c", "3"));
+        assertEquals("[a, b]", mConnected.toString());
+        assertEquals(2, mPool.getActiveCount());
+        assertEquals(1, mPool.getCandidateCount());
+        assertEquals("session 1", mPool.get("a"));
+
+        mPool.release("a");
+        assertEquals("[a, b, c]", mConnected.toString());
+        assertEquals("[session 2, session 3]", mPool.getActive().toString());
+    }
+
+    @Test
+    public void refusesDuplicates() {
+        assertTrue(mPool.offer("a", "1"));
+        assertFalse(mPool.offer("a", "1"));
+        mPool.offer("b", "2");
+        mPool.offer("c", "3");
+        assertFalse(mPool.offer("c", "3"));
+        assertEquals(1, mPool.getCandidateCount());
+    }
+
+    @Test
+    public void failedConnectFreesTheSlot() {
+        mRefused.add("a");
+        mPool.offer("a", "1");
+        mPool.offer("b", "2");
+        mPool.offer("c", "3");
+        assertEquals("[a, b, c]", mConnected.toString());
+        assertEquals(2, mPool.getActiveCount());
+        assertNull(mPool.get("a"));
+    }
+
+    @Test
+    public void releaseFromInsideConnect() {
+        mDropped.add("a");
+        mDropped.add("b");
+        mPool.offer("c", "3");
+        mPool.offer("a", "1");
+        mPool.offer("b", "2");
+        mPool.offer("d", "4");
+        // a and b gave their slots back while connecting, and d got one
+        assertEquals("[c, a, b, d]", mConnected.toString());
+        assertEquals("[session 3, session 4]", mPool.getActive().toString());
+        assertEquals(0, mPool.getCandidateCount());
+    }
+
+    @Test
+    public void offerFromInsideConnectKeepsTheCap() {
+        mPool = new ConnectionPool<>(2, (address, device) -> {
+            mConnected.add(address);
+            if (address.equals("a")) {
+                mPool.offer("b", "2");
+                mPool.offer("c", "3");
+                // Its own slot is already taken
+                assertFalse(mPool.offer("a", "1"));
+            }
+            return "session " + device;
+        });
+        mPool.offer("a", "1");
+        assertEquals("[a, b]", mConnected.toString());
+        assertEquals(2, mPool.getActiveCount());
+        assertEquals(1, mPool.getCandidateCount());
+    }
+
+    @Test
+    public void clearHandsBackOpenSessions() {
+        mPool.offer("a", "1");
+        mPool.offer("b", "2");
+        mPool.offer("c", "3");
+        assertEquals("[session 1, session 2]", mPool.clear().toString());
+        assertTrue(mPool.isIdle());
+        mPool.release("a");
+        assertEquals("[a, b]", mConnected.toString());
+    }
+}
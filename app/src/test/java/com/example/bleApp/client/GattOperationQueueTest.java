@@ -0,0 +1,224 @@
+package com.example.bleApp.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.bleApp.client.GattOperationQueue.Operation;
+import com.example.bleApp.client.GattOperationQueue.Type;
+import com.example.bleApp.util.Scheduler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GattOperationQueueTest {
+
+    // Runs tasks when the test advances the clock
+    private static final class ManualScheduler implements Scheduler {
+
+        private final List<long[]> mDue = new ArrayList<>();
+        private final List<Runnable> mTasks = new ArrayList<>();
+        private long mNow;
+
+        @Override
+        public Cancellable schedule(Runnable task, long delayMs) {
+            long[] due = {mNow + delayMs};
+            mDue.add(due);
+            mTasks.add(task);
+            return () -> due[0] = Long.MAX_VALUE;
+        }
+
+        void advance(long ms) {
+            long until = mNow + ms;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < mDue.size(); i++) {
+                    if (mDue.get(i)[0] <= until && (next < 0 || mDue.get(i)[0] < mDue.get(next)[0])) {
+                        next = i;
+                    }
+                }
+                if (next < 0) {
+                    break;
+                }
+                mNow = mDue.remove(next)[0];
+                mTasks.remove(next).run();
+            }
+            mNow = until;
+        }
+    }
+
+    private static final class FakeOperation extends Operation {
+
+        private final String mName;
+        private final List<String> mLog;
+        private int mRefusals;
+
+        FakeOperation(String name, Type type, long timeoutMs, List<String> log) {
+            super(type, timeoutMs);
+            mName = name;
+            mLog = log;
+            setCallback((success, status) -> log.add(name + (success ? " ok" : " failed")));
+        }
+
+        FakeOperation refuse(int times) {
+            mRefusals = times;
+            return this;
+        }
+
+        @Override
+        protected boolean execute() {
+            if (mRefusals > 0) {
+                mRefusals--;
+                mLog.add(mName + " refused");
+                return false;
+            }
+            mLog.add(mName + " started");
+            return true;
+        }
+    }
+
+    private ManualScheduler mScheduler;
+    private GattOperationQueue mQueue;
+    private List<String> mLog;
+
+    @Before
+    public void setUp() {
+        mScheduler = new ManualScheduler();
+        mQueue = new GattOperationQueue(mScheduler, 2);
+        mLog = new ArrayList<>();
+    }
+
+    private FakeOperation op(String name, Type type, long timeoutMs) {
+        return new FakeOperation(name, type, timeoutMs, mLog);
+    }
+
+    @Test
+    public void runsOneAtATimeInOrder() {
+        mQueue.enqueue(op("a", Type.WRITE_CHARACTERISTIC, 1000));
+        mQueue.enqueue(op("b", Type.READ_RSSI, 1000));
+        assertEquals("[a started]", mLog.toString());
+        assertEquals(2, mQueue.size());
+        // A callback for something else does not finish the current operation
+        assertFalse(mQueue.complete(Type.READ_RSSI, 0));
+        assertTrue(mQueue.complete(Type.WRITE_CHARACTERISTIC, 0));
+        assertTrue(mQueue.complete(Type.READ_RSSI, 5));
+        assertEquals("[a started, a ok, b started, b failed]", mLog.toString());
+        assertEquals(2, mQueue.getCompletedCount());
+        assertEquals(0, mQueue.size());
+    }
+
+    @Test
+    public void retriesRefusalsThenGivesUp() {
+        mQueue.enqueue(op("a", Type.WRITE_DESCRIPTOR, 1000).refuse(1));
+        mScheduler.advance(100);
+        assertTrue(mQueue.complete(Type.WRITE_DESCRIPTOR, 0));
+        mQueue.enqueue(op("b", Type.WRITE_DESCRIPTOR, 1000).refuse(5));
+        mQueue.enqueue(op("c", Type.READ_RSSI, 1000));
+        mScheduler.advance(1000);
+        assertEquals("[a refused, a started, a ok, b refused, b refused, b refused, b failed, c started]",
+                mLog.toString());
+        assertEquals(3, mQueue.getRetryCount());
+        assertEquals(1, mQueue.getFailureCount());
+    }
+
+    @Test
+    public void eachOperationKeepsItsOwnTimeout() {
+        mQueue.enqueue(op("rssi", Type.READ_RSSI, 100));
+        mScheduler.advance(99);
+        assertTrue(mQueue.complete(Type.READ_RSSI, 0));
+        mQueue.enqueue(op("write", Type.WRITE_CHARACTERISTIC, 5000));
+        mScheduler.advance(4000);
+        assertEquals(0, mQueue.getTimeoutCount());
+        mScheduler.advance(1000);
+        assertEquals(1, mQueue.getTimeoutCount());
+    }
+
+    @Test
+    public void timeoutFailsWithoutRerunning() {
+        mQueue.enqueue(op("a", Type.WRITE_CHARACTERISTIC, 1000));
+        mQueue.enqueue(op("b", Type.WRITE_CHARACTERISTIC, 1000));
+        mScheduler.advance(1500);
+        // a is not started again and b waits, the stack may still be busy with a
+        assertEquals("[a started, a failed]", mLog.toString());
+        assertTrue(mQueue.isPending(Type.WRITE_CHARACTERISTIC));
+        assertEquals(0, mQueue.getRetryCount());
+
+        // The late answer belongs to a, not to b
+        assertFalse(mQueue.complete(Type.WRITE_CHARACTERISTIC, 0));
+        assertEquals("[a started, a failed, b started]", mLog.toString());
+        assertTrue(mQueue.complete(Type.WRITE_CHARACTERISTIC, 0));
+        assertEquals("[a started, a failed, b started, b ok]", mLog.toString());
+        assertEquals(1, mQueue.getCompletedCount());
+    }
+
+    @Test
+    public void stallExpiresWhenTheLateCallbackNeverComes() {
+        List<String> released = new ArrayList<>();
+        mQueue.setStallListener((type, expired) -> released.add(type + (expired ? " expired" : " answered")));
+        mQueue.enqueue(op("a", Type.WRITE_CHARACTERISTIC, 1000));
+        mQueue.enqueue(op("b", Type.READ_RSSI, 1000));
+        mScheduler.advance(1999);
+        assertEquals("[a started, a failed]", mLog.toString());
+        assertTrue(released.isEmpty());
+
+        mScheduler.advance(1);
+        assertEquals("[a started, a failed, b started]", mLog.toString());
+        assertEquals("[WRITE_CHARACTERISTIC expired]", released.toString());
+        assertEquals(1, mQueue.getStallExpiryCount());
+        assertTrue(mQueue.complete(Type.READ_RSSI, 0));
+        assertEquals(0, mQueue.size());
+    }
+
+    @Test
+    public void lateCallbackReleasesTheStall() {
+        List<String> released = new ArrayList<>();
+        mQueue.setStallListener((type, expired) -> released.add(type + (expired ? " expired" : " answered")));
+        mQueue.enqueue(op("a", Type.WRITE_DESCRIPTOR, 1000));
+        mScheduler.advance(1500);
+        assertFalse(mQueue.complete(Type.WRITE_DESCRIPTOR, 0));
+        assertEquals("[WRITE_DESCRIPTOR answered]", released.toString());
+        // Its expiry is off now
+        mScheduler.advance(10_000);
+        assertEquals(0, mQueue.getStallExpiryCount());
+        assertEquals(1, released.size());
+    }
+
+    @Test
+    public void rssiSamplingGoesOnAfterATimeout() {
+        // Like the client: a failed read schedules the next one
+        List<String> released = new ArrayList<>();
+        mQueue.setStallListener((type, expired) -> released.add(type + (expired ? " expired" : " answered")));
+        FakeOperation first = op("rssi1", Type.READ_RSSI, 1000);
+        first.setCallback((success, status) -> {
+            mLog.add("rssi1 failed");
+            assertFalse(mQueue.isPending(Type.READ_RSSI));
+            mScheduler.schedule(() -> mQueue.enqueue(op("rssi2", Type.READ_RSSI, 1000)), 500);
+        });
+        mQueue.enqueue(first);
+        mScheduler.advance(1500);
+        // Queued behind the stalled read
+        assertEquals("[rssi1 started, rssi1 failed]", mLog.toString());
+        assertTrue(mQueue.isPending(Type.READ_RSSI));
+
+        // Its late callback never comes
+        mScheduler.advance(500);
+        assertEquals("[READ_RSSI expired]", released.toString());
+        assertEquals("[rssi1 started, rssi1 failed, rssi2 started]", mLog.toString());
+        assertTrue(mQueue.complete(Type.READ_RSSI, 0));
+        assertEquals("[rssi1 started, rssi1 failed, rssi2 started, rssi2 ok]", mLog.toString());
+    }
+
+    @Test
+    public void clearDropsAStalledOperation() {
+        mQueue.enqueue(op("a", Type.REQUEST_MTU, 1000));
+        mScheduler.advance(1000);
+        mQueue.clear();
+        assertEquals(0, mQueue.size());
+        mQueue.enqueue(op("b", Type.REQUEST_MTU, 1000));
+        assertEquals("[a started, a failed, b started]", mLog.toString());
+        assertTrue(mQueue.complete(Type.REQUEST_MTU, 0));
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.bleApp.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProximityEstimatorTest {
+
+    private ProximityEstimator.Config mConfig;
+
+    @Before
+    public void setUp() {
+        mConfig = new ProximityEstimator.Config();
+        mConfig.enterRssi = -60;
+        mConfig.exitRssi = -66;
+        mConfig.stableSamples = 3;
+    }
+
+    @Test
+    public void firesOnceAfterStableSamples() {
+        ProximityEstimator estimator = new ProximityEstimator(mConfig);
+        assertFalse(estimator.onSample(-50));
+        assertFalse(estimator.onSample(-51));
+        assertTrue(estimator.onSample(-50));
+        assertTrue(estimator.isClose());
+        assertFalse(estimator.onSample(-50));
+        assertEquals(4, estimator.getSampleCount());
+    }
+
+    @Test
+    public void ignoresNonReadings() {
+        ProximityEstimator estimator = new ProximityEstimator(mConfig);
+        assertFalse(estimator.onSample(0));
+        assertFalse(estimator.onSample(127));
+        assertFalse(estimator.hasEstimate());
+        assertEquals(0, estimator.getSampleCount());
+    }
+
+    @Test
+    public void dropsASpikeOffTheMedian() {
+        ProximityEstimator estimator = new ProximityEstimator(mConfig);
+        estimator.onSample(-80);
+        estimator.onSample(-80);
+        estimator.onSample(-40);
+        assertEquals(1, estimator.getOutlierCount());
+        assertEquals(-80, estimator.getEstimate(), 0.5);
+        assertFalse(estimator.isClose());
+    }
+
+    @Test
+    public void followsARealMoveOnceItIsTheMedian() {
+        ProximityEstimator estimator = new ProximityEstimator(mConfig);
+        for (int i = 0; i < 5; i++) {
+            estimator.onSample(-85);
+        }
+        int fired = 0;
+        for (int i = 0; i < 20; i++) {
+            if (estimator.onSample(-45)) {
+                fired++;
+            }
+        }
+        // Two readings are taken for spikes before the new level holds the median
+        assertEquals(2, estimator.getOutlierCount());
+        assertEquals(1, fired);
+        assertEquals(-45, estimator.getEstimate(), 1);
+    }
+
+    @Test
+    public void hysteresisBetweenEnterAndExit() {
+        ProximityEstimator estimator = new ProximityEstimator(mConfig);
+        for (int i = 0; i < 10; i++) {
+            estimator.onSample(-55);
+        }
+        assertTrue(estimator.isClose());
+        // Inside the band between exit and enter: still close
+        for (int i = 0; i < 20; i++) {
+            estimator.onSample(-63);
+        }
+        assertTrue(estimator.isClose());
+        for (int i = 0; i < 20; i++) {
+            estimator.onSample(-72);
+        }
+        assertFalse(estimator.isClose());
+    }
+
+    @Test
+    public void samplesNoFasterThanOncePerSecond() {
+        ProximityEstimator estimator = new ProximityEstimator(new ProximityEstimator.Config());
+        assertTrue(estimator.nextSampleDelayMs() >= 1000);
+        estimator.onSample(-95);
+        assertTrue(estimator.nextSampleDelayMs() > 1000);
+    }
+
+    @Test
+    public void resetStartsOver() {
+        ProximityEstimator estimator = new ProximityEstimator(mConfig);
+        for (int i = 0; i < 3; i++) {
+            estimator.onSample(-50);
+        }
+        estimator.reset();
+        assertFalse(estimator.hasEstimate());
+        assertFalse(estimator.isClose());
+        // A stale window would reject this as a spike
+        assertFalse(estimator.onSample(-90));
+        assertEquals(0, estimator.getOutlierCount());
+        assertEquals(-90, estimator.getEstimate(), 0);
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.bleApp.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+public class ScanResultTableTest {
+
+    private static final long TTL_MS = 1000;
+
+    @Test
+    public void packAndFormatRoundTrip() {
+        String address = "A4:C1:38:0F:E2:7B";
+        long packed = ScanResultTable.packAddress(address);
+        assertEquals(0xA4C1380FE27BL, packed);
+        assertEquals(address, ScanResultTable.formatAddress(packed));
+        assertEquals("00:00:00:00:00:01", ScanResultTable.formatAddress(1));
+    }
+
+    @Test
+    public void rejectsMalformedAddresses() {
+        assertEquals(-1, ScanResultTable.packAddress(null));
+        assertEquals(-1, ScanResultTable.packAddress("A4:C1:38:0F:E2"));
+        assertEquals(-1, ScanResultTable.packAddress("A4-C1-38-0F-E2-7B"));
+        assertEquals(-1, ScanResultTable.packAddress("G4:C1:38:0F:E2:7B"));
+        ScanResultTable<String> table = new ScanResultTable<>(4, TTL_MS);
+        assertEquals(0, table.onResult(-1, "bad", -50, 0));
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    public void countsHitsAndSmoothsRssi() {
+        ScanResultTable<String> table = new ScanResultTable<>(4, TTL_MS);
+        assertEquals(1, table.onResult(1, "a", -80, 0));
+        assertEquals(2, table.onResult(1, "a", -40, 10));
+        assertEquals(-40, table.getLastRssi(1));
+        assertEquals(-70, table.getAverageRssi(1));
+        assertEquals(2, table.getHits(1));
+        assertEquals(Integer.MIN_VALUE, table.getLastRssi(2));
+        assertNull(table.getDevice(2));
+    }
+
+    @Test
+    public void legacyFollowsTheLastAdvertisement() {
+        ScanResultTable<Long> table = new ScanResultTable<>(2, TTL_MS);
+        table.onResult(1, 1L, -60, true, 0);
+        assertTrue(table.isLegacy(1));
+        table.onResult(1, 1L, -60, false, 10);
+        assertFalse(table.isLegacy(1));
+        assertFalse(table.isLegacy(2));
+        // Kept through growth
+        for (long address = 2; address <= 100; address++) {
+            table.onResult(address, address, -70, address % 3 == 0, 20);
+        }
+        for (long address = 2; address <= 100; address++) {
+            assertEquals(address % 3 == 0, table.isLegacy(address));
+        }
+        // and gone with the entry
+        table.evict(20 + TTL_MS + 1);
+        table.onResult(3, 3L, -70, 30 + TTL_MS);
+        assertFalse(table.isLegacy(3));
+    }
+
+    @Test
+    public void growsPastTheExpectedSize() {
+        ScanResultTable<Long> table = new ScanResultTable<>(2, TTL_MS);
+        for (long address = 1; address <= 500; address++) {
+            table.onResult(address * 7919, address, (int) -address, address);
+        }
+        assertEquals(500, table.size());
+        for (long address = 1; address <= 500; address++) {
+            assertEquals(Long.valueOf(address), table.getDevice(address * 7919));
+            assertEquals((int) -address, table.getLastRssi(address * 7919));
+        }
+    }
+
+    @Test
+    public void evictsOnlyStaleEntries() {
+        ScanResultTable<String> table = new ScanResultTable<>(4, TTL_MS);
+        table.onResult(1, "old", -60, 0);
+        table.onResult(2, "new", -60, 900);
+        assertEquals(1, table.evict(1500));
+        assertFalse(table.contains(1));
+        assertTrue(table.contains(2));
+        assertEquals(1, table.countSeenSince(0));
+    }
+
+    // A table kept near full, so probe chains are long and wrap around the end of the arrays
+    @Test
+    public void evictionKeepsProbeChainsIntact() {
+        // Eight addresses fill 16 slots to the resize threshold
+        checkAgainstMap(4, 8);
+        checkAgainstMap(16, 64);
+    }
+
+    private static void checkAgainstMap(int expectedDevices, int addresses) {
+        Random random = new Random(42);
+        ScanResultTable<Long> table = new ScanResultTable<>(expectedDevices, TTL_MS);
+        Map<Long, Long> lastSeen = new HashMap<>();
+        long now = 0;
+        for (int round = 0; round < 2000; round++) {
+            now += 37;
+            long address = random.nextInt(addresses) + 1;
+            table.onResult(address, address, -50, now);
+            lastSeen.put(address, now);
+            if (round % 25 == 0) {
+                int evicted = table.evict(now);
+                int expected = 0;
+                for (Iterator<Long> seen = lastSeen.values().iterator(); seen.hasNext(); ) {
+                    if (now - seen.next() > TTL_MS) {
+                        seen.remove();
+                        expected++;
+                    }
+                }
+                assertEquals("round " + round, expected, evicted);
+            }
+            assertEquals(lastSeen.size(), table.size());
+            for (Map.Entry<Long, Long> entry : lastSeen.entrySet()) {
+                assertTrue("lost " + entry.getKey() + " in round " + round, table.contains(entry.getKey()));
+                assertEquals(entry.getKey(), table.getDevice(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void strongestFirstWithinTheWindow() {
+        ScanResultTable<String> table = new ScanResultTable<>(8, TTL_MS);
+        table.onResult(1, "far", -90, 100);
+        table.onResult(2, "near", -40, 100);
+        table.onResult(3, "middle", -65, 100);
+        table.onResult(4, "earlier", -30, 10);
+        assertArrayEquals(new long[]{2, 3, 1}, table.strongestSeenSince(50));
+        assertArrayEquals(new long[]{4, 2, 3, 1}, table.strongestSeenSince(0));
+        assertEquals(0, table.strongestSeenSince(200).length);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.bleApp.client;
+
+import static org.junit.Assert.assertEquals;
+
+import com.example.bleApp.util.Clock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScanSchedulerTest {
+
+    // Stands in for the client's clock, which feeds the scheduler its times
+    private static final class ManualClock implements Clock {
+
+        private long mNow = 100_000;
+
+        @Override
+        public long elapsedRealtime() {
+            return mNow;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+
+        void advance(long ms) {
+            mNow += ms;
+        }
+    }
+
+    private ManualClock mClock;
+    private ScanScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mClock = new ManualClock();
+        mScheduler = new ScanScheduler(ScanScheduler.Profile.BALANCED);
+    }
+
+    // Starts a scan now that found results, with the next start a second later
+    private void scanWithResults() {
+        mScheduler.onScanStarted(mClock.elapsedRealtime());
+        mScheduler.onWindowComplete(mClock.elapsedRealtime(), true);
+        mClock.advance(1000);
+    }
+
+    @Test
+    public void firstScanIsALowLatencyBurst() {
+        ScanScheduler.Plan plan = mScheduler.nextScan(mClock.elapsedRealtime());
+        assertEquals(0, plan.delayMs);
+        assertEquals(3000, plan.windowMs);
+        assertEquals(ScanScheduler.Mode.LOW_LATENCY, plan.mode);
+    }
+
+    @Test
+    public void sixthStartInsideTheWindowWaits() {
+        long first = mClock.elapsedRealtime();
+        for (int i = 0; i < ScanScheduler.MAX_STARTS; i++) {
+            assertEquals(0, mScheduler.nextScan(mClock.elapsedRealtime()).delayMs);
+            scanWithResults();
+        }
+        // Five starts in the last 5 s; the sixth waits until the first is out of the window, plus a margin
+        long now = mClock.elapsedRealtime();
+        assertEquals(first + ScanScheduler.START_LIMIT_WINDOW_MS + 250 - now,
+                mScheduler.nextScan(now).delayMs);
+    }
+
+    @Test
+    public void startsFreeUpAsTheWindowExpires() {
+        long first = mClock.elapsedRealtime();
+        for (int i = 0; i < ScanScheduler.MAX_STARTS; i++) {
+            scanWithResults();
+        }
+        mClock.advance(first + ScanScheduler.START_LIMIT_WINDOW_MS + 250 - mClock.elapsedRealtime());
+        assertEquals(0, mScheduler.nextScan(mClock.elapsedRealtime()).delayMs);
+
+        // Started then, the oldest start is now the second one, a second after the first
+        scanWithResults();
+        long now = mClock.elapsedRealtime();
+        assertEquals(first + 1000 + ScanScheduler.START_LIMIT_WINDOW_MS + 250 - now,
+                mScheduler.nextScan(now).delayMs);
+    }
+
+    @Test
+    public void emptyWindowsBackOffUpToTheCap() {
+        long[] expected = {1000, 2000, 4000, 8000, 16_000, 30_000, 30_000};
+        for (long delay : expected) {
+            mScheduler.onWindowComplete(mClock.elapsedRealtime(), false);
+            ScanScheduler.Plan plan = mScheduler.nextScan(mClock.elapsedRealtime());
+            assertEquals(delay, plan.delayMs);
+            assertEquals(4000, plan.windowMs);
+            assertEquals(ScanScheduler.Mode.BALANCED, plan.mode);
+            // The wait counts from the end of the window, not from when the caller asks
+            mClock.advance(delay / 2);
+            assertEquals(delay - delay / 2, mScheduler.nextScan(mClock.elapsedRealtime()).delayMs);
+            mClock.advance(delay - delay / 2);
+        }
+        assertEquals(expected.length, mScheduler.getEmptyWindows());
+    }
+
+    @Test
+    public void resultsResetTheBackoff() {
+        for (int i = 0; i < 4; i++) {
+            mScheduler.onWindowComplete(mClock.elapsedRealtime(), false);
+        }
+        assertEquals(8000, mScheduler.nextScan(mClock.elapsedRealtime()).delayMs);
+
+        mScheduler.onWindowComplete(mClock.elapsedRealtime(), true);
+        ScanScheduler.Plan plan = mScheduler.nextScan(mClock.elapsedRealtime());
+        assertEquals(0, plan.delayMs);
+        assertEquals(3000, plan.windowMs);
+        assertEquals(ScanScheduler.Mode.LOW_LATENCY, plan.mode);
+
+        // And the next empty window starts over from the initial delay
+        mScheduler.onWindowComplete(mClock.elapsedRealtime(), false);
+        assertEquals(1000, mScheduler.nextScan(mClock.elapsedRealtime()).delayMs);
+    }
+}
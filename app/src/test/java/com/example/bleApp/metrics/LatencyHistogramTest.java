@@ -0,0 +1,85 @@
+package com.example.bleApp.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        for (long value = 0; value < 8; value++) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertEquals(value, LatencyHistogram.upperBound(bucket));
+        }
+    }
+
+    @Test
+    public void bucketsStayWithinAnEighth() {
+        int previous = -1;
+        for (long value = 1; value < (1L << 31); value = value * 17 / 16 + 1) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            long upper = LatencyHistogram.upperBound(bucket);
+            assertTrue(value + " above its bucket " + upper, upper >= value);
+            assertTrue(value + " too far below " + upper, upper - value <= value / 8);
+            assertTrue("buckets not monotonic at " + value, bucket >= previous);
+            previous = bucket;
+        }
+    }
+
+    @Test
+    public void hugeAndNegativeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.getPercentile(100));
+        histogram.record(Long.MAX_VALUE / 2);
+        assertEquals(2, histogram.getCount());
+        assertTrue(histogram.getPercentile(100) > 0);
+    }
+
+    @Test
+    public void percentilesOfAUniformSpread() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        assertEquals(500, histogram.getMean());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500, histogram.getPercentile(50), 500 / 8.0);
+        assertEquals(990, histogram.getPercentile(99), 990 / 8.0);
+        // Never above the largest value recorded
+        assertEquals(1000, histogram.getPercentile(100));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void concurrentWritersLoseNothing() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            int offset = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i % 100 + offset);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals(40_000, histogram.getCount());
+        assertEquals(102, histogram.getMax());
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.bleApp.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+public class FragmenterTest {
+
+    private static byte[] message(int length, int seed) {
+        byte[] message = new byte[length];
+        new Random(seed).nextBytes(message);
+        message[0] = 0x11;
+        return message;
+    }
+
+    @Test
+    public void roundTripsAtEveryMtu() {
+        for (int mtu : new int[]{Fragmenter.DEFAULT_MTU, 24, 100, 185, Fragmenter.MAX_MTU}) {
+            Reassembler reassembler = new Reassembler(Fragmenter.MAX_MESSAGE_LENGTH);
+            for (int length : new int[]{1, 19, 20, 21, 300, Fragmenter.MAX_MESSAGE_LENGTH}) {
+                byte[] message = message(length, length);
+                List<byte[]> fragments = Fragmenter.split(message, mtu, length);
+                byte[] result = null;
+                for (byte[] fragment : fragments) {
+                    assertTrue(fragment.length <= Fragmenter.maxValueLength(mtu));
+                    assertNull("completed early", result);
+                    result = reassembler.accept(fragment);
+                }
+                assertArrayEquals("mtu " + mtu + " length " + length, message, result);
+            }
+            assertEquals(0, reassembler.getDroppedCount());
+        }
+    }
+
+    @Test
+    public void messagesThatFitGoOutUnchanged() {
+        byte[] message = message(20, 1);
+        List<byte[]> fragments = Fragmenter.split(message, Fragmenter.DEFAULT_MTU, 0);
+        assertEquals(1, fragments.size());
+        assertSame(message, fragments.get(0));
+        assertSame(message, new Reassembler(64).accept(message));
+    }
+
+    @Test
+    public void shortMessageStartingWithTheMagicIsFramed() {
+        byte[] message = {(byte) Fragmenter.MAGIC, 1, 2, 3, 4};
+        List<byte[]> fragments = Fragmenter.split(message, Fragmenter.MAX_MTU, 9);
+        assertEquals(1, fragments.size());
+        assertFalse(fragments.get(0) == message);
+        assertArrayEquals(message, new Reassembler(64).accept(fragments.get(0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesMoreThanMaxFragments() {
+        Fragmenter.split(new byte[257 * 16 + 1], Fragmenter.DEFAULT_MTU, 0);
+    }
+
+    @Test
+    public void messageIdsWrapAround() {
+        Reassembler reassembler = new Reassembler(Fragmenter.MAX_MESSAGE_LENGTH);
+        for (int id = 250; id < 262; id++) {
+            byte[] message = message(50, id);
+            byte[] result = null;
+            for (byte[] fragment : Fragmenter.split(message, Fragmenter.DEFAULT_MTU, id)) {
+                result = reassembler.accept(fragment);
+            }
+            assertArrayEquals(message, result);
+        }
+    }
+
+    @Test
+    public void outOfOrderFragmentDropsTheMessage() {
+        List<byte[]> fragments = Fragmenter.split(message(60, 2), Fragmenter.DEFAULT_MTU, 1);
+        assertTrue(fragments.size() >= 3);
+        Reassembler reassembler = new Reassembler(Fragmenter.MAX_MESSAGE_LENGTH);
+        assertNull(reassembler.accept(fragments.get(0)));
+        assertNull(reassembler.accept(fragments.get(2)));
+        assertFalse(reassembler.isPending());
+        assertEquals(1, reassembler.getDroppedCount());
+        // The rest of the broken message is ignored, not glued onto anything
+        for (int i = 3; i < fragments.size(); i++) {
+            assertNull(reassembler.accept(fragments.get(i)));
+        }
+    }
+
+    @Test
+    public void newMessageReplacesAnUnfinishedOne() {
+        List<byte[]> first = Fragmenter.split(message(60, 3), Fragmenter.DEFAULT_MTU, 1);
+        byte[] second = message(60, 4);
+        Reassembler reassembler = new Reassembler(Fragmenter.MAX_MESSAGE_LENGTH);
+        reassembler.accept(first.get(0));
+        byte[] result = null;
+        for (byte[] fragment : Fragmenter.split(second, Fragmenter.DEFAULT_MTU, 2)) {
+            result = reassembler.accept(fragment);
+        }
+        assertArrayEquals(second, result);
+        assertEquals(1, reassembler.getDroppedCount());
+    }
+
+    @Test
+    public void oversizedMessageIsDropped() {
+        Reassembler reassembler = new Reassembler(100);
+        byte[] result = null;
+        for (byte[] fragment : Fragmenter.split(message(150, 5), Fragmenter.DEFAULT_MTU, 7)) {
+            result = reassembler.accept(fragment);
+        }
+        assertNull(result);
+        assertEquals(1, reassembler.getDroppedCount());
+        byte[] small = message(90, 6);
+        for (byte[] fragment : Fragmenter.split(small, Fragmenter.DEFAULT_MTU, 8)) {
+            result = reassembler.accept(fragment);
+        }
+        assertArrayEquals(small, result);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.bleApp.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.bleApp.Constants;
+import com.example.bleApp.util.ByteUtils;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class HandshakeTest {
+
+    @Test
+    public void echoCarriesTheSequenceAndCodecs() {
+        byte[] matchControl = Handshake.matchControl(0xA7, PayloadCodec.SUPPORTED);
+        assertEquals(HandshakeFrame.OP_MATCH_CONTROL, Handshake.opcode(matchControl));
+        assertEquals(PayloadCodec.SUPPORTED, Handshake.codecs(matchControl));
+
+        byte[] echo = Handshake.echo(matchControl, PayloadCodec.CODEC_NONE);
+        assertTrue(Handshake.isMatchControlEcho(echo, 0xA7));
+        assertFalse(Handshake.isForeignEcho(echo, 0xA7));
+        assertEquals(0xA7, Handshake.sequence(echo));
+        assertEquals(PayloadCodec.CODEC_NONE, Handshake.codecs(echo));
+        // Sequences are compared as bytes
+        assertTrue(Handshake.isMatchControlEcho(echo, 0x1A7));
+    }
+
+    @Test
+    public void echoForAnotherSequenceIsForeign() {
+        byte[] echo = Handshake.echo(Handshake.matchControl(1));
+        assertFalse(Handshake.isMatchControlEcho(echo, 2));
+        assertTrue(Handshake.isForeignEcho(echo, 2));
+        // Neither a frame of another kind nor a legacy echo counts as one
+        assertFalse(Handshake.isForeignEcho(Handshake.friend(1), 2));
+        assertFalse(Handshake.isForeignEcho(Handshake.legacyEcho(), 2));
+    }
+
+    @Test
+    public void friendKeepsTheHandshakeSequence() {
+        byte[] friend = Handshake.friend(200);
+        assertTrue(Handshake.isFriend(friend));
+        assertFalse(Handshake.isMatchControl(friend));
+        assertEquals(HandshakeFrame.OP_FRIEND, Handshake.opcode(friend));
+        assertEquals(200, Handshake.sequence(friend));
+    }
+
+    @Test
+    public void legacyStringsMapToTheirOpcodes() {
+        byte[] matchControl = Constants.XEE_KIDS_MATCH_CONTROL.getBytes(StandardCharsets.UTF_8);
+        byte[] friend = Constants.XEE_KIDS_FRIEND.getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(matchControl, Handshake.legacyMatchControl());
+        assertArrayEquals(friend, Handshake.legacyFriend());
+        assertEquals(HandshakeFrame.OP_MATCH_CONTROL, Handshake.opcode(matchControl));
+        assertEquals(HandshakeFrame.OP_FRIEND, Handshake.opcode(friend));
+        assertEquals(Handshake.LEGACY_SEQUENCE, Handshake.sequence(matchControl));
+        assertEquals(Handshake.LEGACY_SEQUENCE, Handshake.sequence(friend));
+        // No payload, so no compression for legacy peers
+        assertEquals(PayloadCodec.CODEC_NONE, Handshake.codecs(matchControl));
+        // Never mistaken for a frame, and a frame never for a legacy string
+        assertEquals(HandshakeFrame.OP_INVALID, HandshakeFrame.opcode(matchControl));
+        assertFalse(Handshake.isLegacy(Handshake.matchControl(0)));
+    }
+
+    @Test
+    public void legacyEchoIsTheReversedMatchControl() {
+        byte[] echo = ByteUtils.reverse(Constants.XEE_KIDS_MATCH_CONTROL.getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(echo, Handshake.legacyEcho());
+        assertTrue(Handshake.isLegacyEcho(echo));
+        assertFalse(Handshake.isLegacyEcho(Handshake.legacyMatchControl()));
+        assertFalse(Handshake.isLegacyEcho(null));
+        assertFalse(Handshake.isLegacyEcho(new byte[0]));
+        echo[0] ^= 0x20;
+        assertFalse(Handshake.isLegacyEcho(echo));
+    }
+
+    @Test
+    public void callersCannotChangeTheLegacyPayloads() {
+        Handshake.legacyMatchControl()[0] = 0;
+        Handshake.legacyFriend()[0] = 0;
+        assertTrue(Handshake.isLegacyMatchControl(Handshake.legacyMatchControl()));
+        assertTrue(Handshake.isLegacyFriend(Handshake.legacyFriend()));
+    }
+
+    @Test
+    public void garbageIsNothing() {
+        assertEquals(HandshakeFrame.OP_INVALID, Handshake.opcode(null));
+        assertEquals(HandshakeFrame.OP_INVALID, Handshake.opcode(new byte[]{(byte) 0xEE}));
+        assertEquals(-1, Handshake.sequence(new byte[]{1, 2, 3}));
+        assertFalse(Handshake.isLegacy(null));
+    }
+}
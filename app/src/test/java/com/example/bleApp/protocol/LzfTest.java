@@ -0,0 +1,127 @@
+package com.example.bleApp.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+public class LzfTest {
+
+    private final int[] mTable = Lzf.newTable();
+
+    private byte[] roundTrip(byte[] input) {
+        byte[] compressed = new byte[Lzf.maxCompressedLength(input.length)];
+        int length = Lzf.compress(input, 0, input.length, compressed, 0, mTable);
+        assertTrue("no room for " + input.length + " bytes", length > 0 || input.length == 0);
+        byte[] output = new byte[input.length];
+        assertEquals(input.length, Lzf.decompress(compressed, 0, length, output, 0));
+        assertArrayEquals(input, output);
+        return Arrays.copyOf(compressed, length);
+    }
+
+    @Test
+    public void repetitiveInputShrinks() {
+        byte[] input = "XEE_KIDS_SMART_WATCH XEE_KIDS_SMART_WATCH XEE_KIDS_SMART_WATCH"
+                .getBytes(StandardCharsets.US_ASCII);
+        assertTrue(roundTrip(input).length < input.length / 2);
+    }
+
+    @Test
+    public void longRunsUseTheExtendedLength() {
+        byte[] input = new byte[2000];
+        Arrays.fill(input, (byte) 7);
+        assertTrue(roundTrip(input).length < 40);
+    }
+
+    @Test
+    public void randomInputStaysWithinTheBound() {
+        Random random = new Random(3);
+        for (int length : new int[]{1, 2, 3, 31, 32, 33, 64, 500, 9000}) {
+            byte[] input = new byte[length];
+            random.nextBytes(input);
+            assertTrue(roundTrip(input).length <= Lzf.maxCompressedLength(length));
+        }
+    }
+
+    @Test
+    public void matchesBeyondTheWindowAreNotUsed() {
+        // The repeat sits more than 8 KiB back, so it has to go out as literals
+        Random random = new Random(5);
+        byte[] block = new byte[100];
+        random.nextBytes(block);
+        byte[] input = new byte[block.length * 2 + 9000];
+        random.nextBytes(input);
+        System.arraycopy(block, 0, input, 0, block.length);
+        System.arraycopy(block, 0, input, input.length - block.length, block.length);
+        roundTrip(input);
+    }
+
+    @Test
+    public void compressRespectsOffsetsAndSmallOutput() {
+        byte[] input = "..abcabcabcabcabcabc..".getBytes(StandardCharsets.US_ASCII);
+        byte[] compressed = new byte[64];
+        int length = Lzf.compress(input, 2, input.length - 4, compressed, 3, mTable);
+        byte[] output = new byte[input.length - 4 + 2];
+        assertEquals(input.length - 4, Lzf.decompress(compressed, 3, length, output, 2));
+        assertArrayEquals(Arrays.copyOfRange(input, 2, input.length - 2), Arrays.copyOfRange(output, 2, output.length));
+
+        byte[] random = new byte[100];
+        new Random(1).nextBytes(random);
+        assertEquals(0, Lzf.compress(random, 0, random.length, new byte[50], 0, mTable));
+    }
+
+    @Test
+    public void tableLeftFromEarlierCallsIsSafe() {
+        byte[] input = new byte[3000];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) "abcdefg".charAt(i % 7);
+        }
+        byte[] first = roundTrip(input);
+        // Entries now point far ahead of where the next call starts
+        assertArrayEquals(first, roundTrip(input));
+        assertArrayEquals(first, roundTrip(input.clone()));
+        roundTrip(Arrays.copyOf(input, 40));
+
+        // And below the start of a later call on the same array
+        byte[] compressed = new byte[Lzf.maxCompressedLength(input.length)];
+        int length = Lzf.compress(input, 1500, 1500, compressed, 0, mTable);
+        byte[] output = new byte[1500];
+        assertEquals(1500, Lzf.decompress(compressed, 0, length, output, 0));
+        assertArrayEquals(Arrays.copyOfRange(input, 1500, 3000), output);
+    }
+
+    @Test
+    public void corruptStreamsAreRejected() {
+        byte[] input = "hello hello hello hello hello".getBytes(StandardCharsets.US_ASCII);
+        byte[] compressed = roundTrip(input);
+        byte[] output = new byte[input.length];
+        // Truncated at every point
+        for (int cut = 1; cut < compressed.length; cut++) {
+            try {
+                int length = Lzf.decompress(compressed, 0, cut, output, 0);
+                assertTrue(length < input.length);
+            } catch (IllegalArgumentException expected) {
+                // fine either way, as long as it doesn't run past the arrays
+            }
+        }
+        expectCorrupt(new byte[]{(byte) 0x20, 0x05}, 16);
+        expectCorrupt(new byte[]{0x05, 'a', 'b'}, 16);
+        expectCorrupt(new byte[]{(byte) 0xE0}, 16);
+        expectCorrupt(new byte[]{0x03, 'a', 'b', 'c', 'd'}, 2);
+    }
+
+    private static void expectCorrupt(byte[] stream, int outLength) {
+        try {
+            Lzf.decompress(stream, 0, stream.length, new byte[outLength], 0);
+            fail("accepted " + Arrays.toString(stream));
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+}
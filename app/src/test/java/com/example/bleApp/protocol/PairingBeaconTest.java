@@ -0,0 +1,107 @@
+package com.example.bleApp.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import com.example.bleApp.protocol.PairingBeacon.Verdict;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class PairingBeaconTest {
+
+    private static final byte[] KEY = "shared key".getBytes(StandardCharsets.US_ASCII);
+    // Well inside an epoch
+    private static final long NOW = 1000 * PairingBeacon.ROTATION_MS + PairingBeacon.ROTATION_MS / 2;
+
+    private PairingBeacon.Verifier mVerifier;
+
+    @Before
+    public void setUp() {
+        mVerifier = new PairingBeacon.Verifier(KEY);
+    }
+
+    private static byte[] beacon(int state, long wallClockMs) {
+        return PairingBeacon.encode(state, PairingBeacon.token(KEY, PairingBeacon.epoch(wallClockMs)));
+    }
+
+    @Test
+    public void encodesVersionStateAndToken() {
+        byte[] beacon = PairingBeacon.encode(PairingBeacon.STATE_BUSY, 0x12345678);
+        assertEquals(PairingBeacon.LENGTH, beacon.length);
+        assertEquals(PairingBeacon.VERSION << 4 | PairingBeacon.STATE_BUSY, beacon[0]);
+        assertEquals(0x78, beacon[1]);
+        assertEquals(0x12, beacon[4]);
+    }
+
+    @Test
+    public void stateOfAWatchWithTheKey() {
+        assertEquals(Verdict.PAIRABLE, mVerifier.evaluate(beacon(PairingBeacon.STATE_PAIRABLE, NOW), NOW));
+        assertEquals(Verdict.BUSY, mVerifier.evaluate(beacon(PairingBeacon.STATE_BUSY, NOW), NOW));
+        assertEquals(Verdict.ABSENT, mVerifier.evaluate(null, NOW));
+    }
+
+    @Test
+    public void toleratesOneEpochOfSkew() {
+        long rotation = PairingBeacon.ROTATION_MS;
+        assertEquals(Verdict.PAIRABLE, mVerifier.evaluate(beacon(PairingBeacon.STATE_PAIRABLE, NOW - rotation), NOW));
+        assertEquals(Verdict.PAIRABLE, mVerifier.evaluate(beacon(PairingBeacon.STATE_PAIRABLE, NOW + rotation), NOW));
+        assertEquals(Verdict.FOREIGN, mVerifier.evaluate(beacon(PairingBeacon.STATE_PAIRABLE, NOW - 2 * rotation), NOW));
+        assertEquals(Verdict.FOREIGN, mVerifier.evaluate(beacon(PairingBeacon.STATE_PAIRABLE, NOW + 3 * rotation), NOW));
+    }
+
+    @Test
+    public void followsTheClockAcrossEpochs() {
+        byte[] beacon = beacon(PairingBeacon.STATE_PAIRABLE, NOW);
+        long rotation = PairingBeacon.ROTATION_MS;
+        assertEquals(Verdict.PAIRABLE, mVerifier.evaluate(beacon, NOW + rotation));
+        // The cached tokens move with the epoch
+        assertEquals(Verdict.FOREIGN, mVerifier.evaluate(beacon, NOW + 2 * rotation));
+        assertEquals(Verdict.PAIRABLE, mVerifier.evaluate(beacon, NOW));
+    }
+
+    @Test
+    public void rejectsOtherKeysVersionsAndStates() {
+        byte[] otherKey = "other key".getBytes(StandardCharsets.US_ASCII);
+        int foreignToken = PairingBeacon.token(otherKey, PairingBeacon.epoch(NOW));
+        assertEquals(Verdict.FOREIGN, mVerifier.evaluate(PairingBeacon.encode(PairingBeacon.STATE_PAIRABLE, foreignToken), NOW));
+
+        byte[] newerVersion = beacon(PairingBeacon.STATE_PAIRABLE, NOW);
+        newerVersion[0] = (byte) ((PairingBeacon.VERSION + 1) << 4 | PairingBeacon.STATE_PAIRABLE);
+        assertEquals(Verdict.FOREIGN, mVerifier.evaluate(newerVersion, NOW));
+
+        assertEquals(Verdict.FOREIGN, mVerifier.evaluate(beacon(0x0F, NOW), NOW));
+        byte[] shortBeacon = new byte[PairingBeacon.LENGTH - 1];
+        System.arraycopy(beacon(PairingBeacon.STATE_PAIRABLE, NOW), 0, shortBeacon, 0, shortBeacon.length);
+        assertEquals(Verdict.FOREIGN, mVerifier.evaluate(shortBeacon, NOW));
+        assertEquals(Verdict.FOREIGN, mVerifier.evaluate(new byte[0], NOW));
+    }
+
+    @Test
+    public void tokensDependOnKeyAndEpoch() {
+        long epoch = PairingBeacon.epoch(NOW);
+        assertEquals(PairingBeacon.token(KEY, epoch), PairingBeacon.token(KEY.clone(), epoch));
+        assertNotEquals(PairingBeacon.token(KEY, epoch), PairingBeacon.token(KEY, epoch + 1));
+        // The verifier keeps its own copy of the key
+        byte[] key = KEY.clone();
+        PairingBeacon.Verifier verifier = new PairingBeacon.Verifier(key);
+        key[0] ^= 1;
+        assertEquals(Verdict.PAIRABLE, verifier.evaluate(beacon(PairingBeacon.STATE_PAIRABLE, NOW), NOW));
+    }
+
+    @Test
+    public void epochsAndRotationAtTheEdges() {
+        long rotation = PairingBeacon.ROTATION_MS;
+        assertEquals(0, PairingBeacon.epoch(0));
+        assertEquals(0, PairingBeacon.epoch(rotation - 1));
+        assertEquals(1, PairingBeacon.epoch(rotation));
+        // A clock before 1970 still rounds down
+        assertEquals(-1, PairingBeacon.epoch(-1));
+        assertEquals(rotation, PairingBeacon.untilRotationMs(0));
+        assertEquals(1, PairingBeacon.untilRotationMs(rotation - 1));
+        assertEquals(rotation / 2, PairingBeacon.untilRotationMs(NOW));
+        assertEquals(1, PairingBeacon.untilRotationMs(-1));
+    }
+}
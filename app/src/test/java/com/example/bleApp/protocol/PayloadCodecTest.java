@@ -0,0 +1,93 @@
+package com.example.bleApp.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class PayloadCodecTest {
+
+    private static byte[] reading(int seed) {
+        byte[] value = new byte[120];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = (byte) (i / 8);
+        }
+        value[17] = (byte) seed;
+        value[90] = (byte) (seed >> 8);
+        return value;
+    }
+
+    @Test
+    public void shortValuesPassThrough() {
+        PayloadCodec.Encoder encoder = new PayloadCodec.Encoder(PayloadCodec.SUPPORTED);
+        byte[] value = {1, 2, 3};
+        assertSame(value, encoder.encode(value));
+        assertSame(value, new PayloadCodec.Decoder().decode(value));
+    }
+
+    @Test
+    public void valuesThatLookWrappedAreEscaped() {
+        PayloadCodec.Encoder encoder = new PayloadCodec.Encoder(PayloadCodec.CODEC_NONE);
+        byte[] value = {(byte) PayloadCodec.MAGIC, 1, 2, 3, 4, 5, 6, 7};
+        byte[] encoded = encoder.encode(value);
+        assertTrue(PayloadCodec.isWrapped(encoded));
+        assertArrayEquals(value, new PayloadCodec.Decoder().decode(encoded));
+    }
+
+    @Test
+    public void incompressibleValuesGoOutAsIs() {
+        byte[] value = new byte[200];
+        new Random(9).nextBytes(value);
+        value[0] = 0;
+        PayloadCodec.Encoder encoder = new PayloadCodec.Encoder(PayloadCodec.SUPPORTED);
+        assertSame(value, encoder.encode(value));
+    }
+
+    @Test
+    public void readingsRoundTrip() {
+        PayloadCodec.Encoder encoder = new PayloadCodec.Encoder(PayloadCodec.SUPPORTED);
+        PayloadCodec.Decoder decoder = new PayloadCodec.Decoder();
+        for (int i = 0; i < 600; i++) {
+            byte[] value = reading(i);
+            byte[] encoded = encoder.encode(value);
+            assertTrue(PayloadCodec.isWrapped(encoded));
+            assertArrayEquals("value " + i, value, decoder.decode(encoded));
+        }
+        assertEquals(0, decoder.getFailureCount());
+        assertTrue(encoder.getBytesOut() < encoder.getBytesIn() * 3 / 4);
+    }
+
+    @Test
+    public void corruptValuesDecodeToNull() {
+        PayloadCodec.Encoder encoder = new PayloadCodec.Encoder(PayloadCodec.CODEC_LZ);
+        byte[] encoded = encoder.encode(reading(1));
+        assertTrue(PayloadCodec.isWrapped(encoded));
+
+        byte[] badMethods = encoded.clone();
+        badMethods[1] = (byte) 0x80;
+        byte[] badLength = encoded.clone();
+        badLength[2]++;
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 3);
+
+        PayloadCodec.Decoder decoder = new PayloadCodec.Decoder();
+        assertNull(decoder.decode(badMethods));
+        assertNull(decoder.decode(badLength));
+        assertNull(decoder.decode(truncated));
+        assertEquals(3, decoder.getFailureCount());
+        assertArrayEquals(reading(1), decoder.decode(encoded));
+    }
+
+    @Test
+    public void selectKeepsOnlySupportedCodecs() {
+        assertEquals(PayloadCodec.CODEC_LZ, PayloadCodec.select(PayloadCodec.CODEC_LZ | 0x80));
+        assertEquals(PayloadCodec.CODEC_NONE, PayloadCodec.select(0));
+        assertFalse(PayloadCodec.isWrapped(new byte[]{(byte) PayloadCodec.MAGIC}));
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.bleApp.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class NotificationFanoutTest {
+
+    private static final UUID HANDSHAKE = UUID.fromString("066a76ed-35b9-41de-a2b5-8021fb832dbb");
+    private static final UUID ECHO = UUID.fromString("066a76ef-35b9-41de-a2b5-8021fb832dbb");
+    private static final UUID TIME = UUID.fromString("066a76f0-35b9-41de-a2b5-8021fb832dbb");
+
+    private final List<String> mSent = new ArrayList<>();
+    private final List<byte[]> mValues = new ArrayList<>();
+    private boolean mRefuse;
+
+    private NotificationFanout<String> fanout(int maxQueue, int maxInFlight) {
+        return new NotificationFanout<>((device, uuid, value) -> {
+            if (mRefuse) {
+                return false;
+            }
+            mSent.add(device + (uuid.equals(HANDSHAKE) ? "/h" : uuid.equals(ECHO) ? "/e" : "/t"));
+            mValues.add(value);
+            return true;
+        }, maxQueue, maxInFlight);
+    }
+
+    @Test
+    public void oneInFlightPerDevice() {
+        NotificationFanout<String> fanout = fanout(8, 8);
+        fanout.enqueue("a", "a", HANDSHAKE, new byte[]{1});
+        fanout.enqueue("a", "a", ECHO, new byte[]{2});
+        assertEquals("[a/h]", mSent.toString());
+        assertEquals(1, fanout.getQueueDepth());
+        fanout.onNotificationSent("a", 0);
+        assertEquals("[a/h, a/e]", mSent.toString());
+        assertEquals(0, fanout.getQueueDepth());
+    }
+
+    @Test
+    public void devicesAreServedRoundRobinUnderTheGlobalCap() {
+        NotificationFanout<String> fanout = fanout(8, 2);
+        for (String device : new String[]{"a", "b", "c"}) {
+            fanout.enqueue(device, device, HANDSHAKE, new byte[]{1});
+            fanout.enqueue(device, device, ECHO, new byte[]{2});
+        }
+        assertEquals("[a/h, b/h]", mSent.toString());
+        assertEquals(2, fanout.getInFlight());
+        fanout.onNotificationSent("a", 0);
+        fanout.onNotificationSent("b", 0);
+        assertEquals("[a/h, b/h, c/h, a/e]", mSent.toString());
+    }
+
+    @Test
+    public void newerValueReplacesAQueuedOne() {
+        NotificationFanout<String> fanout = fanout(8, 8);
+        fanout.enqueue("a", "a", HANDSHAKE, new byte[]{1});
+        fanout.enqueue("a", "a", TIME, new byte[]{2});
+        fanout.enqueue("a", "a", TIME, new byte[]{3});
+        assertEquals(1, fanout.getCoalescedCount());
+        fanout.onNotificationSent("a", 0);
+        assertArrayEquals(new byte[]{3}, mValues.get(1));
+        assertEquals(2, fanout.getSentCount());
+    }
+
+    @Test
+    public void fullQueueDropsTheOldest() {
+        NotificationFanout<String> fanout = fanout(2, 8);
+        fanout.enqueue("a", "a", HANDSHAKE, new byte[]{0});
+        fanout.enqueue("a", "a", HANDSHAKE, new byte[]{1});
+        fanout.enqueue("a", "a", ECHO, new byte[]{2});
+        fanout.enqueue("a", "a", TIME, new byte[]{3});
+        assertEquals(1, fanout.getDroppedCount());
+        fanout.onNotificationSent("a", 0);
+        fanout.onNotificationSent("a", 0);
+        assertEquals("[a/h, a/e, a/t]", mSent.toString());
+    }
+
+    @Test
+    public void refusedSendFreesTheLink() {
+        NotificationFanout<String> fanout = fanout(8, 1);
+        mRefuse = true;
+        fanout.enqueue("a", "a", HANDSHAKE, new byte[]{1});
+        fanout.enqueue("b", "b", HANDSHAKE, new byte[]{1});
+        assertEquals(2, fanout.getFailedCount());
+        assertEquals(0, fanout.getInFlight());
+        mRefuse = false;
+        fanout.enqueue("a", "a", ECHO, new byte[]{2});
+        assertEquals("[a/e]", mSent.toString());
+    }
+
+    @Test
+    public void removingADeviceReleasesItsSlot() {
+        NotificationFanout<String> fanout = fanout(8, 1);
+        fanout.enqueue("a", "a", HANDSHAKE, new byte[]{1});
+        fanout.enqueue("a", "a", ECHO, new byte[]{1});
+        fanout.enqueue("b", "b", HANDSHAKE, new byte[]{1});
+        fanout.remove("a");
+        assertEquals("[a/h, b/h]", mSent.toString());
+        assertEquals(1, fanout.getDroppedCount());
+        // A late confirmation for the removed device changes nothing
+        fanout.onNotificationSent("a", 0);
+        assertEquals(1, fanout.getInFlight());
+    }
+
+    @Test
+    public void clearDropsQueuedAndInFlight() {
+        NotificationFanout<String> fanout = fanout(8, 8);
+        fanout.enqueue("a", "a", HANDSHAKE, new byte[]{1});
+        fanout.enqueue("a", "a", TIME, new byte[]{5});
+        fanout.enqueue("b", "b", TIME, new byte[]{5});
+        assertEquals(2, mSent.size());
+        fanout.clear();
+        assertEquals(0, fanout.getInFlight());
+        assertEquals(0, fanout.getQueueDepth());
+    }
+}
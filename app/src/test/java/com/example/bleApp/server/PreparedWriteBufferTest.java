@@ -0,0 +1,67 @@
+package com.example.bleApp.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+public class PreparedWriteBufferTest {
+
+    private static final UUID FIRST = UUID.fromString("066a76ed-35b9-41de-a2b5-8021fb832dbb");
+    private static final UUID SECOND = UUID.fromString("066a76ee-35b9-41de-a2b5-8021fb832dbb");
+
+    @Test
+    public void assemblesPiecesInOrder() {
+        PreparedWriteBuffer buffer = new PreparedWriteBuffer();
+        assertTrue(buffer.isEmpty());
+        assertTrue(buffer.prepare(FIRST, 0, new byte[]{1, 2, 3}));
+        assertTrue(buffer.prepare(FIRST, 3, new byte[]{4, 5}));
+        assertEquals(FIRST, buffer.getCharacteristicUuid());
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, buffer.take());
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.take());
+    }
+
+    @Test
+    public void rewritesAnEarlierOffset() {
+        PreparedWriteBuffer buffer = new PreparedWriteBuffer();
+        buffer.prepare(FIRST, 0, new byte[]{1, 2, 3, 4});
+        assertTrue(buffer.prepare(FIRST, 1, new byte[]{9}));
+        assertArrayEquals(new byte[]{1, 9, 3, 4}, buffer.take());
+    }
+
+    @Test
+    public void refusesGapsOverflowAndOtherCharacteristics() {
+        PreparedWriteBuffer buffer = new PreparedWriteBuffer();
+        assertFalse(buffer.prepare(FIRST, 1, new byte[]{1}));
+        assertFalse(buffer.prepare(FIRST, -1, new byte[]{1}));
+        assertTrue(buffer.isEmpty());
+        assertTrue(buffer.prepare(FIRST, 0, new byte[PreparedWriteBuffer.MAX_ATTRIBUTE_LENGTH - 1]));
+        assertFalse(buffer.prepare(FIRST, PreparedWriteBuffer.MAX_ATTRIBUTE_LENGTH - 1, new byte[2]));
+        assertTrue(buffer.prepare(FIRST, PreparedWriteBuffer.MAX_ATTRIBUTE_LENGTH - 1, new byte[1]));
+        assertFalse(buffer.prepare(SECOND, 0, new byte[]{1}));
+        assertEquals(PreparedWriteBuffer.MAX_ATTRIBUTE_LENGTH, buffer.take().length);
+    }
+
+    @Test
+    public void emptyPieceStillStartsTheQueue() {
+        PreparedWriteBuffer buffer = new PreparedWriteBuffer();
+        assertTrue(buffer.prepare(SECOND, 0, null));
+        assertFalse(buffer.isEmpty());
+        assertArrayEquals(new byte[0], buffer.take());
+    }
+
+    @Test
+    public void clearedBufferIsReusable() {
+        PreparedWriteBuffer buffer = new PreparedWriteBuffer();
+        buffer.prepare(FIRST, 0, new byte[]{1, 2, 3});
+        buffer.clear();
+        assertTrue(buffer.prepare(SECOND, 0, new byte[]{7}));
+        assertArrayEquals(new byte[]{7}, buffer.take());
+    }
+}
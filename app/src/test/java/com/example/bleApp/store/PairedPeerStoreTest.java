@@ -0,0 +1,165 @@
+package com.example.bleApp.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+
+public class PairedPeerStoreTest {
+
+    private static final int HEADER_SIZE = 8;
+
+    private File mDir;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = Files.createTempDirectory("peers").toFile();
+        mFile = new File(mDir, "paired_peers.bin");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void survivesAReopen() throws IOException {
+        PairedPeerStore store = PairedPeerStore.open(mFile);
+        assertTrue(store.isEmpty());
+        store.put(0xA4C1380FE27BL, 7, -55, 1000);
+        store.put(2, 2, PairedPeerStore.UNKNOWN_RSSI, 2000);
+
+        PairedPeerStore reopened = PairedPeerStore.open(mFile);
+        assertEquals(2, reopened.size());
+        PairedPeerStore.Peer peer = reopened.get(0xA4C1380FE27BL);
+        assertEquals(7, peer.peerId);
+        assertEquals(-55, peer.lastRssi);
+        assertEquals(1000, peer.pairedAtMs);
+        assertEquals(PairedPeerStore.UNKNOWN_RSSI, reopened.get(2).lastRssi);
+        assertEquals(HEADER_SIZE + 2 * PairedPeerStore.RECORD_SIZE, mFile.length());
+    }
+
+    @Test
+    public void lastRecordWinsAndForgetSticks() throws IOException {
+        PairedPeerStore store = PairedPeerStore.open(mFile);
+        store.put(1, 1, -70, 100);
+        store.put(2, 2, -60, 200);
+        store.put(1, 1, -50, 300);
+        store.forget(2);
+        store.forget(3);
+
+        PairedPeerStore reopened = PairedPeerStore.open(mFile);
+        assertEquals(1, reopened.size());
+        assertEquals(-50, reopened.get(1).lastRssi);
+        assertEquals(300, reopened.get(1).pairedAtMs);
+        assertFalse(reopened.contains(2));
+    }
+
+    @Test
+    public void mostRecentFirst() throws IOException {
+        PairedPeerStore store = PairedPeerStore.open(mFile);
+        store.put(1, 1, -60, 100);
+        store.put(2, 2, -60, 200);
+        store.put(3, 3, -60, 300);
+        store.put(1, 1, -60, 400);
+        List<PairedPeerStore.Peer> peers = PairedPeerStore.open(mFile).getPeers();
+        assertEquals(3, peers.size());
+        assertEquals(1, peers.get(0).address);
+        assertEquals(3, peers.get(1).address);
+        assertEquals(2, peers.get(2).address);
+    }
+
+    @Test
+    public void tornTailIsDroppedAndTrimmed() throws IOException {
+        PairedPeerStore store = PairedPeerStore.open(mFile);
+        store.put(1, 1, -60, 100);
+        store.put(2, 2, -60, 200);
+        // A write cut off halfway through the third record
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.seek(file.length());
+            file.write(new byte[PairedPeerStore.RECORD_SIZE / 2]);
+        }
+
+        PairedPeerStore reopened = PairedPeerStore.open(mFile);
+        assertEquals(2, reopened.size());
+        assertEquals(HEADER_SIZE + 2 * PairedPeerStore.RECORD_SIZE, mFile.length());
+        reopened.put(3, 3, -60, 300);
+        assertEquals(3, PairedPeerStore.open(mFile).size());
+    }
+
+    @Test
+    public void corruptRecordEndsTheLog() throws IOException {
+        PairedPeerStore store = PairedPeerStore.open(mFile);
+        store.put(1, 1, -60, 100);
+        store.put(2, 2, -60, 200);
+        store.put(3, 3, -60, 300);
+        // Flip a bit in the second record's timestamp
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            long position = HEADER_SIZE + PairedPeerStore.RECORD_SIZE + 16;
+            file.seek(position);
+            int b = file.read();
+            file.seek(position);
+            file.write(b ^ 0x01);
+        }
+
+        PairedPeerStore reopened = PairedPeerStore.open(mFile);
+        assertEquals(1, reopened.size());
+        assertTrue(reopened.contains(1));
+        assertNull(reopened.get(3));
+    }
+
+    @Test
+    public void unknownHeaderStartsOver() throws IOException {
+        Files.write(mFile.toPath(), "not a peer store at all".getBytes("US-ASCII"));
+        PairedPeerStore store = PairedPeerStore.open(mFile);
+        assertTrue(store.isEmpty());
+        assertFalse(mFile.exists());
+        store.put(1, 1, -60, 100);
+        assertEquals(1, PairedPeerStore.open(mFile).size());
+    }
+
+    @Test
+    public void inMemoryStoreWritesNothing() throws IOException {
+        PairedPeerStore store = PairedPeerStore.inMemory();
+        store.put(3, 3, -60, 3000);
+        assertTrue(store.contains(3));
+        store.forget(3);
+        assertTrue(store.isEmpty());
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void compactionShrinksTheFile() throws IOException {
+        PairedPeerStore store = PairedPeerStore.open(mFile);
+        for (int i = 0; i < 40; i++) {
+            store.put(i % 3, i % 3, -60 - i, i);
+        }
+        // Rewritten whenever dead records pile up, so never more than a few beyond the live ones
+        long records = (mFile.length() - HEADER_SIZE) / PairedPeerStore.RECORD_SIZE;
+        assertTrue(records + " records on disk", records < 20);
+        assertFalse(new File(mFile.getPath() + ".tmp").exists());
+
+        PairedPeerStore reopened = PairedPeerStore.open(mFile);
+        assertEquals(3, reopened.size());
+        assertEquals(-99, reopened.get(0).lastRssi);
+        assertEquals(-97, reopened.get(1).lastRssi);
+        assertEquals(-98, reopened.get(2).lastRssi);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.bleApp.transport.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PairingLoadRunTest {
+
+    private static PairingLoadRun.Config config() {
+        PairingLoadRun.Config config = new PairingLoadRun.Config();
+        config.watches = 40;
+        config.timeLimitMs = 60 * 1000;
+        return config;
+    }
+
+    @Test
+    public void everyWatchPairs() {
+        PairingLoadRun.Report report = PairingLoadRun.run(config());
+        assertEquals(40, report.pairedWatches);
+        assertTrue(report.simulatedMs <= 60 * 1000);
+    }
+
+    @Test
+    public void knownPeersPairFasterThanAScan() {
+        PairingLoadRun.Report report = PairingLoadRun.run(config());
+        assertTrue(report.knownPeerWatches > 0);
+        assertTrue(report.knownPeerP50Ms < report.scanP50Ms);
+    }
+
+    @Test
+    public void busyWatchesAreSkippedOnTheirBeacon() {
+        PairingLoadRun.Report report = PairingLoadRun.run(config());
+        assertTrue(report.beaconRejections > 0);
+    }
+
+    @Test
+    public void withoutKnownPeersEveryWatchScans() {
+        PairingLoadRun.Config config = config();
+        config.knownPeerFraction = 0;
+        PairingLoadRun.Report report = PairingLoadRun.run(config);
+        assertEquals(40, report.pairedWatches);
+        assertEquals(0, report.knownPeerWatches);
+        assertEquals(report.p50Ms, report.scanP50Ms);
+    }
+
+    @Test
+    public void lostRssiReadsDontStallProximity() {
+        PairingLoadRun.Config config = config();
+        config.knownPeerFraction = 0;
+        config.radio.lostRssiReads = 0.2;
+        PairingLoadRun.Report report = PairingLoadRun.run(config);
+        assertEquals(40, report.pairedWatches);
+    }
+
+    @Test
+    public void lostEchoesDontHoldConnectionSlots() {
+        PairingLoadRun.Config config = config();
+        config.knownPeerFraction = 0;
+        config.radio.lostNotifications = 0.2;
+        PairingLoadRun.Report report = PairingLoadRun.run(config);
+        assertEquals(40, report.pairedWatches);
+    }
+
+    @Test
+    public void sameSeedSameRun() {
+        PairingLoadRun.Report first = PairingLoadRun.run(config());
+        PairingLoadRun.Report second = PairingLoadRun.run(config());
+        assertEquals(first.events, second.events);
+        assertEquals(first.simulatedMs, second.simulatedMs);
+        assertEquals(first.p99Ms, second.p99Ms);
+    }
+}
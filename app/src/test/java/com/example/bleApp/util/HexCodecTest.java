@@ -0,0 +1,75 @@
+package com.example.bleApp.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class HexCodecTest {
+
+    @Test
+    public void everyByteValueRoundTrips() {
+        byte[] all = new byte[256];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = (byte) i;
+        }
+        String hex = HexCodec.encode(all);
+        assertEquals(512, hex.length());
+        assertEquals("00017f80ff", hex.substring(0, 4) + hex.substring(254, 258) + hex.substring(510));
+        assertArrayEquals(all, HexCodec.decode(hex));
+        assertArrayEquals(all, HexCodec.decode(hex.toUpperCase()));
+    }
+
+    @Test
+    public void encodesIntoOffsets() {
+        char[] chars = "[......]".toCharArray();
+        int end = HexCodec.encode(new byte[]{9, (byte) 0xAB, (byte) 0xCD, 9}, 1, 2, chars, 2);
+        assertEquals(6, end);
+        assertEquals("[.abcd.]", new String(chars));
+
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{1, 2, 3});
+        buffer.position(1);
+        char[] out = new char[4];
+        HexCodec.encode(buffer, out, 0);
+        assertEquals("0203", new String(out));
+        assertEquals(1, buffer.position());
+    }
+
+    @Test
+    public void appendsToBuildersAndAppendables() throws IOException {
+        StringBuilder builder = new StringBuilder("x");
+        HexCodec.append(builder, new byte[]{0, (byte) 0xFE, 1}, 1, 2);
+        assertEquals("xfe01", builder.toString());
+        Appendable appendable = new StringBuilder();
+        HexCodec.append(appendable, new byte[]{0x10}, 0, 1);
+        assertEquals("10", appendable.toString());
+    }
+
+    @Test
+    public void decodesIntoBuffers() {
+        byte[] dst = new byte[4];
+        assertEquals(3, HexCodec.decode("aBc0", dst, 1));
+        assertArrayEquals(new byte[]{0, (byte) 0xAB, (byte) 0xC0, 0}, dst);
+        ByteBuffer buffer = ByteBuffer.allocate(2);
+        HexCodec.decode("ff00", buffer);
+        assertEquals(2, buffer.position());
+        assertEquals((byte) 0xFF, buffer.get(0));
+        assertArrayEquals(new byte[0], HexCodec.decode(""));
+    }
+
+    @Test
+    public void rejectsMalformedHex() {
+        for (String bad : new String[]{"abc", "0g", "g0", "0 ", "\u00e90", "0\u0660"}) {
+            try {
+                HexCodec.decode(bad);
+                fail("accepted " + bad);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+}
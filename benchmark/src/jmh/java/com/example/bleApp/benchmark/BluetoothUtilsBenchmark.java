@@ -0,0 +1,98 @@
+package com.example.bleApp.benchmark;
+
+import static com.example.bleApp.Constants.CHARACTERISTIC_ECHO_UUID;
+import static com.example.bleApp.Constants.CHARACTERISTIC_UUID;
+import static com.example.bleApp.Constants.CLIENT_CONFIGURATION_DESCRIPTOR_UUID;
+import static com.example.bleApp.Constants.SERVICE_UUID;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+
+import com.example.bleApp.util.BluetoothUtils;
+import com.example.bleApp.util.GattIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Lookups against a service table shaped like a typical watch: a few standard
+ * services ahead of ours, each characteristic carrying a user description and a CCCD.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class BluetoothUtilsBenchmark {
+
+    private static final UUID USER_DESCRIPTION_UUID = UUID.fromString("00002901-0000-1000-8000-00805f9b34fb");
+
+    private List<BluetoothGattService> mServices;
+    private List<BluetoothGattDescriptor> mDescriptors;
+    private GattIndex mIndex;
+    private BluetoothGattCharacteristic mCharacteristic;
+
+    @Setup
+    public void setup() {
+        mServices = new ArrayList<>();
+        mServices.add(service(UUID.fromString("00001800-0000-1000-8000-00805f9b34fb")));
+        mServices.add(service(UUID.fromString("00001801-0000-1000-8000-00805f9b34fb")));
+        mServices.add(service(UUID.fromString("0000180a-0000-1000-8000-00805f9b34fb")));
+
+        BluetoothGattService service = service(SERVICE_UUID);
+        BluetoothGattCharacteristic characteristic = characteristic(CHARACTERISTIC_UUID);
+        service.addCharacteristic(characteristic);
+        service.addCharacteristic(characteristic(CHARACTERISTIC_ECHO_UUID));
+        mServices.add(service);
+
+        mDescriptors = characteristic.getDescriptors();
+        mCharacteristic = characteristic;
+        mIndex = GattIndex.build(mServices);
+    }
+
+    private static BluetoothGattService service(UUID uuid) {
+        BluetoothGattService service = new BluetoothGattService(uuid, BluetoothGattService.SERVICE_TYPE_PRIMARY);
+        for (int i = 0; i < 3; i++) {
+            service.addCharacteristic(characteristic(new UUID(uuid.getMostSignificantBits() + i + 1,
+                    uuid.getLeastSignificantBits())));
+        }
+        return service;
+    }
+
+    private static BluetoothGattCharacteristic characteristic(UUID uuid) {
+        BluetoothGattCharacteristic characteristic = new BluetoothGattCharacteristic(uuid,
+                BluetoothGattCharacteristic.PROPERTY_WRITE | BluetoothGattCharacteristic.PROPERTY_NOTIFY,
+                BluetoothGattCharacteristic.PERMISSION_WRITE);
+        characteristic.addDescriptor(new BluetoothGattDescriptor(USER_DESCRIPTION_UUID,
+                BluetoothGattDescriptor.PERMISSION_READ));
+        characteristic.addDescriptor(new BluetoothGattDescriptor(CLIENT_CONFIGURATION_DESCRIPTOR_UUID,
+                BluetoothGattDescriptor.PERMISSION_READ | BluetoothGattDescriptor.PERMISSION_WRITE));
+        return characteristic;
+    }
+
+    @Benchmark
+    public BluetoothGattCharacteristic findEchoCharacteristic() {
+        return BluetoothUtils.findEchoCharacteristic(mServices);
+    }
+
+    @Benchmark
+    public BluetoothGattDescriptor findClientConfigurationDescriptor() {
+        return BluetoothUtils.findClientConfigurationDescriptor(mDescriptors);
+    }
+
+    @Benchmark
+    public BluetoothGattCharacteristic indexedEchoCharacteristic() {
+        return BluetoothUtils.findEchoCharacteristic(mIndex);
+    }
+
+    @Benchmark
+    public BluetoothGattDescriptor indexedClientConfigurationDescriptor() {
+        return mIndex.getClientConfigurationDescriptor(mCharacteristic);
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.bleApp.benchmark;
+
+import com.example.bleApp.util.ByteUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class ByteUtilsBenchmark {
+
+    // Default ATT payload and a full 512 byte attribute
+    @Param({"20", "512"})
+    public int size;
+
+    private byte[] mValue;
+
+    @Setup
+    public void setup() {
+        mValue = new byte[size];
+        new Random(1).nextBytes(mValue);
+    }
+
+    @Benchmark
+    public byte[] reverse() {
+        return ByteUtils.reverse(mValue);
+    }
+
+    @Benchmark
+    public byte[] reverseInPlace() {
+        ByteUtils.reverseInPlace(mValue);
+        return mValue;
+    }
+}
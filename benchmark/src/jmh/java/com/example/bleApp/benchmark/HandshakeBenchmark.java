@@ -0,0 +1,49 @@
+package com.example.bleApp.benchmark;
+
+import com.example.bleApp.protocol.Handshake;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Per-packet decode work: ServerService.onCharacteristicWriteRequest classifying a
+ * write and building the echo, ClientService.readMessage checking the echo.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class HandshakeBenchmark {
+
+    private static final int SEQUENCE = 7;
+
+    private byte[] mMatchControl;
+    private byte[] mFriend;
+    private byte[] mEcho;
+
+    @Setup
+    public void setup() {
+        mMatchControl = Handshake.matchControl(SEQUENCE);
+        mFriend = Handshake.friend(SEQUENCE);
+        mEcho = Handshake.echo(mMatchControl);
+    }
+
+    @Benchmark
+    public void serverDecodeWrite(Blackhole blackhole) {
+        blackhole.consume(Handshake.isMatchControl(mMatchControl));
+        blackhole.consume(Handshake.isFriend(mFriend));
+    }
+
+    @Benchmark
+    public byte[] serverBuildEcho() {
+        return Handshake.echo(mMatchControl);
+    }
+
+    @Benchmark
+    public boolean clientDecodeEcho() {
+        return Handshake.isMatchControlEcho(mEcho, SEQUENCE);
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.bleApp.benchmark;
+
+import com.example.bleApp.transport.sim.PairingLoadRun;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall-clock cost of a whole simulated pairing run; the simulated pairing rate and
+ * latency percentiles are printed by PairingLoadRun itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PairingLoadBenchmark {
+
+    @Param({"200"})
+    public int watches;
+
+    @Benchmark
+    public PairingLoadRun.Report pairingRun() {
+        PairingLoadRun.Config config = new PairingLoadRun.Config();
+        config.watches = watches;
+        return PairingLoadRun.run(config);
+    }
+}
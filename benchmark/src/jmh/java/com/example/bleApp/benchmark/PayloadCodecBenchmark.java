@@ -0,0 +1,108 @@
+package com.example.bleApp.benchmark;
+
+import com.example.bleApp.protocol.HandshakeFrame;
+import com.example.bleApp.protocol.PayloadCodec;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * CPU cost of the compression stage against the bytes it keeps off the air. The
+ * encode run counts rawBytes and wireBytes; at a few KB/s of link throughput, each
+ * wire byte saved is worth far more radio time than the microseconds spent on it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class PayloadCodecBenchmark {
+
+    private static final int MESSAGES = 16;
+
+    // 3 byte handshake frame, JSON status, 240 byte sensor frame with few changes, random bytes
+    @Param({"handshake", "status", "telemetry", "random"})
+    public String payload;
+
+    @Param({"0", "1"})
+    public int codecs;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Airtime {
+        public long rawBytes;
+        public long wireBytes;
+    }
+
+    private byte[][] mMessages;
+    private byte[][] mEncoded;
+    private PayloadCodec.Encoder mEncoder;
+    private int mNext;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        mMessages = new byte[MESSAGES][];
+        byte[] telemetry = new byte[240];
+        for (int i = 0; i < telemetry.length; i++) {
+            telemetry[i] = (byte) (i % 24);
+        }
+        for (int i = 0; i < MESSAGES; i++) {
+            switch (payload) {
+                case "handshake":
+                    mMessages[i] = HandshakeFrame.encode(HandshakeFrame.OP_FRIEND, i);
+                    break;
+                case "status":
+                    mMessages[i] = String.format(Locale.US,
+                            "{\"battery\":%d,\"steps\":%d,\"heartRate\":%d,\"firmware\":\"1.4.2\",\"paired\":true}",
+                            random.nextInt(100), random.nextInt(20000), 50 + random.nextInt(100))
+                            .getBytes(StandardCharsets.UTF_8);
+                    break;
+                case "telemetry":
+                    telemetry = telemetry.clone();
+                    telemetry[random.nextInt(telemetry.length)]++;
+                    telemetry[random.nextInt(telemetry.length)]--;
+                    mMessages[i] = telemetry;
+                    break;
+                default:
+                    mMessages[i] = new byte[240];
+                    random.nextBytes(mMessages[i]);
+                    break;
+            }
+        }
+        mEncoder = new PayloadCodec.Encoder(codecs);
+        // The same messages, decoded again every invocation
+        PayloadCodec.Encoder encoder = new PayloadCodec.Encoder(codecs);
+        mEncoded = new byte[MESSAGES][];
+        for (int i = 0; i < MESSAGES; i++) {
+            mEncoded[i] = encoder.encode(mMessages[i]);
+        }
+    }
+
+    @Benchmark
+    public byte[] encode(Airtime airtime) {
+        byte[] message = mMessages[mNext++ % MESSAGES];
+        byte[] encoded = mEncoder.encode(message);
+        airtime.rawBytes += message.length;
+        airtime.wireBytes += encoded.length;
+        return encoded;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void decode(Blackhole blackhole) {
+        PayloadCodec.Decoder decoder = new PayloadCodec.Decoder();
+        for (byte[] encoded : mEncoded) {
+            blackhole.consume(decoder.decode(encoded));
+        }
+    }
+}
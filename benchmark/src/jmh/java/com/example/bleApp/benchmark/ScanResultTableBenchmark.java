@@ -0,0 +1,52 @@
+package com.example.bleApp.benchmark;
+
+import com.example.bleApp.client.ScanResultTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// One scan callback in a room with a given number of advertisers
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class ScanResultTableBenchmark {
+
+    @Param({"8", "256"})
+    public int advertisers;
+
+    private String[] mAddresses;
+    private ScanResultTable<String> mTable;
+    private Map<String, String> mMap;
+    private int mNext;
+    private long mNow;
+
+    @Setup
+    public void setup() {
+        mAddresses = new String[advertisers];
+        for (int i = 0; i < advertisers; i++) {
+            mAddresses[i] = String.format(Locale.US, "F0:%02X:%02X:00:%02X:%02X", i & 0xFF, i >> 8, (i * 7) & 0xFF, i & 0x0F);
+        }
+        mTable = new ScanResultTable<>(advertisers, 60000);
+        mMap = new HashMap<>();
+    }
+
+    @Benchmark
+    public int table() {
+        String address = mAddresses[mNext++ % advertisers];
+        return mTable.onResult(ScanResultTable.packAddress(address), address, -60, mNow++);
+    }
+
+    @Benchmark
+    public String hashMap() {
+        String address = mAddresses[mNext++ % advertisers];
+        return mMap.put(address, address);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.bleApp.benchmark;
+
+import com.example.bleApp.Constants;
+import com.example.bleApp.util.HexCodec;
+import com.example.bleApp.util.StringUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+public class StringUtilsBenchmark {
+
+    private byte[] mPacket;
+    private String mMessage;
+    private final StringBuilder mTrace = new StringBuilder();
+    private char[] mHex;
+
+    @Setup
+    public void setup() {
+        mMessage = Constants.XEE_KIDS_MATCH_CONTROL;
+        mPacket = mMessage.getBytes(StandardCharsets.UTF_8);
+        mHex = new char[HexCodec.encodedLength(mPacket.length)];
+    }
+
+    @Benchmark
+    public String byteArrayInHexFormat() {
+        return StringUtils.byteArrayInHexFormat(mPacket);
+    }
+
+    // Packet dump into a reused builder, what the services' tracing does per packet
+    @Benchmark
+    public int appendHexFormat() {
+        mTrace.setLength(0);
+        StringUtils.appendHexFormat(mTrace, mPacket, 0, mPacket.length);
+        return mTrace.length();
+    }
+
+    @Benchmark
+    public char[] hexEncode() {
+        HexCodec.encode(mPacket, 0, mPacket.length, mHex, 0);
+        return mHex;
+    }
+
+    @Benchmark
+    public byte[] bytesFromString() {
+        return StringUtils.bytesFromString(mMessage);
+    }
+
+    @Benchmark
+    public String stringFromBytes() {
+        return StringUtils.stringFromBytes(mPacket);
+    }
+}